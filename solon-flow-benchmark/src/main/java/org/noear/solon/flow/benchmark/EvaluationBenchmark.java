@@ -0,0 +1,89 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.benchmark;
+
+import org.noear.solon.flow.ConditionDesc;
+import org.noear.solon.flow.Evaluation;
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.evaluation.AviatorEvaluation;
+import org.noear.solon.flow.evaluation.BeetlEvaluation;
+import org.noear.solon.flow.evaluation.LiquorEvaluation;
+import org.noear.solon.flow.evaluation.MagicEvaluation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脚本评估器基准（条件评估；同一条件重复运行，度量缓存命中后的开销）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluationBenchmark {
+    @Param({"liquor", "aviator", "beetl", "magic"})
+    public String evaluator;
+
+    //各评估器通用的语法
+    private final String condition = "a > b && c == 1";
+
+    private Evaluation evaluation;
+    private FlowContext context;
+    private ConditionDesc conditionDesc;
+
+    @Setup
+    public void setup() {
+        switch (evaluator) {
+            case "liquor":
+                evaluation = new LiquorEvaluation();
+                break;
+            case "aviator":
+                evaluation = new AviatorEvaluation();
+                break;
+            case "beetl":
+                evaluation = new BeetlEvaluation();
+                break;
+            case "magic":
+                evaluation = new MagicEvaluation();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown evaluator: " + evaluator);
+        }
+
+        context = FlowContext.of();
+        context.put("a", 4);
+        context.put("b", 3);
+        context.put("c", 1);
+
+        conditionDesc = new ConditionDesc(null, condition);
+    }
+
+    @Benchmark
+    public boolean runCondition() throws Throwable {
+        return evaluation.runCondition(context, condition);
+    }
+
+    //引擎实际走的路径（编译结果缓存在条件描述上）
+    @Benchmark
+    public boolean runConditionDesc() throws Throwable {
+        return evaluation.runCondition(context, conditionDesc, conditionDesc.getDescription());
+    }
+}
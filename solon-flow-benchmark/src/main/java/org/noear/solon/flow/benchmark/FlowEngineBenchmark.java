@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.benchmark;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.FlowEngineDefault;
+import org.noear.solon.flow.Graph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流引擎运行基准（FlowEngine.eval；按节点类型与网关分别度量）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlowEngineBenchmark {
+    @Param({"activity", "exclusive", "inclusive", "parallel", "loop", "script"})
+    public String type;
+
+    @Param({"false", "true"})
+    public boolean iterative;
+
+    private FlowEngineDefault flowEngine;
+    private Graph graph;
+
+    @Setup
+    public void setup() {
+        flowEngine = new FlowEngineDefault(null, true).iterative(iterative);
+        graph = Graphs.of(type);
+    }
+
+    @Benchmark
+    public Object eval() {
+        FlowContext context = FlowContext.of();
+        context.put("a", 3);
+        context.put("b", 4);
+
+        flowEngine.eval(graph, context);
+        return context;
+    }
+
+    /**
+     * 不跟踪的运行（无状态运行时的常见用法）
+     */
+    @Benchmark
+    public Object evalWithoutTrace() {
+        FlowContext context = FlowContext.of().enableTrace(false);
+        context.put("a", 3);
+        context.put("b", 4);
+
+        flowEngine.eval(graph, context);
+        return context;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.benchmark;
+
+import org.noear.solon.flow.Graph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 图解析基准（Graph.fromText）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GraphParseBenchmark {
+    private String yaml;
+    private String json;
+
+    @Setup
+    public void setup() {
+        yaml = Graphs.CASE1_YML;
+        json = Graph.fromText(yaml).toJson();
+    }
+
+    @Benchmark
+    public Graph parseYaml() {
+        return Graph.fromText(yaml);
+    }
+
+    @Benchmark
+    public Graph parseJson() {
+        return Graph.fromText(json);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.benchmark;
+
+import org.noear.solon.flow.Graph;
+
+import java.util.Arrays;
+
+/**
+ * 基准用的图
+ *
+ * @author noear
+ * @since 4.0
+ */
+final class Graphs {
+    /**
+     * 脚本分支（与 HelloTest 的 case1 相同）
+     */
+    static final String CASE1_YML = "id: \"case1\"\n" +
+            "layout:\n" +
+            "  - type: exclusive\n" +
+            "    link:\n" +
+            "      - when: a > b\n" +
+            "        nextId: sum\n" +
+            "      - nextId: sub\n" +
+            "  - id: sum\n" +
+            "    title: \"加法\"\n" +
+            "    task: 'context.put(\"result\", a + b);'\n" +
+            "    link: end\n" +
+            "  - id: sub\n" +
+            "    title: \"减法\"\n" +
+            "    task: 'context.put(\"result\", a - b);'\n" +
+            "    link: end\n" +
+            "  - id: end\n" +
+            "    type: end";
+
+    private Graphs() {
+    }
+
+    /**
+     * 按节点类型构建（任务与条件为 java 组件，只度量引擎自身的开销）
+     *
+     * @param type activity, exclusive, inclusive, parallel, loop, script
+     */
+    static Graph of(String type) {
+        switch (type) {
+            case "activity":
+                return Graph.create("bench-activity", spec -> {
+                    spec.addStart("s").linkAdd("a1");
+                    spec.addActivity("a1").task((c, n) -> c.put("r", 1)).linkAdd("a2");
+                    spec.addActivity("a2").task((c, n) -> c.put("r", 2)).linkAdd("a3");
+                    spec.addActivity("a3").task((c, n) -> c.put("r", 3)).linkAdd("e");
+                    spec.addEnd("e");
+                });
+            case "exclusive":
+                return Graph.create("bench-exclusive", spec -> {
+                    spec.addStart("s").linkAdd("x");
+                    spec.addExclusive("x")
+                            .linkAdd("a1", l -> l.when(c -> c.<Integer>getAs("a") > c.<Integer>getAs("b")))
+                            .linkAdd("a2");
+                    spec.addActivity("a1").task((c, n) -> c.put("r", 1)).linkAdd("e");
+                    spec.addActivity("a2").task((c, n) -> c.put("r", 2)).linkAdd("e");
+                    spec.addEnd("e");
+                });
+            case "inclusive":
+                return Graph.create("bench-inclusive", spec -> {
+                    spec.addStart("s").linkAdd("i1");
+                    spec.addInclusive("i1")
+                            .linkAdd("a1", l -> l.when(c -> true))
+                            .linkAdd("a2", l -> l.when(c -> false))
+                            .linkAdd("a3");
+                    spec.addActivity("a1").task((c, n) -> c.put("r1", 1)).linkAdd("i2");
+                    spec.addActivity("a2").task((c, n) -> c.put("r2", 2)).linkAdd("i2");
+                    spec.addActivity("a3").task((c, n) -> c.put("r3", 3)).linkAdd("i2");
+                    spec.addInclusive("i2").linkAdd("e");
+                    spec.addEnd("e");
+                });
+            case "parallel":
+                return Graph.create("bench-parallel", spec -> {
+                    spec.addStart("s").linkAdd("p1");
+                    spec.addParallel("p1").linkAdd("a1").linkAdd("a2").linkAdd("a3");
+                    spec.addActivity("a1").task((c, n) -> c.put("r1", 1)).linkAdd("p2");
+                    spec.addActivity("a2").task((c, n) -> c.put("r2", 2)).linkAdd("p2");
+                    spec.addActivity("a3").task((c, n) -> c.put("r3", 3)).linkAdd("p2");
+                    spec.addParallel("p2").linkAdd("e");
+                    spec.addEnd("e");
+                });
+            case "loop":
+                return Graph.create("bench-loop", spec -> {
+                    spec.addStart("s").linkAdd("l1");
+                    spec.addLoop("l1").metaPut("$for", "item").metaPut("$in", Arrays.asList(1, 2, 3, 4, 5)).linkAdd("a1");
+                    spec.addActivity("a1").task((c, n) -> c.put("r", c.get("item"))).linkAdd("l2");
+                    spec.addLoop("l2").linkAdd("e");
+                    spec.addEnd("e");
+                });
+            case "script":
+                return Graph.fromText(CASE1_YML);
+            default:
+                throw new IllegalArgumentException("Unknown graph type: " + type);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.benchmark;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.FlowEngine;
+import org.noear.solon.flow.Graph;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.Task;
+import org.noear.solon.flow.workflow.TaskAction;
+import org.noear.solon.flow.workflow.WorkflowExecutor;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.repository.InMemoryStateRepository;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作流基准（claimTask, submitTask；状态存放于 InMemoryStateRepository）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkflowBenchmark {
+    private StateRepository stateRepository;
+    private WorkflowExecutor workflow;
+    private Graph graph;
+
+    //认领时停在 a1 的实例
+    private FlowContext waitingContext;
+
+    @Setup
+    public void setup() {
+        stateRepository = new InMemoryStateRepository();
+        workflow = WorkflowExecutor.of(FlowEngine.newInstance(true), new BlockStateController(), stateRepository);
+
+        graph = Graph.create("bench-workflow", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").title("申请").linkAdd("a2");
+            spec.addActivity("a2").title("审批").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        waitingContext = FlowContext.of("bench-waiting");
+        workflow.claimTask(graph, waitingContext);
+    }
+
+    /**
+     * 认领（状态已存在）
+     */
+    @Benchmark
+    public Task claimTask() {
+        return workflow.claimTask(graph, waitingContext);
+    }
+
+    /**
+     * 一个实例的完整处理（认领、提交，直到结束；之后清除状态）
+     */
+    @Benchmark
+    public Task claimAndSubmit() {
+        FlowContext context = FlowContext.of("bench-instance");
+
+        Task task = workflow.claimTask(graph, context);
+        workflow.submitTask(task, TaskAction.FORWARD, context);
+
+        task = workflow.claimTask(graph, context);
+        workflow.submitTask(task, TaskAction.FORWARD, context);
+
+        stateRepository.stateClear(context);
+        return task;
+    }
+}
@@ -16,8 +16,12 @@
 package org.noear.solon.flow.evaluation;
 
 import com.googlecode.aviator.AviatorEvaluator;
+import com.googlecode.aviator.Expression;
+import org.noear.solon.flow.ConditionDesc;
 import org.noear.solon.flow.Evaluation;
 import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.TaskDesc;
+import org.noear.solon.flow.util.ScriptCache;
 
 /**
  * Aviator 评估器
@@ -26,13 +30,49 @@ import org.noear.solon.flow.FlowContext;
  * @since 3.1
  */
 public class AviatorEvaluation implements Evaluation {
+    private final ScriptCache<Expression> scriptCache;
+
+    public AviatorEvaluation() {
+        this(ScriptCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param cacheSize 编译缓存的最大数量
+     * @since 4.0
+     */
+    public AviatorEvaluation(int cacheSize) {
+        this.scriptCache = new ScriptCache<>(cacheSize);
+    }
+
+    /**
+     * 编译（有缓存）
+     *
+     * @since 4.0
+     */
+    protected Expression compile(String code) {
+        return scriptCache.get(code, AviatorEvaluator::compile);
+    }
+
     @Override
     public boolean runCondition(FlowContext context, String code) {
-        return (Boolean) AviatorEvaluator.execute(code, context.data());
+        //直接以上下文数据为环境（不复制）
+        return (Boolean) compile(code).execute(context.data());
     }
 
     @Override
     public void runTask(FlowContext context, String code) {
-        AviatorEvaluator.execute(code, context.data());
+        compile(code).execute(context.data());
+    }
+
+    @Override
+    public boolean runCondition(FlowContext context, ConditionDesc condition, String code) {
+        Expression expr = condition.compiled().get(this, code, this::compile);
+        return (Boolean) expr.execute(context.data());
+    }
+
+    @Override
+    public void runTask(FlowContext context, TaskDesc task, String code) {
+        Expression expr = task.compiled().get(this, code, this::compile);
+        expr.execute(context.data());
     }
-}
\ No newline at end of file
+}
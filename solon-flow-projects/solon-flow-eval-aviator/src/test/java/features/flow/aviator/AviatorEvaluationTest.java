@@ -1,11 +1,14 @@
 package features.flow.aviator;
 
+import com.googlecode.aviator.Expression;
 import org.junit.jupiter.api.Test;
 import org.noear.solon.flow.FlowContext;
 import org.noear.solon.flow.FlowEngine;
 import org.noear.solon.flow.driver.SimpleFlowDriver;
 import org.noear.solon.flow.evaluation.AviatorEvaluation;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author noear 2025/3/26 created
  */
@@ -35,9 +38,63 @@ public class AviatorEvaluationTest {
         assert ((Number) context.get("result")).intValue() == 5;
     }
 
+    @Test
+    public void case_compiled() throws Throwable {
+        //编译结果（Expression）缓存在描述上，重复运行不再编译
+        CountingEvaluation evaluation = new CountingEvaluation(2);
+
+        FlowEngine engine = FlowEngine.newInstance();
+        engine.register(new SimpleFlowDriver(evaluation));
+        engine.load("classpath:flow/*");
+
+        for (int i = 0; i < 100; i++) {
+            FlowContext context = FlowContext.of();
+            context.put("a", i);
+            context.put("b", 50);
+
+            engine.eval("f1", context);
+
+            if (i > 50) {
+                assert ((Number) context.get("result")).intValue() == i + 50;
+            } else {
+                assert context.get("result") == null;
+            }
+        }
+
+        //条件与任务各编译一次
+        assert evaluation.compiles.get() == 2;
+    }
+
+    @Test
+    public void case_compiled_lru() throws Throwable {
+        //同一脚本复用同一 Expression；超出数量后淘汰最久未用的
+        CountingEvaluation evaluation = new CountingEvaluation(2);
+
+        Expression expr = evaluation.compile("a + b");
+        assert expr == evaluation.compile("a + b");
+
+        evaluation.compile("a - b");
+        evaluation.compile("a * b");
+        assert expr != evaluation.compile("a + b");
+    }
+
     //demo
     public void case2() throws Throwable {
         FlowEngine engine = FlowEngine.newInstance();
         engine.register(new SimpleFlowDriver(new SpringContainer()));
     }
+
+    static class CountingEvaluation extends AviatorEvaluation {
+        final AtomicInteger compiles = new AtomicInteger();
+
+        CountingEvaluation(int cacheSize) {
+            super(cacheSize);
+        }
+
+        @Override
+        public Expression compile(String code) {
+            compiles.incrementAndGet();
+            return super.compile(code);
+        }
+    }
 }
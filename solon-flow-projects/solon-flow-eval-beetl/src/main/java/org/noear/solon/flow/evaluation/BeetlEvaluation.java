@@ -20,8 +20,11 @@ import org.beetl.core.GroupTemplate;
 import org.beetl.core.io.EmptyWriter;
 import org.beetl.core.resource.ClasspathResourceLoader;
 import org.beetl.core.resource.StringTemplateResourceLoader;
+import org.noear.solon.flow.ConditionDesc;
 import org.noear.solon.flow.Evaluation;
 import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.TaskDesc;
+import org.noear.solon.flow.util.ScriptCache;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -38,8 +41,18 @@ public class BeetlEvaluation implements Evaluation, Closeable {
     private final GroupTemplate engine;
     private final StringTemplateResourceLoader templateLoader = new StringTemplateResourceLoader();
     private final ClasspathResourceLoader resourceLoader;
+    //条件脚本（包装后的脚本即为 beetl 程序缓存的键；复用同一实例，使其哈希与比较接近零成本）
+    private final ScriptCache<String> conditionCache;
 
     public BeetlEvaluation() {
+        this(ScriptCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param cacheSize 编译缓存的最大数量
+     * @since 4.0
+     */
+    public BeetlEvaluation(int cacheSize) {
         try {
             resourceLoader = new ClasspathResourceLoader("/");
             Configuration cfg = Configuration.defaultConfiguration();
@@ -47,16 +60,24 @@ public class BeetlEvaluation implements Evaluation, Closeable {
             cfg.setStatementEnd(null);
 
             engine = new GroupTemplate(resourceLoader, cfg, BeetlEvaluation.class.getClassLoader());
+            conditionCache = new ScriptCache<>(cacheSize);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 条件脚本
+     *
+     * @since 4.0
+     */
+    protected String conditionScript(String code) {
+        return conditionCache.get(code, c -> "return " + c + ";");
+    }
+
     @Override
     public boolean runCondition(FlowContext context, String code) {
-        Writer writer = new EmptyWriter();
-        Map values = engine.runScript("return " + code + ";", context.data(), writer, templateLoader);
-        return (Boolean) values.get("return");
+        return runConditionScript(context, conditionScript(code));
     }
 
     @Override
@@ -65,10 +86,27 @@ public class BeetlEvaluation implements Evaluation, Closeable {
         engine.runScript(code, context.data(), writer, templateLoader);
     }
 
+    @Override
+    public boolean runCondition(FlowContext context, ConditionDesc condition, String code) {
+        return runConditionScript(context, condition.compiled().get(this, code, this::conditionScript));
+    }
+
+    @Override
+    public void runTask(FlowContext context, TaskDesc task, String code) {
+        //任务脚本无需包装，原样作为程序缓存的键
+        runTask(context, code);
+    }
+
+    private boolean runConditionScript(FlowContext context, String script) {
+        Writer writer = new EmptyWriter();
+        Map values = engine.runScript(script, context.data(), writer, templateLoader);
+        return (Boolean) values.get("return");
+    }
+
     @Override
     public void close() throws IOException {
         templateLoader.close();
         resourceLoader.close();
         engine.close();
     }
-}
\ No newline at end of file
+}
@@ -6,6 +6,8 @@ import org.noear.solon.flow.FlowEngine;
 import org.noear.solon.flow.driver.SimpleFlowDriver;
 import org.noear.solon.flow.evaluation.BeetlEvaluation;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @author noear 2025/3/26 created
  */
@@ -34,4 +36,59 @@ public class BeetlEvaluationTest {
         System.out.println(context.get("result"));
         assert ((Number) context.get("result")).intValue() == 5;
     }
+
+    @Test
+    public void case_wrapped() throws Throwable {
+        //包装后的条件脚本缓存在描述上（即 beetl 程序缓存的键），重复运行不再包装
+        CountingEvaluation evaluation = new CountingEvaluation(2);
+
+        FlowEngine engine = FlowEngine.newInstance();
+        engine.register(new SimpleFlowDriver(evaluation));
+        engine.load("classpath:flow/*");
+
+        for (int i = 0; i < 100; i++) {
+            FlowContext context = FlowContext.of();
+            context.put("a", i);
+            context.put("b", 50);
+
+            engine.eval("f1", context);
+
+            if (i > 50) {
+                assert ((Number) context.get("result")).intValue() == i + 50;
+            } else {
+                assert context.get("result") == null;
+            }
+        }
+
+        assert evaluation.wraps.get() == 1;
+    }
+
+    @Test
+    public void case_wrapped_reuse() throws Throwable {
+        //同一条件复用同一个键实例；超出数量后淘汰最久未用的
+        CountingEvaluation evaluation = new CountingEvaluation(2);
+
+        String script = evaluation.conditionScript("a > b");
+        assert "return a > b;".equals(script);
+        assert script == evaluation.conditionScript("a > b");
+
+        evaluation.conditionScript("a < b");
+        evaluation.conditionScript("a == b");
+        assert script != evaluation.conditionScript("a > b");
+        assert script.equals(evaluation.conditionScript("a > b"));
+    }
+
+    static class CountingEvaluation extends BeetlEvaluation {
+        final AtomicInteger wraps = new AtomicInteger();
+
+        CountingEvaluation(int cacheSize) {
+            super(cacheSize);
+        }
+
+        @Override
+        public String conditionScript(String code) {
+            wraps.incrementAndGet();
+            return super.conditionScript(code);
+        }
+    }
 }
\ No newline at end of file
@@ -15,12 +15,18 @@
  */
 package org.noear.solon.flow.evaluation;
 
+import org.noear.solon.flow.ConditionDesc;
 import org.noear.solon.flow.Evaluation;
 import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.TaskDesc;
+import org.noear.solon.flow.util.ScriptCache;
+import org.noear.solon.flow.util.ScriptNames;
 import org.ssssssss.script.MagicScript;
 import org.ssssssss.script.MagicScriptContext;
 
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Magic 评估器
@@ -29,27 +35,79 @@ import java.util.Map;
  * @since 3.1
  */
 public class MagicEvaluation implements Evaluation {
+    private final ScriptCache<Compiled> conditionCache;
+    private final ScriptCache<Compiled> taskCache;
+
+    public MagicEvaluation() {
+        this(ScriptCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param cacheSize 编译缓存的最大数量（条件与任务各自）
+     * @since 4.0
+     */
+    public MagicEvaluation(int cacheSize) {
+        this.conditionCache = new ScriptCache<>(cacheSize);
+        this.taskCache = new ScriptCache<>(cacheSize);
+    }
+
     @Override
     public boolean runCondition(FlowContext context, String code) {
-        MagicScriptContext scriptContext = new MagicScriptContext();
-        for (Map.Entry<String, Object> entry : context.data().entrySet()) {
-            scriptContext.set(entry.getKey(), entry.getValue());
-        }
+        return (Boolean) compileCondition(code).execute(context);
+    }
 
+    @Override
+    public void runTask(FlowContext context, String code) {
+        compileTask(code).execute(context);
+    }
 
-        return (Boolean) MagicScript.create("return " + code + ";", null)
-                .execute(scriptContext);
+    @Override
+    public boolean runCondition(FlowContext context, ConditionDesc condition, String code) {
+        Compiled compiled = condition.compiled().get(this, code, this::compileCondition);
+        return (Boolean) compiled.execute(context);
     }
 
     @Override
-    public void runTask(FlowContext context, String code) {
-        MagicScriptContext scriptContext = new MagicScriptContext();
-        for (Map.Entry<String, Object> entry : context.data().entrySet()) {
-            scriptContext.set(entry.getKey(), entry.getValue());
+    public void runTask(FlowContext context, TaskDesc task, String code) {
+        Compiled compiled = task.compiled().get(this, code, this::compileTask);
+        compiled.execute(context);
+    }
+
+    private Compiled compileCondition(String code) {
+        return conditionCache.get(code, c -> new Compiled("return " + c + ";"));
+    }
+
+    private Compiled compileTask(String code) {
+        return taskCache.get(code, Compiled::new);
+    }
+
+    /**
+     * 编译结果（脚本实例在首次执行后保留编译结果，可重复使用）
+     */
+    private static class Compiled {
+        private final MagicScript script;
+        //脚本中出现的标识符（只从上下文绑定这些变量，不复制整个上下文）
+        private final String[] names;
+
+        Compiled(String code) {
+            this.script = MagicScript.create(code, null);
+            Set<String> tmp = new LinkedHashSet<>();
+            ScriptNames.scan(code, tmp::add);
+            this.names = tmp.toArray(new String[0]);
         }
 
+        Object execute(FlowContext context) {
+            Map<String, Object> model = context.data();
+            MagicScriptContext scriptContext = new MagicScriptContext();
 
-        MagicScript.create(code, null)
-                .execute(scriptContext);
+            for (String name : names) {
+                Object value = model.get(name);
+                if (value != null || model.containsKey(name)) {
+                    scriptContext.set(name, value);
+                }
+            }
+
+            return script.execute(scriptContext);
+        }
     }
-}
\ No newline at end of file
+}
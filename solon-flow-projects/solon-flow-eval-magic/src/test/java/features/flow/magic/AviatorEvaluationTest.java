@@ -34,4 +34,50 @@ public class AviatorEvaluationTest {
         System.out.println(context.get("result"));
         assert ((Number) context.get("result")).intValue() == 5;
     }
+
+    @Test
+    public void case_binding() throws Throwable {
+        //只绑定脚本中出现的变量（上下文里其它变量不复制）
+        FlowEngine engine = FlowEngine.newInstance();
+        engine.register(new SimpleFlowDriver(new MagicEvaluation(2)));
+
+        engine.load("classpath:flow/*");
+
+        for (int i = 0; i < 100; i++) {
+            FlowContext context = FlowContext.of();
+            context.put("a", i);
+            context.put("b", 50);
+
+            for (int k = 0; k < 100; k++) {
+                context.put("x" + k, k);
+            }
+
+            engine.eval("f1", context);
+
+            if (i > 50) {
+                assert ((Number) context.get("result")).intValue() == i + 50;
+            } else {
+                assert context.get("result") == null;
+            }
+        }
+    }
+
+    @Test
+    public void case_binding_scope() throws Throwable {
+        //出现在字符串中的名字只是多余绑定；同一脚本多次运行，绑定随上下文变化
+        MagicEvaluation evaluation = new MagicEvaluation(2);
+
+        FlowContext context = FlowContext.of();
+        context.put("a", 3);
+        context.put("b", 2);
+
+        assert evaluation.runCondition(context, "a > b");
+        assert evaluation.runCondition(context, "\"b\" != null && a > 1");
+
+        evaluation.runTask(context, "context.put(\"result\", a + b)");
+        assert ((Number) context.get("result")).intValue() == 5;
+
+        context.put("a", 1);
+        assert evaluation.runCondition(context, "a > b") == false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 状态缓冲（一次操作内使用：状态只加载一次，变更在操作结束时一次性应用）
+ *
+ * @author noear
+ * @since 4.0
+ */
+class StateBuffer implements StateRepository {
+    static final String KEY = StateBuffer.class.getSimpleName();
+
+    private final StateRepository delegate;
+    private final Map<String, TaskState> cache = new HashMap<>();
+    private final StateChanges changes = new StateChanges();
+    //缓存是否为全量（全量时，没有的即为 UNKNOWN）
+    private boolean complete;
+    private boolean loaded;
+    //应用变更时的比较条件（可选）
+    private Node guardNode;
+    private TaskState guardState;
+
+    StateBuffer(StateRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    StateRepository delegate() {
+        return delegate;
+    }
+
+    private void load(FlowContext context) {
+        if (loaded == false) {
+            loaded = true;
+
+            Map<String, TaskState> states = delegate.statesGet(context);
+            if (states != null) {
+                //之前已有的变更优先（比如先清空了）
+                for (Map.Entry<String, TaskState> kv : states.entrySet()) {
+                    cache.putIfAbsent(kv.getKey(), kv.getValue());
+                }
+                complete = true;
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> varsGet(FlowContext context, Node node) {
+        return delegate.varsGet(context, node);
+    }
+
+    @Override
+    public TaskState stateGet(FlowContext context, Node node) {
+        if (complete == false) {
+            load(context);
+        }
+
+        String stateKey = StateRepository.stateKey(node);
+        TaskState state = cache.get(stateKey);
+
+        if (state == null) {
+            if (complete) {
+                state = TaskState.UNKNOWN;
+            } else {
+                state = delegate.stateGet(context, node);
+                cache.put(stateKey, state);
+            }
+        }
+
+        return state;
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        cache.put(StateRepository.stateKey(node), state);
+        changes.put(node, state);
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        cache.put(StateRepository.stateKey(node), TaskState.UNKNOWN);
+        changes.remove(node);
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        cache.clear();
+        changes.clear();
+        complete = true;
+    }
+
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        return null;
+    }
+
+    /**
+     * 设定比较条件（应用变更时，节点状态仍为预期才应用）
+     */
+    void guard(Node node, TaskState expected) {
+        this.guardNode = node;
+        this.guardState = expected;
+    }
+
+    /**
+     * 应用变更（没有变更时，不访问仓库）
+     *
+     * @return 是否已应用（比较条件不成立时为 false）
+     */
+    boolean flush(FlowContext context) {
+        if (changes.isEmpty()) {
+            return true;
+        }
+
+        if (guardNode == null) {
+            delegate.stateApply(context, changes);
+            return true;
+        } else {
+            return delegate.stateCompareAndApply(context, guardNode, guardState, changes);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow;
+
+import org.noear.solon.flow.Node;
+import org.noear.solon.lang.Preview;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 状态变更集（先清空，再按顺序推入或移除；同一节点只保留最后的变更）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class StateChanges {
+    private final Map<Node, TaskState> changes = new LinkedHashMap<>();
+    private boolean cleared;
+
+    /**
+     * 推入
+     */
+    public StateChanges put(Node node, TaskState state) {
+        Objects.requireNonNull(state, "state");
+
+        changes.remove(node);
+        changes.put(node, state);
+        return this;
+    }
+
+    /**
+     * 移除
+     */
+    public StateChanges remove(Node node) {
+        changes.remove(node);
+        changes.put(node, null);
+        return this;
+    }
+
+    /**
+     * 清空（之前的变更也不再需要）
+     */
+    public StateChanges clear() {
+        changes.clear();
+        cleared = true;
+        return this;
+    }
+
+    /**
+     * 是否清空
+     */
+    public boolean isCleared() {
+        return cleared;
+    }
+
+    /**
+     * 是否为空
+     */
+    public boolean isEmpty() {
+        return cleared == false && changes.isEmpty();
+    }
+
+    /**
+     * 变更（按顺序；值为 null 时，表示移除）
+     */
+    public Map<Node, TaskState> getChanges() {
+        return Collections.unmodifiableMap(changes);
+    }
+
+    @Override
+    public String toString() {
+        return "StateChanges{" +
+                "cleared=" + cleared +
+                ", changes=" + changes.size() +
+                '}';
+    }
+}
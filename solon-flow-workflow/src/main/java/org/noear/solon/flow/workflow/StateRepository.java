@@ -17,8 +17,10 @@ package org.noear.solon.flow.workflow;
 
 import org.noear.solon.flow.FlowContext;
 import org.noear.solon.flow.Node;
+import org.noear.solon.lang.Nullable;
 import org.noear.solon.lang.Preview;
 
+import java.util.Collection;
 import java.util.Map;
 
 /**
@@ -55,4 +57,82 @@ public interface StateRepository {
      * 状态清空
      */
     void stateClear(FlowContext context);
+
+    /// ////////////////////////////
+
+    /**
+     * 状态键（图id:节点id）
+     *
+     * @since 4.0
+     */
+    static String stateKey(Node node) {
+        return node.getGraph().getId() + ":" + node.getId();
+    }
+
+    /**
+     * 状态全部获取（键为 {@link #stateKey(Node)}；不支持时为 null，则按节点逐个获取）
+     *
+     * @since 4.0
+     */
+    default @Nullable Map<String, TaskState> statesGet(FlowContext context) {
+        return null;
+    }
+
+    /**
+     * 状态批量推入
+     *
+     * @since 4.0
+     */
+    default void statesPut(FlowContext context, Map<Node, TaskState> states) {
+        for (Map.Entry<Node, TaskState> kv : states.entrySet()) {
+            statePut(context, kv.getKey(), kv.getValue());
+        }
+    }
+
+    /**
+     * 状态批量移除
+     *
+     * @since 4.0
+     */
+    default void statesRemove(FlowContext context, Collection<Node> nodes) {
+        for (Node node : nodes) {
+            stateRemove(context, node);
+        }
+    }
+
+    /**
+     * 状态变更应用（默认逐个应用；支持原子性的仓库，应重写）
+     *
+     * @since 4.0
+     */
+    default void stateApply(FlowContext context, StateChanges changes) {
+        if (changes.isCleared()) {
+            stateClear(context);
+        }
+
+        for (Map.Entry<Node, TaskState> kv : changes.getChanges().entrySet()) {
+            if (kv.getValue() == null) {
+                stateRemove(context, kv.getKey());
+            } else {
+                statePut(context, kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /**
+     * 状态比较后应用（节点状态仍为预期时，才应用变更；默认不是原子的，要靠执行器的锁。支持原子性的仓库，应重写）
+     *
+     * @param node     比较的节点
+     * @param expected 预期状态
+     * @return 是否已应用
+     * @since 4.0
+     */
+    default boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        if (stateGet(context, node) != expected) {
+            return false;
+        }
+
+        stateApply(context, changes);
+        return true;
+    }
 }
\ No newline at end of file
@@ -59,6 +59,14 @@ public interface WorkflowExecutor extends NonSerializable {
         return new WorkflowExecutorDefault(engine, stateController, stateRepository);
     }
 
+    /**
+     * @param locker 锁提供者（按流实例加锁；可以是分布式锁）
+     * @since 4.0
+     */
+    static WorkflowExecutor of(FlowEngine engine, StateController stateController, StateRepository stateRepository, WorkflowLocker locker) {
+        return new WorkflowExecutorDefault(engine, stateController, stateRepository, locker);
+    }
+
     /**
      * 流程引擎
      */
@@ -16,12 +16,13 @@
 package org.noear.solon.flow.workflow;
 
 import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.locker.KeyedWorkflowLocker;
 import org.noear.solon.lang.Nullable;
 import org.noear.solon.lang.Preview;
 
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.Lock;
 
 /**
  * 工作流服务默认实现
@@ -36,13 +37,23 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
     private final transient FlowEngine engine;
     private final StateController stateController;
     private final StateRepository stateRepository;
-
-    private final transient ReentrantLock LOCKER = new ReentrantLock();
+    private final transient WorkflowLocker locker;
 
     public WorkflowExecutorDefault(FlowEngine engine, StateController stateController, StateRepository stateRepository) {
+        this(engine, stateController, stateRepository, new KeyedWorkflowLocker());
+    }
+
+    /**
+     * @param locker 锁提供者（按流实例加锁；嵌套提交别的实例时的死锁风险，见 {@link WorkflowLocker}）
+     * @since 4.0
+     */
+    public WorkflowExecutorDefault(FlowEngine engine, StateController stateController, StateRepository stateRepository, WorkflowLocker locker) {
+        Objects.requireNonNull(locker, "locker");
+
         this.engine = engine;
         this.stateController = stateController;
         this.stateRepository = stateRepository;
+        this.locker = locker;
     }
 
     /// ////////////////////////////////
@@ -62,8 +73,84 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
         return stateRepository;
     }
 
-    private FlowDriver getDriver(Graph graph) {
-        return new WorkflowDriver(engine.getDriver(graph), stateController, stateRepository);
+    /**
+     * 锁提供者
+     *
+     * @since 4.0
+     */
+    public WorkflowLocker locker() {
+        return locker;
+    }
+
+    private FlowDriver getDriver(Graph graph, StateRepository states) {
+        return new WorkflowDriver(engine.getDriver(graph), stateController, states);
+    }
+
+    /**
+     * 当前操作的状态（操作内为状态缓冲）
+     *
+     * @since 4.0
+     */
+    protected StateRepository states(FlowContext context) {
+        StateBuffer buffer = context.getAs(StateBuffer.KEY);
+
+        if (buffer != null && buffer.delegate() == stateRepository) {
+            return buffer;
+        } else {
+            return stateRepository;
+        }
+    }
+
+    /**
+     * 在状态缓冲内处理（状态只加载一次，变更一次性应用。已在缓冲内的，直接处理）
+     *
+     * <p>出错时，先应用出错前已产生的变更（比如自动前进的进度），再抛出异常</p>
+     *
+     * @since 4.0
+     */
+    protected void withStates(FlowContext context, Runnable handler) {
+        withStates(context, null, null, handler);
+    }
+
+    /**
+     * 在状态缓冲内处理（应用变更时，比较节点状态仍为预期；已在缓冲内的，由外层应用）
+     *
+     * <p>不比较时，出错前已产生的变更会先应用再抛出异常；比较时（比如提交等待中的任务），出错则放弃全部变更</p>
+     *
+     * @param guardNode  比较的节点（为 null 时，不比较）
+     * @param guardState 预期状态
+     * @return 是否已应用
+     * @since 4.0
+     */
+    protected boolean withStates(FlowContext context, @Nullable Node guardNode, TaskState guardState, Runnable handler) {
+        StateBuffer buffer = context.getAs(StateBuffer.KEY);
+
+        if (buffer != null && buffer.delegate() == stateRepository) {
+            handler.run();
+            return true;
+        } else {
+            StateBuffer buffer2 = new StateBuffer(stateRepository);
+            if (guardNode != null) {
+                buffer2.guard(guardNode, guardState);
+            }
+
+            try {
+                context.with(StateBuffer.KEY, buffer2, handler::run);
+            } catch (Throwable e) {
+                if (guardNode == null) {
+                    //保留出错前的进度
+                    try {
+                        buffer2.flush(context);
+                    } catch (Throwable e2) {
+                        e.addSuppressed(e2);
+                    }
+                }
+
+                throw e;
+            }
+
+            return buffer2.flush(context);
+        }
     }
 
 
@@ -78,13 +165,15 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
     public Collection<Task> findNextTasks(Graph graph, FlowContext context) {
         WorkflowIntent intent = new WorkflowIntent(graph, WorkflowIntent.IntentType.FIND_NEXT_TASKS);
 
-        context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
-            FlowDriver driver = getDriver(graph);
+        withStates(context, () -> {
+            context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
+                FlowDriver driver = getDriver(graph, states(context));
 
-            FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
-            exchanger.recordClear();
+                FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
+                exchanger.recordClear();
 
-            engine.eval(graph, exchanger, null);
+                engine.eval(graph, exchanger, null);
+            });
         });
 
         return intent.nextTasks;
@@ -94,13 +183,15 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
     public @Nullable Task findTask(Graph graph, FlowContext context) {
         WorkflowIntent intent = new WorkflowIntent(graph, WorkflowIntent.IntentType.FIND_TASK);
 
-        context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
-            FlowDriver driver = getDriver(graph);
+        withStates(context, () -> {
+            context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
+                FlowDriver driver = getDriver(graph, states(context));
 
-            FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
-            exchanger.recordClear();
+                FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
+                exchanger.recordClear();
 
-            engine.eval(graph, exchanger, null);
+                engine.eval(graph, exchanger, null);
+            });
         });
 
         return intent.task;
@@ -115,13 +206,15 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
     public Task claimTask(Graph graph, FlowContext context) {
         WorkflowIntent intent = new WorkflowIntent(graph, WorkflowIntent.IntentType.CLAIM_TASK);
 
-        context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
-            FlowDriver driver = getDriver(graph);
+        withStates(context, () -> {
+            context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
+                FlowDriver driver = getDriver(graph, states(context));
 
-            FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
-            exchanger.recordClear();
+                FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
+                exchanger.recordClear();
 
-            engine.eval(graph, exchanger, null);
+                engine.eval(graph, exchanger, null);
+            });
         });
 
         return intent.task;
@@ -129,7 +222,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
 
     @Override
     public TaskState getState(Node node, FlowContext context) {
-        return stateRepository.stateGet(context, node);
+        return states(context).stateGet(context, node);
     }
 
     /// ////////////////////////////////
@@ -144,36 +237,48 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
             return false;
         }
 
-        LOCKER.lock();
+        Lock lock = locker.getLock(context.getInstanceId());
+        lock.lock();
 
         try {
-            if (stateRepository.stateGet(context, task.getNode()) != TaskState.WAITING ||
-                    stateController.isOperatable(context, task.getNode()) == false) {
-                //如果不是等待（双重确认）
-                return false;
-            }
+            boolean[] submitted = {false};
+
+            //应用变更时，再比较一次（仓库支持原子性时，可跨进程确认状态只应用一次；任务处理已经运行，所以锁仍是必需的）
+            boolean applied = withStates(context, task.getNode(), TaskState.WAITING, () -> {
+                if (states(context).stateGet(context, task.getNode()) != TaskState.WAITING ||
+                        stateController.isOperatable(context, task.getNode()) == false) {
+                    //如果不是等待（双重确认）
+                    return;
+                }
 
-            WorkflowIntent intent = new WorkflowIntent(task.getRootGraph(), WorkflowIntent.IntentType.SUBMIT_TASK);
-            context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
-                submitTaskDo(task.getRootGraph(), task.getNode(), action, context);
+                WorkflowIntent intent = new WorkflowIntent(task.getRootGraph(), WorkflowIntent.IntentType.SUBMIT_TASK);
+                context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
+                    submitTaskDo(task.getRootGraph(), task.getNode(), action, context);
+                });
+
+                submitted[0] = true;
             });
+
+            return submitted[0] && applied;
         } finally {
-            LOCKER.unlock();
+            lock.unlock();
         }
-        return true;
     }
 
     @Override
     public void submitTask(Graph graph, Node node, TaskAction action, FlowContext context) {
-        LOCKER.lock();
+        Lock lock = locker.getLock(context.getInstanceId());
+        lock.lock();
 
         try {
-            WorkflowIntent intent = new WorkflowIntent(graph, WorkflowIntent.IntentType.SUBMIT_TASK);
-            context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
-                submitTaskDo(graph, node, action, context);
+            withStates(context, () -> {
+                WorkflowIntent intent = new WorkflowIntent(graph, WorkflowIntent.IntentType.SUBMIT_TASK);
+                context.with(WorkflowIntent.INTENT_KEY, intent, () -> {
+                    submitTaskDo(graph, node, action, context);
+                });
             });
         } finally {
-            LOCKER.unlock();
+            lock.unlock();
         }
     }
 
@@ -181,7 +286,8 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
         if (action == TaskAction.UNKNOWN) {
             throw new IllegalArgumentException("StateOperation is UNKNOWN");
         }
-        FlowDriver driver = getDriver(graph);
+        StateRepository states = states(context);
+        FlowDriver driver = getDriver(graph, states);
         FlowExchanger exchanger = new FlowExchanger(graph, engine, driver, context, -1, new AtomicInteger(0));
 
         TaskState newState = action.getTargetState();
@@ -205,7 +311,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
                     //到目标节点了
                     if (task.getNode().equals(node)) {
                         //停到目标节点（让它成为待办）
-                        stateRepository.statePut(exchanger.context(), task.getNode(), TaskState.WAITING);
+                        states.statePut(exchanger.context(), task.getNode(), TaskState.WAITING);
                         break;
                     } else {
                         //后退（自动完成）
@@ -217,7 +323,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
             }
         } else if (action == TaskAction.RESTART) {
             //撤回全部（重新开始）
-            stateRepository.stateClear(exchanger.context());
+            states.stateClear(exchanger.context());
         } else if (action == TaskAction.FORWARD) {
             //前进
             forwardHandle(graph, node, newState, exchanger);
@@ -237,7 +343,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
                     //到目标节点了
                     if (task.getNode().equals(node)) {
                         //停到目标节点（让它成为待办）
-                        stateRepository.statePut(exchanger.context(), task.getNode(), TaskState.WAITING);
+                        states.statePut(exchanger.context(), task.getNode(), TaskState.WAITING);
                         break;
                     } else {
                         //前进（自动完成）
@@ -250,7 +356,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
             }
         } else {
             //其它（等待或通过或拒绝）
-            stateRepository.statePut(exchanger.context(), node, newState);
+            states.statePut(exchanger.context(), node, newState);
         }
     }
 
@@ -265,7 +371,7 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
         try {
             exchanger.reverting(false);
             exchanger.driver().postHandleTask(exchanger, node.getTask());
-            stateRepository.statePut(exchanger.context(), node, newState);
+            states(exchanger.context()).statePut(exchanger.context(), node, newState);
 
             //重新查找下一个可执行节点（可能为自动前进）
             for (Node nextNode : node.getNextNodes()) {
@@ -321,18 +427,18 @@ public class WorkflowExecutorDefault implements WorkflowExecutor {
         }
 
         //撤回自己
-        stateRepository.stateRemove(exchanger.context(), node);
+        states(exchanger.context()).stateRemove(exchanger.context(), node);
 
         //撤回之前的节点
         for (Node n1 : node.getPrevNodes()) {
             //移除状态（要求重来）
             if (n1.getType() == NodeType.ACTIVITY) {
-                stateRepository.stateRemove(exchanger.context(), n1);
+                states(exchanger.context()).stateRemove(exchanger.context(), n1);
             } else if (NodeType.isGateway(n1.getType())) {
                 //回退所有子节点
                 for (Node n2 : n1.getNextNodes()) {
                     if (n2.getType() == NodeType.ACTIVITY) {
-                        stateRepository.stateRemove(exchanger.context(), n2);
+                        states(exchanger.context()).stateRemove(exchanger.context(), n2);
                     }
                 }
                 //再到前一级
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 工作流锁提供者（提交任务时，按流实例加锁；可以是分布式锁）
+ *
+ * <p>注意：在一个实例的提交中（比如任务组件里）再提交另一个实例时，会同时持有两把锁。
+ * 两个线程以相反的顺序嵌套提交（A 中提交 B，同时 B 中提交 A）时，普通的锁会死锁；
+ * 分段锁下，不同实例可能共用一段锁，即使实例各不相同也可能出现。
+ * 默认的 KeyedWorkflowLocker 按实例id的顺序加锁，逆序且加不上时快速失败（不会死锁）。</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public interface WorkflowLocker {
+    /**
+     * 获取流实例的锁（同一实例须返回同一把锁，或等效的分布式锁）
+     *
+     * @param instanceId 流实例id
+     */
+    Lock getLock(String instanceId);
+}
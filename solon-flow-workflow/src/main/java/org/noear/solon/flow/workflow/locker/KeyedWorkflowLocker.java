@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.locker;
+
+import org.noear.solon.flow.FlowException;
+import org.noear.solon.flow.workflow.WorkflowLocker;
+import org.noear.solon.lang.Preview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按实例id的工作流锁（每个实例一把可重入锁；锁表按引用计数，没有线程使用时移除，内存有界）
+ *
+ * <p>嵌套提交（持有一个实例的锁时，再给另一个实例加锁）按实例id的顺序加锁：
+ * 目标id大于当前线程已持有的全部id时等待；否则只尝试加锁，加不上时抛出 FlowException（而不是等待）。
+ * 所以两个线程以相反的顺序嵌套提交时，其中一个会快速失败，不会死锁</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class KeyedWorkflowLocker implements WorkflowLocker {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    //当前线程持有的锁（按加锁顺序；全部释放后移除）
+    private final ThreadLocal<List<Entry>> held = new ThreadLocal<>();
+
+    /**
+     * 使用中的锁数量
+     */
+    public int getLockCount() {
+        return entries.size();
+    }
+
+    @Override
+    public Lock getLock(String instanceId) {
+        return new InstanceLock(instanceId == null ? "" : instanceId);
+    }
+
+    /// ////////////////////////////
+
+    private Entry acquire(String instanceId) {
+        return entries.compute(instanceId, (k, e) -> {
+            if (e == null) {
+                e = new Entry(k);
+            }
+
+            e.refs++;
+            return e;
+        });
+    }
+
+    private void release(Entry entry) {
+        entries.computeIfPresent(entry.instanceId, (k, e) -> (--e.refs == 0 ? null : e));
+    }
+
+    /**
+     * 是否需要按序等待（当前线程没有持有别的实例的锁，或目标id大于已持有的全部id）
+     */
+    private boolean inOrder(Entry entry) {
+        List<Entry> list = held.get();
+
+        if (list == null || entry.isHeldByCurrentThread()) {
+            return true;
+        }
+
+        for (Entry e : list) {
+            if (entry.instanceId.compareTo(e.instanceId) <= 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void pushHeld(Entry entry) {
+        List<Entry> list = held.get();
+        if (list == null) {
+            list = new ArrayList<>(2);
+            held.set(list);
+        }
+
+        list.add(entry);
+    }
+
+    private Entry popHeld(String instanceId) {
+        List<Entry> list = held.get();
+
+        if (list != null) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                Entry entry = list.get(i);
+
+                if (entry.instanceId.equals(instanceId)) {
+                    list.remove(i);
+
+                    if (list.isEmpty()) {
+                        held.remove();
+                    }
+
+                    return entry;
+                }
+            }
+        }
+
+        throw new IllegalMonitorStateException("The lock of instance '" + instanceId + "' is not held by the current thread");
+    }
+
+    private static FlowException outOfOrder(String instanceId) {
+        return new FlowException("The lock of instance '" + instanceId + "' is busy and out of order with the locks held by the current thread (a nested submit would risk a deadlock)");
+    }
+
+    /**
+     * 锁表项
+     */
+    private static class Entry extends ReentrantLock {
+        final String instanceId;
+        //在锁表的 compute 内修改
+        int refs;
+
+        Entry(String instanceId) {
+            this.instanceId = instanceId;
+        }
+    }
+
+    /**
+     * 实例锁（加锁时从锁表获取锁表项，解锁后归还）
+     */
+    private class InstanceLock implements Lock {
+        private final String instanceId;
+
+        InstanceLock(String instanceId) {
+            this.instanceId = instanceId;
+        }
+
+        @Override
+        public void lock() {
+            Entry entry = acquire(instanceId);
+
+            try {
+                if (inOrder(entry)) {
+                    entry.lock();
+                } else if (entry.tryLock() == false) {
+                    throw outOfOrder(instanceId);
+                }
+            } catch (RuntimeException | Error e) {
+                release(entry);
+                throw e;
+            }
+
+            pushHeld(entry);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            Entry entry = acquire(instanceId);
+
+            try {
+                if (inOrder(entry)) {
+                    entry.lockInterruptibly();
+                } else if (entry.tryLock() == false) {
+                    throw outOfOrder(instanceId);
+                }
+            } catch (InterruptedException | RuntimeException | Error e) {
+                release(entry);
+                throw e;
+            }
+
+            pushHeld(entry);
+        }
+
+        @Override
+        public boolean tryLock() {
+            Entry entry = acquire(instanceId);
+
+            if (entry.tryLock()) {
+                pushHeld(entry);
+                return true;
+            } else {
+                release(entry);
+                return false;
+            }
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            Entry entry = acquire(instanceId);
+            boolean locked = false;
+
+            try {
+                locked = entry.tryLock(time, unit);
+            } finally {
+                if (locked) {
+                    pushHeld(entry);
+                } else {
+                    release(entry);
+                }
+            }
+
+            return locked;
+        }
+
+        @Override
+        public void unlock() {
+            Entry entry = popHeld(instanceId);
+
+            try {
+                entry.unlock();
+            } finally {
+                release(entry);
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
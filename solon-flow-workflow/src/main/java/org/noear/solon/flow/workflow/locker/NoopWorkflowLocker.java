@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.locker;
+
+import org.noear.solon.flow.workflow.WorkflowLocker;
+import org.noear.solon.lang.Preview;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 无锁工作流锁（不加锁；用于调用方已保证同一实例不会并发提交的场景，比如每个实例只有一个消费者）
+ *
+ * <p>不加锁时，提交不再互斥。即使状态仓库支持原子比较，submitTaskIfWaiting 也只保证状态只被应用一次
+ * （比较发生在任务处理之后），任务仍可能被重复处理</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class NoopWorkflowLocker implements WorkflowLocker {
+    public static final NoopWorkflowLocker INSTANCE = new NoopWorkflowLocker();
+
+    private static final Lock NOOP_LOCK = new Lock() {
+        @Override
+        public void lock() {
+
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) {
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Override
+    public Lock getLock(String instanceId) {
+        return NOOP_LOCK;
+    }
+}
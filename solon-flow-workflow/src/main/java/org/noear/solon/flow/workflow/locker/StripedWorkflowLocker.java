@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.locker;
+
+import org.noear.solon.flow.workflow.WorkflowLocker;
+import org.noear.solon.lang.Preview;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分段工作流锁（按流实例id的哈希分段；内存有界，不同实例大多可以并发提交）
+ *
+ * <p>不同实例可能共用一段锁。在一个实例的提交中再提交另一个实例时，两个线程以相反的段序嵌套加锁会死锁
+ * （见 {@link WorkflowLocker}）；需要嵌套提交时，请移到锁外，或使用 KeyedWorkflowLocker</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class StripedWorkflowLocker implements WorkflowLocker {
+    /**
+     * 默认段数
+     */
+    public static final int DEFAULT_STRIPES = 256;
+
+    private final Lock[] locks;
+    private final int mask;
+
+    public StripedWorkflowLocker() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes 段数（向上取 2 的幂）
+     */
+    public StripedWorkflowLocker(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("The stripes must be greater than 0");
+        }
+
+        int size = 1;
+        while (size < stripes && size < (1 << 30)) {
+            size <<= 1;
+        }
+
+        this.locks = new Lock[size];
+        this.mask = size - 1;
+
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 段数
+     */
+    public int getStripes() {
+        return locks.length;
+    }
+
+    @Override
+    public Lock getLock(String instanceId) {
+        int h = (instanceId == null ? 0 : instanceId.hashCode());
+        //打散高位（与 HashMap 相同）
+        h ^= (h >>> 16);
+        return locks[h & mask];
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.repository;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.TaskState;
+import org.noear.solon.lang.Preview;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 缓存状态仓库（后写式：读取穿透到后端仓库并缓存；推入、移除先写缓存，再按实例合并后定时批量写入后端）
+ *
+ * <pre>{@code
+ * CachingStateRepository repository = new CachingStateRepository(new RedisStateRepository(client), 200);
+ * WorkflowExecutor workflow = WorkflowExecutor.of(engine, controller, repository);
+ *
+ * workflow.submitTask(task, TaskAction.FORWARD, context);
+ * repository.flush(context); //需要持久化确认时（持久化屏障）
+ * }</pre>
+ *
+ * <p>同一实例的写入按顺序进行（写入失败时，变更会合并回待写入，下次重试）。缓存只在本进程内有效，多进程共享后端仓库时不要使用</p>
+ *
+ * <p>缓存不持有流上下文，写入后端时只提供实例id（{@code FlowContext.of(instanceId)}）。关闭后的写入，直接写入后端</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class CachingStateRepository implements StateRepository, AutoCloseable {
+    static final Logger log = LoggerFactory.getLogger(CachingStateRepository.class);
+
+    private final StateRepository backing;
+    private final long expireMillis;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final ScheduledFuture<?> flushFuture;
+    private volatile boolean closed;
+
+    /**
+     * @param backing 后端仓库
+     */
+    public CachingStateRepository(StateRepository backing) {
+        this(backing, 200);
+    }
+
+    /**
+     * @param backing         后端仓库
+     * @param flushIntervalMs 写入间隔（毫秒）
+     */
+    public CachingStateRepository(StateRepository backing, long flushIntervalMs) {
+        this(backing, flushIntervalMs, TimeUnit.MINUTES.toMillis(10), null);
+    }
+
+    /**
+     * @param backing         后端仓库
+     * @param flushIntervalMs 写入间隔（毫秒）
+     * @param expireMs        空闲过期（毫秒；没有待写入的实例，空闲超过后移出缓存）
+     * @param scheduler       调度器（为 null 时，自建单线程调度器）
+     */
+    public CachingStateRepository(StateRepository backing, long flushIntervalMs, long expireMs, ScheduledExecutorService scheduler) {
+        Objects.requireNonNull(backing, "backing");
+
+        if (flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("The flushIntervalMs must be greater than 0");
+        }
+
+        this.backing = backing;
+        this.expireMillis = expireMs;
+
+        if (scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "solon-flow-state-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.ownScheduler = true;
+        } else {
+            this.scheduler = scheduler;
+            this.ownScheduler = false;
+        }
+
+        this.flushFuture = this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 后端仓库
+     */
+    public StateRepository getBacking() {
+        return backing;
+    }
+
+    /// ////////////////////////////
+
+    @Override
+    public Map<String, Object> varsGet(FlowContext context, Node node) {
+        return backing.varsGet(context, node);
+    }
+
+    @Override
+    public TaskState stateGet(FlowContext context, Node node) {
+        while (true) {
+            Entry entry = entry(context.getInstanceId());
+
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+
+                entry.touch();
+                return stateGetDo(context, entry, node);
+            }
+        }
+    }
+
+    private TaskState stateGetDo(FlowContext context, Entry entry, Node node) {
+        String stateKey = StateRepository.stateKey(node);
+
+        entry.load(context, backing);
+
+        TaskState state = entry.states.get(stateKey);
+        if (state == null) {
+            if (entry.complete) {
+                state = TaskState.UNKNOWN;
+            } else {
+                state = backing.stateGet(context, node);
+                entry.states.put(stateKey, state);
+            }
+        }
+
+        return state;
+    }
+
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        while (true) {
+            Entry entry = entry(context.getInstanceId());
+
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+
+                entry.touch();
+                entry.load(context, backing);
+
+                if (entry.complete == false) {
+                    //后端不支持全部获取
+                    return null;
+                }
+
+                Map<String, TaskState> result = new HashMap<>();
+                for (Map.Entry<String, TaskState> kv : entry.states.entrySet()) {
+                    if (kv.getValue() != TaskState.UNKNOWN) {
+                        result.put(kv.getKey(), kv.getValue());
+                    }
+                }
+
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        stateApply(context, new StateChanges().put(node, state));
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        stateApply(context, new StateChanges().remove(node));
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        stateApply(context, new StateChanges().clear());
+    }
+
+    @Override
+    public void stateApply(FlowContext context, StateChanges changes) {
+        stateCompareAndApply(context, null, null, changes);
+    }
+
+    /**
+     * 状态比较后应用（按缓存比较；本进程内是原子的）
+     */
+    @Override
+    public boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        Entry entry = stateCompareAndApplyDo(context, node, expected, changes);
+
+        if (entry == null) {
+            return false;
+        }
+
+        if (closed) {
+            //关闭后，不再定时写入（直接写入）
+            flushEntry(entry);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return 应用的实例缓存（比较不通过时为 null）
+     */
+    private Entry stateCompareAndApplyDo(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        while (true) {
+            Entry entry = entry(context.getInstanceId());
+
+            synchronized (entry) {
+                if (entry.evicted) {
+                    continue;
+                }
+
+                entry.touch();
+
+                if (node != null && stateGetDo(context, entry, node) != expected) {
+                    return null;
+                }
+
+                if (changes.isEmpty()) {
+                    return entry;
+                }
+
+                if (changes.isCleared()) {
+                    entry.states.clear();
+                    entry.complete = true;
+                }
+
+                for (Map.Entry<Node, TaskState> kv : changes.getChanges().entrySet()) {
+                    TaskState state = kv.getValue();
+                    entry.states.put(StateRepository.stateKey(kv.getKey()), state == null ? TaskState.UNKNOWN : state);
+                }
+
+                entry.pending = merge(entry.pending, changes);
+                return entry;
+            }
+        }
+    }
+
+    /// ////////////////////////////
+
+    /**
+     * 写入实例的待写入变更（持久化屏障：返回时，之前的变更都已写入后端）
+     */
+    public void flush(FlowContext context) {
+        Entry entry = entries.get(context.getInstanceId());
+        if (entry != null) {
+            flushEntry(entry);
+        }
+    }
+
+    /**
+     * 写入所有待写入变更（持久化屏障）
+     */
+    public void flush() {
+        for (Entry entry : entries.values()) {
+            flushEntry(entry);
+        }
+    }
+
+    /**
+     * 待写入的实例数
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.pending != null) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * 缓存的实例数
+     */
+    public int getCachedCount() {
+        return entries.size();
+    }
+
+    /**
+     * 关闭（写入所有待写入变更；自建的调度器会被关闭。之后的写入，直接写入后端）
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flushFuture.cancel(false);
+
+        if (ownScheduler) {
+            scheduler.shutdown();
+        }
+
+        flush();
+    }
+
+    /// ////////////////////////////
+
+    private Entry entry(String instanceId) {
+        return entries.computeIfAbsent(instanceId, Entry::new);
+    }
+
+    private void flushQuietly() {
+        long expireTime = System.currentTimeMillis() - expireMillis;
+
+        for (Map.Entry<String, Entry> kv : entries.entrySet()) {
+            Entry entry = kv.getValue();
+
+            try {
+                flushEntry(entry);
+            } catch (Throwable e) {
+                log.warn("State flush failed: {}", kv.getKey(), e);
+            }
+
+            synchronized (entry) {
+                if (entry.pending == null && entry.flushLock.isLocked() == false && entry.accessTime < expireTime) {
+                    entry.evicted = true;
+                    entries.remove(kv.getKey(), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * 写入（同实例按顺序；失败时合并回待写入）
+     */
+    private void flushEntry(Entry entry) {
+        entry.flushLock.lock();
+
+        try {
+            StateChanges changes;
+
+            synchronized (entry) {
+                changes = entry.pending;
+                entry.pending = null;
+            }
+
+            if (changes == null) {
+                return;
+            }
+
+            try {
+                backing.stateApply(FlowContext.of(entry.instanceId), changes);
+            } catch (Throwable e) {
+                synchronized (entry) {
+                    entry.pending = (entry.pending == null ? changes : merge(changes, entry.pending));
+                }
+
+                throw e;
+            }
+        } finally {
+            entry.flushLock.unlock();
+        }
+    }
+
+    /**
+     * 合并变更（后者在前者之后）
+     */
+    private static StateChanges merge(StateChanges first, StateChanges then) {
+        StateChanges merged = new StateChanges();
+
+        if (first != null && then.isCleared() == false) {
+            copyTo(first, merged);
+        }
+
+        copyTo(then, merged);
+        return merged;
+    }
+
+    private static void copyTo(StateChanges from, StateChanges to) {
+        if (from.isCleared()) {
+            to.clear();
+        }
+
+        for (Map.Entry<Node, TaskState> kv : from.getChanges().entrySet()) {
+            if (kv.getValue() == null) {
+                to.remove(kv.getKey());
+            } else {
+                to.put(kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /**
+     * 实例缓存
+     */
+    private static class Entry {
+        final String instanceId;
+        final ReentrantLock flushLock = new ReentrantLock();
+        //状态缓存（移除的为 UNKNOWN）
+        final Map<String, TaskState> states = new HashMap<>();
+        //缓存是否为全量
+        boolean complete;
+        boolean loaded;
+        boolean evicted;
+        long accessTime;
+        //待写入变更
+        StateChanges pending;
+
+        Entry(String instanceId) {
+            this.instanceId = instanceId;
+        }
+
+        void touch() {
+            accessTime = System.currentTimeMillis();
+        }
+
+        void load(FlowContext context, StateRepository backing) {
+            if (loaded == false && complete == false) {
+                //读取出错时，下次再加载
+                Map<String, TaskState> loadedStates = backing.statesGet(context);
+                loaded = true;
+
+                if (loadedStates != null) {
+                    for (Map.Entry<String, TaskState> kv : loadedStates.entrySet()) {
+                        states.putIfAbsent(kv.getKey(), kv.getValue());
+                    }
+                    complete = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.repository;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.TaskState;
+import org.noear.solon.lang.Preview;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑内存状态仓库（节点按 图id、节点id 登记为整数id，访问时不拼接状态键；每个实例的状态存于一个开放寻址的 int 数组，状态码不装箱）
+ *
+ * <p>每个状态占 4 个字节（节点id 与状态序号打包为一个 int）。可设定过期：经 complete 标记为已完成、且空闲超过 ttl 的实例会被移除（在写入时顺带清理，或调用 evictExpired）。没有等待中的任务并不表示已完成（比如等待别的用户办理时，不会记录等待状态），所以不会据此移除</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class CompactStateRepository implements StateRepository {
+    private static final TaskState[] STATES = TaskState.values();
+    private static final int STATE_BITS = 2;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+    //图id -> 节点id -> 节点整数id
+    private final Map<String, Map<String, Integer>> nodeIds = new ConcurrentHashMap<>();
+    //节点整数id -> 状态键
+    private volatile String[] stateKeys = new String[64];
+    private int nodeCount;
+
+    private final Map<String, Instance> instances = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+    private volatile long lastSweep = System.currentTimeMillis();
+
+    public CompactStateRepository() {
+        this(0);
+    }
+
+    /**
+     * @param ttlMillis 已完成（经 complete 标记）实例的空闲过期（毫秒；0 表示不过期）
+     */
+    public CompactStateRepository(long ttlMillis) {
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("The ttlMillis must not be negative");
+        }
+
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 实例数
+     */
+    public int getInstanceCount() {
+        return instances.size();
+    }
+
+    /**
+     * 登记的节点数
+     */
+    public synchronized int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * 移除实例
+     */
+    public void evict(String instanceId) {
+        Instance instance = instances.get(instanceId);
+
+        if (instance != null) {
+            synchronized (instance) {
+                instance.evicted = true;
+                instances.remove(instanceId, instance);
+            }
+        }
+    }
+
+    /**
+     * 标记实例已完成（之后空闲超过 ttl 会被移除；再有写入时取消标记）
+     */
+    public void complete(String instanceId) {
+        Instance instance = instances.get(instanceId);
+
+        if (instance != null) {
+            synchronized (instance) {
+                instance.touch();
+                instance.completed = true;
+            }
+        }
+    }
+
+    /**
+     * 移除过期的实例（已标记完成，且空闲超过 ttl）
+     *
+     * @return 移除的数量
+     */
+    public int evictExpired() {
+        if (ttlMillis == 0) {
+            return 0;
+        }
+
+        long now = System.currentTimeMillis();
+        long expireTime = now - ttlMillis;
+        int count = 0;
+
+        lastSweep = now;
+
+        for (Iterator<Instance> it = instances.values().iterator(); it.hasNext(); ) {
+            Instance instance = it.next();
+
+            synchronized (instance) {
+                if (instance.completed && instance.accessTime < expireTime) {
+                    //写入时发现已移除，会重新获取实例
+                    instance.evicted = true;
+                    it.remove();
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /// ////////////////////////////
+
+    @Override
+    public TaskState stateGet(FlowContext context, Node node) {
+        Instance instance = instances.get(context.getInstanceId());
+        int nodeId = findNodeId(node);
+
+        if (instance == null || nodeId < 0) {
+            return TaskState.UNKNOWN;
+        }
+
+        synchronized (instance) {
+            instance.touch();
+            return instance.get(nodeId);
+        }
+    }
+
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        Instance instance = instances.get(context.getInstanceId());
+        Map<String, TaskState> result = new HashMap<>();
+
+        if (instance != null) {
+            synchronized (instance) {
+                instance.touch();
+
+                //在实例锁内读取（表内的节点id都已登记）
+                String[] keys = stateKeys;
+
+                for (int slot : instance.table) {
+                    if (slot != Instance.EMPTY) {
+                        result.put(keys[slot >>> STATE_BITS], STATES[slot & STATE_MASK]);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        int nodeId = nodeId(node);
+
+        while (true) {
+            Instance instance = instance(context.getInstanceId());
+
+            synchronized (instance) {
+                if (instance.evicted) {
+                    continue;
+                }
+
+                instance.write();
+                instance.put(nodeId, state);
+                break;
+            }
+        }
+
+        sweepIfDue();
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        Instance instance = instances.get(context.getInstanceId());
+        int nodeId = findNodeId(node);
+
+        if (instance != null && nodeId >= 0) {
+            synchronized (instance) {
+                instance.write();
+                instance.remove(nodeId);
+            }
+        }
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        Instance instance = instances.get(context.getInstanceId());
+
+        if (instance != null) {
+            synchronized (instance) {
+                instance.write();
+                instance.clear();
+            }
+        }
+    }
+
+    @Override
+    public void stateApply(FlowContext context, StateChanges changes) {
+        stateCompareAndApply(context, null, null, changes);
+    }
+
+    /**
+     * 状态比较后应用（原子的）
+     */
+    @Override
+    public boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        //先登记节点（不在实例锁内）
+        int[] ids = new int[changes.getChanges().size()];
+        int i = 0;
+        for (Node n1 : changes.getChanges().keySet()) {
+            ids[i++] = nodeId(n1);
+        }
+
+        while (true) {
+            Instance instance = instance(context.getInstanceId());
+
+            synchronized (instance) {
+                if (instance.evicted) {
+                    continue;
+                }
+
+                instance.touch();
+
+                if (node != null) {
+                    int nodeId = findNodeId(node);
+                    TaskState state = (nodeId < 0 ? TaskState.UNKNOWN : instance.get(nodeId));
+
+                    if (state != expected) {
+                        return false;
+                    }
+                }
+
+                instance.write();
+
+                if (changes.isCleared()) {
+                    instance.clear();
+                }
+
+                i = 0;
+                for (TaskState state : changes.getChanges().values()) {
+                    if (state == null) {
+                        instance.remove(ids[i++]);
+                    } else {
+                        instance.put(ids[i++], state);
+                    }
+                }
+
+                break;
+            }
+        }
+
+        sweepIfDue();
+        return true;
+    }
+
+    /// ////////////////////////////
+
+    private Instance instance(String instanceId) {
+        return instances.computeIfAbsent(instanceId, k -> new Instance());
+    }
+
+    private void sweepIfDue() {
+        if (ttlMillis > 0 && System.currentTimeMillis() - lastSweep > ttlMillis) {
+            evictExpired();
+        }
+    }
+
+    /**
+     * 查找节点整数id（没有登记时为 -1）
+     */
+    private int findNodeId(Node node) {
+        Map<String, Integer> ids = nodeIds.get(node.getGraph().getId());
+        if (ids == null) {
+            return -1;
+        }
+
+        Integer id = ids.get(node.getId());
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * 获取节点整数id（没有时登记）
+     */
+    private int nodeId(Node node) {
+        int id = findNodeId(node);
+        if (id >= 0) {
+            return id;
+        }
+
+        synchronized (this) {
+            Map<String, Integer> ids = nodeIds.computeIfAbsent(node.getGraph().getId(), k -> new ConcurrentHashMap<>());
+            Integer id2 = ids.get(node.getId());
+            if (id2 != null) {
+                return id2;
+            }
+
+            String[] keys = stateKeys;
+            if (nodeCount == keys.length) {
+                keys = Arrays.copyOf(keys, nodeCount * 2);
+            }
+
+            //先发布状态键，再发布id
+            keys[nodeCount] = StateRepository.stateKey(node);
+            stateKeys = keys;
+            ids.put(node.getId(), nodeCount);
+            return nodeCount++;
+        }
+    }
+
+    /**
+     * 实例状态（开放寻址的 int 表；槽位为 节点id << 2 | 状态序号，空槽为 -1）
+     */
+    private static class Instance {
+        static final int EMPTY = -1;
+
+        int[] table = newTable(4);
+        int size;
+        long accessTime;
+        boolean completed;
+        boolean evicted;
+
+        static int[] newTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+
+        void touch() {
+            accessTime = System.currentTimeMillis();
+        }
+
+        void write() {
+            touch();
+            completed = false;
+        }
+
+        private int indexOf(int nodeId) {
+            int mask = table.length - 1;
+            int i = mix(nodeId) & mask;
+
+            while (true) {
+                int slot = table[i];
+                if (slot == EMPTY || (slot >>> STATE_BITS) == nodeId) {
+                    return i;
+                }
+
+                i = (i + 1) & mask;
+            }
+        }
+
+        private static int mix(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        TaskState get(int nodeId) {
+            int slot = table[indexOf(nodeId)];
+            return slot == EMPTY ? TaskState.UNKNOWN : STATES[slot & STATE_MASK];
+        }
+
+        void put(int nodeId, TaskState state) {
+            int i = indexOf(nodeId);
+            int old = table[i];
+
+            if (old == EMPTY) {
+                size++;
+            }
+
+            table[i] = (nodeId << STATE_BITS) | state.ordinal();
+
+            //负载不超过 3/4
+            if (size * 4 > table.length * 3) {
+                resize(table.length * 2);
+            }
+        }
+
+        void remove(int nodeId) {
+            int mask = table.length - 1;
+            int i = indexOf(nodeId);
+            int old = table[i];
+
+            if (old == EMPTY) {
+                return;
+            }
+
+            size--;
+
+            //向后移位删除（保持探测链不断开）
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                int slot = table[j];
+                if (slot == EMPTY) {
+                    break;
+                }
+
+                int k = mix(slot >>> STATE_BITS) & mask;
+                //k 不在 (i, j] 之间时，可以移到 i
+                if ((j > i && (k <= i || k > j)) || (j < i && (k <= i && k > j))) {
+                    table[i] = slot;
+                    i = j;
+                }
+            }
+
+            table[i] = EMPTY;
+        }
+
+        void clear() {
+            table = newTable(4);
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            int[] old = table;
+            table = newTable(capacity);
+
+            for (int slot : old) {
+                if (slot != EMPTY) {
+                    table[indexOf(slot >>> STATE_BITS)] = slot;
+                }
+            }
+        }
+    }
+}
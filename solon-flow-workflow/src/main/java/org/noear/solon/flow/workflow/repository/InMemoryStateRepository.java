@@ -17,9 +17,12 @@ package org.noear.solon.flow.workflow.repository;
 
 import org.noear.solon.flow.FlowContext;
 import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
 import org.noear.solon.flow.workflow.StateRepository;
 import org.noear.solon.flow.workflow.TaskState;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -39,7 +42,7 @@ public class InMemoryStateRepository implements StateRepository {
 
     @Override
     public TaskState stateGet(FlowContext context, Node node) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
 
         Integer code = getStates(context.getInstanceId()).get(stateKey);
         if (code == null) {
@@ -51,13 +54,13 @@ public class InMemoryStateRepository implements StateRepository {
 
     @Override
     public void statePut(FlowContext context, Node node, TaskState state) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
         getStates(context.getInstanceId()).put(stateKey, state.getCode());
     }
 
     @Override
     public void stateRemove(FlowContext context, Node node) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
         getStates(context.getInstanceId()).remove(stateKey);
     }
 
@@ -65,4 +68,84 @@ public class InMemoryStateRepository implements StateRepository {
     public void stateClear(FlowContext context) {
         getStates(context.getInstanceId()).clear();
     }
+
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        Map<String, Integer> states = getStates(context.getInstanceId());
+        Map<String, TaskState> result = new HashMap<>();
+
+        synchronized (states) {
+            for (Map.Entry<String, Integer> kv : states.entrySet()) {
+                result.put(kv.getKey(), TaskState.codeOf(kv.getValue()));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void statesPut(FlowContext context, Map<Node, TaskState> states) {
+        Map<String, Integer> tmp = new HashMap<>();
+        for (Map.Entry<Node, TaskState> kv : states.entrySet()) {
+            tmp.put(StateRepository.stateKey(kv.getKey()), kv.getValue().getCode());
+        }
+
+        getStates(context.getInstanceId()).putAll(tmp);
+    }
+
+    @Override
+    public void statesRemove(FlowContext context, Collection<Node> nodes) {
+        Map<String, Integer> states = getStates(context.getInstanceId());
+        for (Node node : nodes) {
+            states.remove(StateRepository.stateKey(node));
+        }
+    }
+
+    /**
+     * 状态变更应用（同实例的 statesGet 与之互斥，不会读到一半的变更）
+     */
+    @Override
+    public void stateApply(FlowContext context, StateChanges changes) {
+        Map<String, Integer> states = getStates(context.getInstanceId());
+
+        synchronized (states) {
+            applyDo(states, changes);
+        }
+    }
+
+    /**
+     * 状态比较后应用（原子的）
+     */
+    @Override
+    public boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        Map<String, Integer> states = getStates(context.getInstanceId());
+
+        synchronized (states) {
+            Integer code = states.get(StateRepository.stateKey(node));
+            TaskState state = (code == null ? TaskState.UNKNOWN : TaskState.codeOf(code));
+
+            if (state != expected) {
+                return false;
+            }
+
+            applyDo(states, changes);
+            return true;
+        }
+    }
+
+    private void applyDo(Map<String, Integer> states, StateChanges changes) {
+        if (changes.isCleared()) {
+            states.clear();
+        }
+
+        for (Map.Entry<Node, TaskState> kv : changes.getChanges().entrySet()) {
+            String stateKey = StateRepository.stateKey(kv.getKey());
+
+            if (kv.getValue() == null) {
+                states.remove(stateKey);
+            } else {
+                states.put(stateKey, kv.getValue().getCode());
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.repository;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.FlowException;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.TaskState;
+import org.noear.solon.lang.Preview;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Jdbc 状态仓库（行键为 (instance_id, graph_id, node_id)；一次查询加载实例的全部状态，变更在一个事务内批量写入）
+ *
+ * <pre>{@code
+ * JdbcStateRepository repository = new JdbcStateRepository(dataSource, "flow_state", 8); //按实例哈希分为 8 个表
+ * repository.createTables(); //或者自行建表（见 getCreateSql）
+ * }</pre>
+ *
+ * <p>推入为先更新，没有行时再插入（不依赖方言的 upsert；并发的首次插入发生主键冲突时，整个事务重试）。分表后，每个实例只落在一个表，可减少大量实例并发时的索引争用</p>
+ *
+ * <p>更新按匹配的行数判断是否有行（MySQL 连接不要开启 useAffectedRows）</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class JdbcStateRepository implements StateRepository {
+    //主键冲突时的最大重试次数
+    private static final int MAX_RETRIES = 3;
+
+    private final DataSource dataSource;
+    private final String tableName;
+    private final String[] tableNames;
+
+    public JdbcStateRepository(DataSource dataSource) {
+        this(dataSource, "flow_state", 1);
+    }
+
+    /**
+     * @param dataSource 数据源
+     * @param tableName  表名（分表时为表名前缀，实际表名为 tableName_0 ... tableName_n）
+     * @param partitions 分表数（1 为不分表）
+     */
+    public JdbcStateRepository(DataSource dataSource, String tableName, int partitions) {
+        Objects.requireNonNull(dataSource, "dataSource");
+
+        if (tableName == null || tableName.matches("[A-Za-z_][A-Za-z0-9_]*") == false) {
+            throw new IllegalArgumentException("Invalid table name: " + tableName);
+        }
+
+        if (partitions < 1) {
+            throw new IllegalArgumentException("The partitions must be greater than 0");
+        }
+
+        this.dataSource = dataSource;
+        this.tableName = tableName;
+        this.tableNames = new String[partitions];
+
+        if (partitions == 1) {
+            tableNames[0] = tableName;
+        } else {
+            for (int i = 0; i < partitions; i++) {
+                tableNames[i] = tableName + "_" + i;
+            }
+        }
+    }
+
+    /**
+     * 全部表名
+     */
+    public List<String> getTableNames() {
+        return Collections.unmodifiableList(Arrays.asList(tableNames));
+    }
+
+    /**
+     * 获取实例所在的表名
+     */
+    public String getTableName(String instanceId) {
+        if (tableNames.length == 1) {
+            return tableNames[0];
+        }
+
+        int h = (instanceId == null ? 0 : instanceId.hashCode());
+        //打散高位（与 HashMap 相同）
+        h ^= (h >>> 16);
+        return tableNames[Math.floorMod(h, tableNames.length)];
+    }
+
+    /**
+     * 建表脚本（主键即查询键；另加含状态的覆盖索引，加载时不用回表。主键为聚簇索引的库，比如 MySQL InnoDB，不需要覆盖索引）
+     */
+    public List<String> getCreateSql(String table) {
+        return Arrays.asList(getCreateTableSql(table), getCreateIndexSql(table));
+    }
+
+    /**
+     * 建表脚本（如果不存在）
+     */
+    protected String getCreateTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (" +
+                "instance_id VARCHAR(128) NOT NULL, " +
+                "graph_id VARCHAR(128) NOT NULL, " +
+                "node_id VARCHAR(128) NOT NULL, " +
+                "state INT NOT NULL, " +
+                "PRIMARY KEY (instance_id, graph_id, node_id))";
+    }
+
+    /**
+     * 覆盖索引脚本（不带 IF NOT EXISTS，有的库不支持；是否存在由 createTables 检测）
+     */
+    protected String getCreateIndexSql(String table) {
+        return "CREATE INDEX " + getIndexName(table) + " ON " + table + " (instance_id, graph_id, node_id, state)";
+    }
+
+    /**
+     * 覆盖索引名
+     */
+    protected String getIndexName(String table) {
+        return table + "_cover";
+    }
+
+    /**
+     * 建表（如果不存在；覆盖索引按元数据检测是否存在，主键为聚簇索引的库则跳过）
+     */
+    public void createTables() {
+        try (Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            DatabaseMetaData meta = conn.getMetaData();
+            boolean clustered = isClusteredPrimaryKey(meta);
+
+            for (String table : tableNames) {
+                stmt.execute(getCreateTableSql(table));
+
+                if (clustered == false && indexExists(conn, meta, table, getIndexName(table)) == false) {
+                    stmt.execute(getCreateIndexSql(table));
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowException("State tables create failed: " + tableName, e);
+        }
+    }
+
+    /**
+     * 主键是否为聚簇索引（MySQL InnoDB、MariaDB；主键已包含整行，覆盖索引是重复的）
+     */
+    protected boolean isClusteredPrimaryKey(DatabaseMetaData meta) throws SQLException {
+        String product = meta.getDatabaseProductName();
+        if (product == null) {
+            return false;
+        }
+
+        product = product.toLowerCase(Locale.ROOT);
+        return product.contains("mysql") || product.contains("mariadb");
+    }
+
+    private static boolean indexExists(Connection conn, DatabaseMetaData meta, String table, String index) throws SQLException {
+        //未加引号的标识符，按库的规则转换大小写
+        if (meta.storesUpperCaseIdentifiers()) {
+            table = table.toUpperCase(Locale.ROOT);
+        } else if (meta.storesLowerCaseIdentifiers()) {
+            table = table.toLowerCase(Locale.ROOT);
+        }
+
+        try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, table, false, true)) {
+            while (rs.next()) {
+                if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /// ////////////////////////////
+
+    @Override
+    public TaskState stateGet(FlowContext context, Node node) {
+        String instanceId = context.getInstanceId();
+        String sql = "SELECT state FROM " + getTableName(instanceId) + " WHERE instance_id = ? AND graph_id = ? AND node_id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, instanceId);
+            stmt.setString(2, node.getGraph().getId());
+            stmt.setString(3, node.getId());
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return TaskState.codeOf(rs.getInt(1));
+                } else {
+                    return TaskState.UNKNOWN;
+                }
+            }
+        } catch (SQLException e) {
+            throw new FlowException("State get failed: " + instanceId, e);
+        }
+    }
+
+    /**
+     * 状态全部获取（一次查询）
+     */
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        String instanceId = context.getInstanceId();
+        String sql = "SELECT graph_id, node_id, state FROM " + getTableName(instanceId) + " WHERE instance_id = ?";
+
+        try (Connection conn = dataSource.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, instanceId);
+
+            Map<String, TaskState> states = new HashMap<>();
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    states.put(rs.getString(1) + ":" + rs.getString(2), TaskState.codeOf(rs.getInt(3)));
+                }
+            }
+
+            return states;
+        } catch (SQLException e) {
+            throw new FlowException("States get failed: " + instanceId, e);
+        }
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        stateApply(context, new StateChanges().put(node, state));
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        stateApply(context, new StateChanges().remove(node));
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        stateApply(context, new StateChanges().clear());
+    }
+
+    @Override
+    public void statesPut(FlowContext context, Map<Node, TaskState> states) {
+        StateChanges changes = new StateChanges();
+        for (Map.Entry<Node, TaskState> kv : states.entrySet()) {
+            changes.put(kv.getKey(), kv.getValue());
+        }
+
+        stateApply(context, changes);
+    }
+
+    @Override
+    public void statesRemove(FlowContext context, Collection<Node> nodes) {
+        StateChanges changes = new StateChanges();
+        for (Node node : nodes) {
+            changes.remove(node);
+        }
+
+        stateApply(context, changes);
+    }
+
+    /**
+     * 状态变更应用（一个事务）
+     */
+    @Override
+    public void stateApply(FlowContext context, StateChanges changes) {
+        if (changes.isEmpty() == false) {
+            stateCompareAndApply(context, null, null, changes);
+        }
+    }
+
+    /**
+     * 状态比较后应用（一个事务；预期状态有行时，会锁住该行再比较。并发的首次插入发生主键冲突时，整个事务重试）
+     */
+    @Override
+    public boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        String instanceId = context.getInstanceId();
+        String table = getTableName(instanceId);
+
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try {
+                for (int retries = 0; ; retries++) {
+                    try {
+                        if (node != null && compareDo(conn, table, instanceId, node, expected) == false) {
+                            conn.rollback();
+                            return false;
+                        }
+
+                        applyDo(conn, table, instanceId, changes);
+                        conn.commit();
+                        return true;
+                    } catch (SQLException e) {
+                        conn.rollback();
+
+                        if (retries < MAX_RETRIES && isDuplicateKey(e)) {
+                            //别的事务先插入了同一行（重试时会走更新）
+                            continue;
+                        }
+
+                        throw e;
+                    } catch (RuntimeException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new FlowException("States apply failed: " + instanceId, e);
+        }
+    }
+
+    /**
+     * 是否为唯一键冲突（只认唯一键的错误码；非空、外键、检查等约束冲突不重试）
+     *
+     * <p>SQLState 23505（PostgreSQL、H2、Derby、DB2）；SQLState 23000 且厂商码为 1062、1586（MySQL、MariaDB）、1（Oracle）、2627、2601（SQL Server）</p>
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+        for (SQLException tmp = e; tmp != null; tmp = tmp.getNextException()) {
+            String state = tmp.getSQLState();
+
+            if ("23505".equals(state)) {
+                return true;
+            }
+
+            if ("23000".equals(state)) {
+                switch (tmp.getErrorCode()) {
+                    case 1062:
+                    case 1586:
+                    case 1:
+                    case 2627:
+                    case 2601:
+                        return true;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    private boolean compareDo(Connection conn, String table, String instanceId, Node node, TaskState expected) throws SQLException {
+        if (expected != TaskState.UNKNOWN) {
+            //空更新（同时锁住行）
+            String sql = "UPDATE " + table + " SET state = state WHERE instance_id = ? AND graph_id = ? AND node_id = ? AND state = ?";
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, instanceId);
+                stmt.setString(2, node.getGraph().getId());
+                stmt.setString(3, node.getId());
+                stmt.setInt(4, expected.getCode());
+
+                return stmt.executeUpdate() > 0;
+            }
+        } else {
+            String sql = "SELECT state FROM " + table + " WHERE instance_id = ? AND graph_id = ? AND node_id = ?";
+
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, instanceId);
+                stmt.setString(2, node.getGraph().getId());
+                stmt.setString(3, node.getId());
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() == false || rs.getInt(1) == TaskState.UNKNOWN.getCode();
+                }
+            }
+        }
+    }
+
+    private void applyDo(Connection conn, String table, String instanceId, StateChanges changes) throws SQLException {
+        if (changes.isCleared()) {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE instance_id = ?")) {
+                stmt.setString(1, instanceId);
+                stmt.executeUpdate();
+            }
+        }
+
+        Map<Node, TaskState> map = changes.getChanges();
+        if (map.isEmpty()) {
+            return;
+        }
+
+        List<Node> removes = new ArrayList<>();
+        List<Map.Entry<Node, TaskState>> puts = new ArrayList<>();
+        for (Map.Entry<Node, TaskState> kv : map.entrySet()) {
+            if (kv.getValue() == null) {
+                removes.add(kv.getKey());
+            } else {
+                puts.add(kv);
+            }
+        }
+
+        //移除（清空后不需要）
+        if (removes.size() > 0 && changes.isCleared() == false) {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM " + table + " WHERE instance_id = ? AND graph_id = ? AND node_id = ?")) {
+                for (Node node : removes) {
+                    stmt.setString(1, instanceId);
+                    stmt.setString(2, node.getGraph().getId());
+                    stmt.setString(3, node.getId());
+                    stmt.addBatch();
+                }
+
+                stmt.executeBatch();
+            }
+        }
+
+        if (puts.isEmpty()) {
+            return;
+        }
+
+        //先更新（清空后不需要），没有行的再插入
+        List<Map.Entry<Node, TaskState>> inserts;
+        if (changes.isCleared()) {
+            inserts = puts;
+        } else {
+            inserts = new ArrayList<>();
+
+            try (PreparedStatement stmt = conn.prepareStatement("UPDATE " + table + " SET state = ? WHERE instance_id = ? AND graph_id = ? AND node_id = ?")) {
+                for (Map.Entry<Node, TaskState> kv : puts) {
+                    setUpdate(stmt, instanceId, kv);
+                    stmt.addBatch();
+                }
+
+                int[] counts = stmt.executeBatch();
+
+                for (int i = 0; i < puts.size(); i++) {
+                    int count = (i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+
+                    if (count == Statement.SUCCESS_NO_INFO) {
+                        //驱动没有给出行数，单独再更新一次（更新是幂等的）
+                        setUpdate(stmt, instanceId, puts.get(i));
+                        count = stmt.executeUpdate();
+                    }
+
+                    if (count == 0) {
+                        inserts.add(puts.get(i));
+                    }
+                }
+            }
+        }
+
+        if (inserts.isEmpty()) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + table + " (instance_id, graph_id, node_id, state) VALUES (?, ?, ?, ?)")) {
+            for (Map.Entry<Node, TaskState> kv : inserts) {
+                stmt.setString(1, instanceId);
+                stmt.setString(2, kv.getKey().getGraph().getId());
+                stmt.setString(3, kv.getKey().getId());
+                stmt.setInt(4, kv.getValue().getCode());
+                stmt.addBatch();
+            }
+
+            stmt.executeBatch();
+        }
+    }
+
+    private static void setUpdate(PreparedStatement stmt, String instanceId, Map.Entry<Node, TaskState> kv) throws SQLException {
+        stmt.setInt(1, kv.getValue().getCode());
+        stmt.setString(2, instanceId);
+        stmt.setString(3, kv.getKey().getGraph().getId());
+        stmt.setString(4, kv.getKey().getId());
+    }
+}
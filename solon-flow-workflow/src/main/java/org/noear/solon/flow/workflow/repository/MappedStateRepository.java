@@ -0,0 +1,539 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.repository;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.FlowException;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.TaskState;
+import org.noear.solon.lang.Preview;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射状态仓库（单机用：每次变更作为一条记录追加到内存映射的日志文件，内存中只保留最新状态的索引；启动时重放日志恢复，日志过大时压缩）
+ *
+ * <pre>{@code
+ * MappedStateRepository repository = new MappedStateRepository(Paths.get("data/flow-state.log"));
+ * WorkflowExecutor workflow = WorkflowExecutor.of(engine, controller, repository);
+ * }</pre>
+ *
+ * <p>记录格式：[长度 int][crc32 int][实例id utf][是否清空 byte][条数 int]{[状态键 utf][状态码 int]}...（状态码为 Integer.MIN_VALUE 时，表示移除）。
+ * 一次变更集为一条记录，恢复时整条生效或整条丢弃（遇到长度为 0 或校验不符的记录即停止）</p>
+ *
+ * <p>写入映射内存后，进程崩溃不会丢失（由操作系统回写）；要防断电，可开启 syncOnWrite（每次写入后刷盘）</p>
+ *
+ * <p>扩容与压缩时，旧的映射会立即释放（运行时不支持时，要等缓冲被回收）。
+ * 写入时触发的压缩失败，只记录日志，推迟到日志再增长一倍后重试（不影响写入）；
+ * 如果旧的映射释放不了且是 Windows（映射的文件在缓冲被回收前不能被替换，压缩会一直失败），写入时不再压缩</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class MappedStateRepository implements StateRepository, Closeable {
+    static final Logger log = LoggerFactory.getLogger(MappedStateRepository.class);
+
+    static final int MAGIC = 0x53464C31; //SFL1
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_HEADER_SIZE = 8;
+    static final int REMOVE_CODE = Integer.MIN_VALUE;
+
+    //映射释放器（为 null 时不支持，要等缓冲被回收）
+    static final Consumer<MappedByteBuffer> UNMAPPER = unmapper();
+
+    private final Path file;
+    private final int initialSize;
+    private final boolean syncOnWrite;
+    private final int compactMinSize;
+
+    //实例id -> 状态键 -> 状态码
+    private final Map<String, Map<String, Integer>> index = new HashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    //上次压缩后（或打开时）的日志大小
+    private int baseSize;
+    //写入时是否压缩
+    private boolean compactOnWrite = true;
+
+    public MappedStateRepository(Path file) {
+        this(file, 1 << 20, false);
+    }
+
+    /**
+     * @param file        日志文件
+     * @param initialSize 初始映射大小（字节；不够时加倍）
+     * @param syncOnWrite 每次写入后刷盘
+     */
+    public MappedStateRepository(Path file, int initialSize, boolean syncOnWrite) {
+        if (initialSize < 64) {
+            throw new IllegalArgumentException("The initialSize must be at least 64");
+        }
+
+        this.file = file;
+        this.initialSize = initialSize;
+        this.syncOnWrite = syncOnWrite;
+        this.compactMinSize = initialSize / 2;
+
+        try {
+            open();
+        } catch (IOException e) {
+            throw new FlowException("State log open failed: " + file, e);
+        }
+    }
+
+    /**
+     * 日志文件
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * 日志已用大小（字节）
+     */
+    public synchronized int getLogSize() {
+        return position;
+    }
+
+    /// ////////////////////////////
+
+    @Override
+    public synchronized TaskState stateGet(FlowContext context, Node node) {
+        Map<String, Integer> states = index.get(context.getInstanceId());
+        Integer code = (states == null ? null : states.get(StateRepository.stateKey(node)));
+
+        if (code == null) {
+            return TaskState.UNKNOWN;
+        } else {
+            return TaskState.codeOf(code);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, TaskState> statesGet(FlowContext context) {
+        Map<String, Integer> states = index.get(context.getInstanceId());
+        Map<String, TaskState> result = new HashMap<>();
+
+        if (states != null) {
+            for (Map.Entry<String, Integer> kv : states.entrySet()) {
+                result.put(kv.getKey(), TaskState.codeOf(kv.getValue()));
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        stateApply(context, new StateChanges().put(node, state));
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        stateApply(context, new StateChanges().remove(node));
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        stateApply(context, new StateChanges().clear());
+    }
+
+    /**
+     * 状态变更应用（一条记录）
+     */
+    @Override
+    public synchronized void stateApply(FlowContext context, StateChanges changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        if (buffer == null) {
+            throw new FlowException("State log is closed: " + file);
+        }
+
+        String instanceId = context.getInstanceId();
+        Map<String, Integer> entries = new HashMap<>();
+        for (Map.Entry<Node, TaskState> kv : changes.getChanges().entrySet()) {
+            entries.put(StateRepository.stateKey(kv.getKey()), kv.getValue() == null ? REMOVE_CODE : kv.getValue().getCode());
+        }
+
+        try {
+            append(encode(instanceId, changes.isCleared(), entries));
+            replay(instanceId, changes.isCleared(), entries);
+
+            if (compactOnWrite && position > compactMinSize && position > baseSize * 2) {
+                compactQuietly();
+            }
+        } catch (IOException e) {
+            throw new FlowException("State log write failed: " + file, e);
+        }
+    }
+
+    /**
+     * 状态比较后应用（原子的）
+     */
+    @Override
+    public synchronized boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        if (stateGet(context, node) != expected) {
+            return false;
+        }
+
+        stateApply(context, changes);
+        return true;
+    }
+
+    /// ////////////////////////////
+
+    /**
+     * 写入时压缩（失败时记录日志，推迟到日志再增长一倍后；原日志无法重新打开时才抛出）
+     */
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (FlowException e) {
+            if (channel == null) {
+                throw e;
+            }
+
+            if (UNMAPPER == null && isWindows()) {
+                //旧的映射释放不了，替换会一直失败
+                compactOnWrite = false;
+                log.warn("State log compact failed, disabled on write: {}", file, e);
+            } else {
+                log.warn("State log compact failed, postponed: {}", file, e);
+                baseSize = position;
+            }
+        }
+    }
+
+    private static boolean isWindows() {
+        return System.getProperty("os.name", "").toLowerCase().startsWith("windows");
+    }
+
+    /**
+     * 压缩（按当前索引重写日志：每个实例一条记录；失败时抛出异常，原日志保持可用）
+     */
+    public synchronized void compact() {
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+
+        try {
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(0).flip();
+                out.write(header);
+
+                for (Map.Entry<String, Map<String, Integer>> kv : index.entrySet()) {
+                    if (kv.getValue().isEmpty() == false) {
+                        byte[] payload = encode(kv.getKey(), true, kv.getValue());
+                        out.write(record(payload));
+                    }
+                }
+
+                out.force(true);
+            }
+
+            close();
+
+            try {
+                try {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                //替换失败时，重新打开原日志
+                index.clear();
+                open();
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException e2) {
+                e.addSuppressed(e2);
+            }
+
+            throw new FlowException("State log compact failed: " + file, e);
+        }
+    }
+
+    /**
+     * 刷盘
+     */
+    public synchronized void force() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 关闭（刷盘）
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            MappedByteBuffer tmp = buffer;
+            buffer = null;
+
+            try {
+                tmp.force();
+            } finally {
+                try {
+                    channel.close();
+                } finally {
+                    channel = null;
+                    unmap(tmp);
+                }
+            }
+        }
+    }
+
+    /// ////////////////////////////
+
+    private void open() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The state log is too large: " + size);
+        }
+
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, initialSize));
+
+        if (size < HEADER_SIZE || buffer.getInt(0) == 0) {
+            //新文件
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, 0);
+            position = HEADER_SIZE;
+            buffer.putInt(position, 0);
+        } else if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a state log: " + file);
+        } else {
+            position = recover();
+        }
+
+        baseSize = position;
+    }
+
+    /**
+     * 重放日志（到长度为 0 或校验不符的记录为止；之后的视为崩溃时未写完的）
+     */
+    private int recover() throws IOException {
+        int pos = HEADER_SIZE;
+        int limit = buffer.capacity();
+
+        while (pos + RECORD_HEADER_SIZE <= limit) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || pos + RECORD_HEADER_SIZE + length > limit) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            ByteBuffer dup = buffer.duplicate();
+            dup.position(pos + RECORD_HEADER_SIZE);
+            dup.get(payload);
+
+            if (crc(payload) != buffer.getInt(pos + 4)) {
+                break;
+            }
+
+            decode(payload);
+            pos += RECORD_HEADER_SIZE + length;
+        }
+
+        //截断未写完的尾部
+        if (pos + 4 <= limit) {
+            buffer.putInt(pos, 0);
+        }
+
+        return pos;
+    }
+
+    private void append(byte[] payload) throws IOException {
+        int need = position + RECORD_HEADER_SIZE + payload.length + 4;
+
+        if (need > buffer.capacity()) {
+            long size = Math.max((long) buffer.capacity() * 2, need);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The state log is too large: " + size);
+            }
+
+            MappedByteBuffer old = buffer;
+            old.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            unmap(old);
+        }
+
+        //先写结尾标记与记录体，最后写长度（长度有效即整条有效）
+        buffer.putInt(position + RECORD_HEADER_SIZE + payload.length, 0);
+        buffer.putInt(position + 4, crc(payload));
+
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(position + RECORD_HEADER_SIZE);
+        dup.put(payload);
+
+        buffer.putInt(position, payload.length);
+        position += RECORD_HEADER_SIZE + payload.length;
+
+        if (syncOnWrite) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * 释放映射（之后不能再访问该缓冲；所有访问都在对象锁内）
+     */
+    private static void unmap(MappedByteBuffer buf) {
+        if (buf != null && UNMAPPER != null) {
+            UNMAPPER.accept(buf);
+        }
+    }
+
+    private static Consumer<MappedByteBuffer> unmapper() {
+        try {
+            //java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            MethodHandle invokeCleaner = MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+
+            return buf -> {
+                try {
+                    invokeCleaner.invoke(buf);
+                } catch (Throwable e) {
+                    log.debug("State log unmap failed: {}", e.toString());
+                }
+            };
+        } catch (Throwable e) {
+            //java 8
+        }
+
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+            return buf -> {
+                try {
+                    Object cleaner = cleanerMethod.invoke(buf);
+                    if (cleaner != null) {
+                        cleanMethod.invoke(cleaner);
+                    }
+                } catch (Throwable e) {
+                    log.debug("State log unmap failed: {}", e.toString());
+                }
+            };
+        } catch (Throwable e) {
+            log.debug("State log unmap is not supported: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static ByteBuffer record(byte[] payload) {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        buf.putInt(payload.length).putInt(crc(payload)).put(payload).flip();
+        return buf;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        return (int) crc32.getValue();
+    }
+
+    private static byte[] encode(String instanceId, boolean cleared, Map<String, Integer> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + entries.size() * 24);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeUTF(instanceId);
+        out.writeBoolean(cleared);
+        out.writeInt(entries.size());
+
+        for (Map.Entry<String, Integer> kv : entries.entrySet()) {
+            out.writeUTF(kv.getKey());
+            out.writeInt(kv.getValue());
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private void decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        String instanceId = in.readUTF();
+        boolean cleared = in.readBoolean();
+        int count = in.readInt();
+
+        Map<String, Integer> entries = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            entries.put(in.readUTF(), in.readInt());
+        }
+
+        replay(instanceId, cleared, entries);
+    }
+
+    private void replay(String instanceId, boolean cleared, Map<String, Integer> entries) {
+        Map<String, Integer> states = index.get(instanceId);
+
+        if (cleared && states != null) {
+            states.clear();
+        }
+
+        for (Map.Entry<String, Integer> kv : entries.entrySet()) {
+            if (kv.getValue() == REMOVE_CODE) {
+                if (states != null) {
+                    states.remove(kv.getKey());
+                }
+            } else {
+                if (states == null) {
+                    states = new HashMap<>();
+                    index.put(instanceId, states);
+                }
+
+                states.put(kv.getKey(), kv.getValue());
+            }
+        }
+
+        if (states != null && states.isEmpty()) {
+            index.remove(instanceId);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.workflow.repository;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.workflow.StateChanges;
+import org.noear.solon.flow.workflow.StateRepository;
+import org.noear.solon.flow.workflow.TaskState;
+import org.noear.solon.lang.Preview;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Redis 批量状态仓库（一次工作流操作只有两次往返：HGETALL 加载，脚本应用全部变更；比较后应用在服务端以一个脚本原子执行）
+ *
+ * <pre>{@code
+ * //以 Jedis 为例（也可以是别的客户端，或测试用的替身）
+ * StateRepository repository = new PipelinedRedisStateRepository((script, keys, args) -> {
+ *     try (Jedis jedis = pool.getResource()) {
+ *         return jedis.eval(script, keys, args);
+ *     }
+ * });
+ *
+ * WorkflowExecutor workflow = WorkflowExecutor.of(engine, controller, repository, locker); //多进程时，用分布式锁
+ * }</pre>
+ *
+ * <p>注意：submitTaskIfWaiting 的原子比较发生在应用变更时，任务处理（副作用）已经运行过了。
+ * 它只保证状态只被应用一次，不能防止任务被重复处理；按实例的锁（多进程时为分布式锁）仍是必需的</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class PipelinedRedisStateRepository implements StateRepository {
+    /**
+     * 加载脚本（KEYS[1]=实例键）
+     */
+    public static final String SCRIPT_LOAD = "return redis.call('HGETALL', KEYS[1])";
+
+    /**
+     * 获取脚本（KEYS[1]=实例键；ARGV[1]=字段）
+     */
+    public static final String SCRIPT_GET = "return redis.call('HGET', KEYS[1], ARGV[1])";
+
+    /**
+     * 应用脚本（KEYS[1]=实例键；ARGV=比较字段, 预期值, 未知值, 是否清空, 然后是成对的 字段, 值（值为空时移除））
+     */
+    public static final String SCRIPT_APPLY = "if ARGV[1] ~= '' then\n" +
+            "  local cur = redis.call('HGET', KEYS[1], ARGV[1])\n" +
+            "  if not cur then cur = ARGV[3] end\n" +
+            "  if cur ~= ARGV[2] then return 0 end\n" +
+            "end\n" +
+            "if ARGV[4] == '1' then redis.call('DEL', KEYS[1]) end\n" +
+            "for i = 5, #ARGV, 2 do\n" +
+            "  if ARGV[i + 1] == '' then\n" +
+            "    redis.call('HDEL', KEYS[1], ARGV[i])\n" +
+            "  else\n" +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])\n" +
+            "  end\n" +
+            "end\n" +
+            "return 1";
+
+    private final ScriptExecutor executor;
+    private final String statePrefix;
+
+    public PipelinedRedisStateRepository(ScriptExecutor executor) {
+        this(executor, "flow:state:");
+    }
+
+    public PipelinedRedisStateRepository(ScriptExecutor executor, String statePrefix) {
+        Objects.requireNonNull(executor, "executor");
+
+        this.executor = executor;
+        this.statePrefix = statePrefix;
+    }
+
+    private List<String> keysOf(FlowContext context) {
+        return Collections.singletonList(statePrefix + context.getInstanceId());
+    }
+
+    @Override
+    public TaskState stateGet(FlowContext context, Node node) {
+        String code = asString(executor.eval(SCRIPT_GET, keysOf(context), Collections.singletonList(StateRepository.stateKey(node))));
+
+        if (code == null || code.isEmpty()) {
+            return TaskState.UNKNOWN;
+        } else {
+            return TaskState.codeOf(Integer.parseInt(code));
+        }
+    }
+
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        Object result = executor.eval(SCRIPT_LOAD, keysOf(context), Collections.emptyList());
+        Map<String, TaskState> states = new HashMap<>();
+
+        if (result instanceof List) {
+            List<?> list = (List<?>) result;
+            for (int i = 0; i + 1 < list.size(); i += 2) {
+                String code = asString(list.get(i + 1));
+                if (code != null && code.isEmpty() == false) {
+                    states.put(asString(list.get(i)), TaskState.codeOf(Integer.parseInt(code)));
+                }
+            }
+        }
+
+        return states;
+    }
+
+    @Override
+    public void statePut(FlowContext context, Node node, TaskState state) {
+        stateApply(context, new StateChanges().put(node, state));
+    }
+
+    @Override
+    public void stateRemove(FlowContext context, Node node) {
+        stateApply(context, new StateChanges().remove(node));
+    }
+
+    @Override
+    public void stateClear(FlowContext context) {
+        stateApply(context, new StateChanges().clear());
+    }
+
+    @Override
+    public void stateApply(FlowContext context, StateChanges changes) {
+        if (changes.isEmpty() == false) {
+            executor.eval(SCRIPT_APPLY, keysOf(context), argsOf(null, null, changes));
+        }
+    }
+
+    /**
+     * 状态比较后应用（服务端脚本，原子的）
+     */
+    @Override
+    public boolean stateCompareAndApply(FlowContext context, Node node, TaskState expected, StateChanges changes) {
+        Object result = executor.eval(SCRIPT_APPLY, keysOf(context), argsOf(node, expected, changes));
+        return "1".equals(asString(result));
+    }
+
+    private List<String> argsOf(Node node, TaskState expected, StateChanges changes) {
+        List<String> args = new ArrayList<>(4 + changes.getChanges().size() * 2);
+
+        if (node == null) {
+            args.add("");
+            args.add("");
+        } else {
+            args.add(StateRepository.stateKey(node));
+            args.add(String.valueOf(expected.getCode()));
+        }
+
+        args.add(String.valueOf(TaskState.UNKNOWN.getCode()));
+        args.add(changes.isCleared() ? "1" : "0");
+
+        for (Map.Entry<Node, TaskState> kv : changes.getChanges().entrySet()) {
+            args.add(StateRepository.stateKey(kv.getKey()));
+            args.add(kv.getValue() == null ? "" : String.valueOf(kv.getValue().getCode()));
+        }
+
+        return args;
+    }
+
+    private static String asString(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        } else {
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * 脚本执行器（对应 EVAL 命令；返回值同 Redis 客户端：整数、字符串或列表）
+     */
+    @FunctionalInterface
+    public interface ScriptExecutor {
+        Object eval(String script, List<String> keys, List<String> args);
+    }
+}
@@ -21,6 +21,9 @@ import org.noear.solon.flow.Node;
 import org.noear.solon.flow.workflow.StateRepository;
 import org.noear.solon.flow.workflow.TaskState;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Redis 状态仓库
  *
@@ -42,7 +45,7 @@ public class RedisStateRepository implements StateRepository {
 
     @Override
     public TaskState stateGet(FlowContext context, Node node) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
 
         Integer code = client.getHash(statePrefix + context.getInstanceId()).getAsInt(stateKey);
         if (code == null) {
@@ -54,13 +57,13 @@ public class RedisStateRepository implements StateRepository {
 
     @Override
     public void statePut(FlowContext context, Node node, TaskState state) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
         client.getHash(statePrefix + context.getInstanceId()).put(stateKey, state.getCode());
     }
 
     @Override
     public void stateRemove(FlowContext context, Node node) {
-        String stateKey = node.getGraph().getId() + ":" + node.getId();
+        String stateKey = StateRepository.stateKey(node);
         client.getHash(statePrefix + context.getInstanceId()).remove(stateKey);
     }
 
@@ -68,4 +71,20 @@ public class RedisStateRepository implements StateRepository {
     public void stateClear(FlowContext context) {
         client.getHash(statePrefix + context.getInstanceId()).clear();
     }
+
+    /**
+     * 状态全部获取（一次 HGETALL）
+     */
+    @Override
+    public Map<String, TaskState> statesGet(FlowContext context) {
+        Map<String, TaskState> result = new HashMap<>();
+
+        for (Map.Entry<String, ?> kv : client.getHash(statePrefix + context.getInstanceId()).entrySet()) {
+            if (kv.getValue() != null) {
+                result.put(kv.getKey(), TaskState.codeOf(Integer.parseInt(String.valueOf(kv.getValue()))));
+            }
+        }
+
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,268 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.repository.CachingStateRepository;
+import org.noear.solon.flow.workflow.repository.InMemoryStateRepository;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓存状态仓库（后写式）测试
+ */
+class CachingStateRepositoryTest {
+
+    private Graph createGraph() {
+        return Graph.create("caching-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("a3");
+            spec.addActivity("a3").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    /**
+     * 计数的后端仓库
+     */
+    static class CountingStateRepository extends InMemoryStateRepository {
+        int reads;
+        int applies;
+        boolean failing;
+        boolean readFailing;
+        FlowContext lastContext;
+
+        @Override
+        public TaskState stateGet(FlowContext context, Node node) {
+            reads++;
+            return super.stateGet(context, node);
+        }
+
+        @Override
+        public Map<String, TaskState> statesGet(FlowContext context) {
+            reads++;
+            if (readFailing) {
+                throw new IllegalStateException("backing down");
+            }
+
+            return super.statesGet(context);
+        }
+
+        @Override
+        public void stateApply(FlowContext context, StateChanges changes) {
+            if (failing) {
+                throw new IllegalStateException("backing down");
+            }
+
+            applies++;
+            lastContext = context;
+            super.stateApply(context, changes);
+        }
+    }
+
+    @Test
+    void testCoalesce() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            Node a1 = graph.getNodeOrThrow("a1");
+            Node a2 = graph.getNodeOrThrow("a2");
+
+            repository.statePut(context, a1, TaskState.WAITING);
+            repository.statePut(context, a1, TaskState.COMPLETED);
+            repository.statePut(context, a2, TaskState.WAITING);
+            repository.stateRemove(context, a2);
+
+            assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a2));
+            assertEquals(1, repository.getPendingCount());
+            assertEquals(0, backing.applies);
+            assertEquals(TaskState.UNKNOWN, backing.stateGet(context, a1));
+
+            repository.flush(context);
+
+            assertEquals(1, backing.applies);
+            assertEquals(0, repository.getPendingCount());
+            assertEquals(TaskState.COMPLETED, backing.stateGet(context, a1));
+            assertEquals(TaskState.UNKNOWN, backing.stateGet(context, a2));
+
+            //没有变更时，不再写入
+            repository.flush();
+            assertEquals(1, backing.applies);
+        }
+    }
+
+    @Test
+    void testReadThrough() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+        backing.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            assertEquals(TaskState.COMPLETED, repository.stateGet(context, graph.getNodeOrThrow("a1")));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a2")));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a3")));
+
+            //只读取一次全部状态
+            assertEquals(1, backing.reads);
+        }
+    }
+
+    @Test
+    void testLoadRetryOnFailure() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+        backing.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            backing.readFailing = true;
+            assertThrows(IllegalStateException.class, () -> repository.stateGet(context, graph.getNodeOrThrow("a1")));
+
+            //恢复后，仍是一次读取全部状态（而不是按节点读取）
+            backing.readFailing = false;
+            backing.reads = 0;
+            assertEquals(TaskState.COMPLETED, repository.stateGet(context, graph.getNodeOrThrow("a1")));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a2")));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a3")));
+            assertEquals(1, backing.reads);
+            assertNotNull(repository.statesGet(context));
+        }
+    }
+
+    @Test
+    void testClear() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+        backing.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            repository.stateClear(context);
+            repository.statePut(context, graph.getNodeOrThrow("a2"), TaskState.WAITING);
+
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a1")));
+            assertEquals(0, backing.reads);
+        }
+
+        //关闭时写入
+        assertEquals(TaskState.UNKNOWN, backing.stateGet(context, graph.getNodeOrThrow("a1")));
+        assertEquals(TaskState.WAITING, backing.stateGet(context, graph.getNodeOrThrow("a2")));
+    }
+
+    @Test
+    void testRetryOnFailure() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            backing.failing = true;
+            repository.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+            assertThrows(IllegalStateException.class, () -> repository.flush(context));
+
+            //失败后的新变更，排在失败的之后
+            repository.statePut(context, graph.getNodeOrThrow("a2"), TaskState.WAITING);
+            assertEquals(1, repository.getPendingCount());
+
+            backing.failing = false;
+            repository.flush(context);
+
+            assertEquals(1, backing.applies);
+            assertEquals(TaskState.COMPLETED, backing.stateGet(context, graph.getNodeOrThrow("a1")));
+            assertEquals(TaskState.WAITING, backing.stateGet(context, graph.getNodeOrThrow("a2")));
+        }
+    }
+
+    @Test
+    void testScheduledFlush() throws Exception {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 10)) {
+            repository.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (repository.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(0, repository.getPendingCount());
+            assertEquals(TaskState.COMPLETED, backing.stateGet(context, graph.getNodeOrThrow("a1")));
+        }
+    }
+
+    @Test
+    void testWorkflow() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+
+            Task task = workflow.claimTask(graph, context);
+            assertEquals("a1", task.getNodeId());
+            workflow.submitTask(task, TaskAction.FORWARD, context);
+
+            task = workflow.claimTask(graph, context);
+            assertEquals("a2", task.getNodeId());
+            workflow.submitTask(task, TaskAction.FORWARD, context);
+
+            task = workflow.claimTask(graph, context);
+            assertEquals("a3", task.getNodeId());
+
+            assertEquals(1, backing.reads);
+            assertEquals(0, backing.applies);
+
+            repository.flush(context);
+            assertEquals(1, backing.applies);
+            assertEquals(TaskState.COMPLETED, backing.stateGet(context, graph.getNodeOrThrow("a2")));
+            assertEquals(TaskState.WAITING, backing.stateGet(context, graph.getNodeOrThrow("a3")));
+        }
+    }
+
+    @Test
+    void testNoContextPinned() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1").put("big", new byte[1024]);
+        CountingStateRepository backing = new CountingStateRepository();
+
+        try (CachingStateRepository repository = new CachingStateRepository(backing, 60_000)) {
+            repository.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+            repository.flush(context);
+
+            //写入后端时，只有实例id
+            assertNotSame(context, backing.lastContext);
+            assertEquals("i-1", backing.lastContext.getInstanceId());
+            assertNull(backing.lastContext.get("big"));
+        }
+    }
+
+    @Test
+    void testWriteThroughAfterClose() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository backing = new CountingStateRepository();
+        CachingStateRepository repository = new CachingStateRepository(backing, 60_000);
+
+        Node a1 = graph.getNodeOrThrow("a1");
+        repository.statePut(context, a1, TaskState.WAITING);
+        repository.close();
+        assertEquals(1, backing.applies);
+
+        //关闭后的写入，直接写入后端
+        repository.statePut(context, a1, TaskState.COMPLETED);
+        assertEquals(2, backing.applies);
+        assertEquals(0, repository.getPendingCount());
+        assertEquals(TaskState.COMPLETED, backing.stateGet(context, a1));
+    }
+}
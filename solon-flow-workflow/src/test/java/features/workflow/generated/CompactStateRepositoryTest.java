@@ -0,0 +1,188 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.repository.CompactStateRepository;
+import org.noear.solon.flow.workflow.repository.InMemoryStateRepository;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 紧凑内存状态仓库测试
+ */
+class CompactStateRepositoryTest {
+
+    private Graph createGraph(String id, int activities) {
+        return Graph.create(id, spec -> {
+            spec.addStart("s").linkAdd("a0");
+            for (int i = 0; i < activities; i++) {
+                spec.addActivity("a" + i).linkAdd(i + 1 < activities ? "a" + (i + 1) : "e");
+            }
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testBasic() {
+        Graph graph = createGraph("compact-graph", 3);
+        FlowContext context = FlowContext.of("i-1");
+        CompactStateRepository repository = new CompactStateRepository();
+
+        Node a0 = graph.getNodeOrThrow("a0");
+        Node a1 = graph.getNodeOrThrow("a1");
+
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a0));
+        repository.stateRemove(context, a0);
+        repository.stateClear(context);
+
+        repository.statePut(context, a0, TaskState.COMPLETED);
+        repository.statePut(context, a1, TaskState.WAITING);
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a0));
+        assertEquals(TaskState.WAITING, repository.stateGet(context, a1));
+
+        Map<String, TaskState> states = repository.statesGet(context);
+        assertEquals(2, states.size());
+        assertEquals(TaskState.WAITING, states.get(StateRepository.stateKey(a1)));
+
+        repository.stateRemove(context, a1);
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a1));
+
+        repository.stateClear(context);
+        assertTrue(repository.statesGet(context).isEmpty());
+
+        //同id的节点（比如图重新加载）视为同一节点
+        Graph graph2 = createGraph("compact-graph", 3);
+        repository.statePut(context, a0, TaskState.TERMINATED);
+        assertEquals(TaskState.TERMINATED, repository.stateGet(context, graph2.getNodeOrThrow("a0")));
+        assertEquals(2, repository.getNodeCount());
+    }
+
+    @Test
+    void testSameAsInMemory() {
+        Graph graph = createGraph("compact-random", 200);
+        CompactStateRepository compact = new CompactStateRepository();
+        InMemoryStateRepository reference = new InMemoryStateRepository();
+        Random random = new Random(7);
+        TaskState[] states = {TaskState.WAITING, TaskState.COMPLETED, TaskState.TERMINATED};
+
+        for (int n = 0; n < 20_000; n++) {
+            FlowContext context = FlowContext.of("i-" + random.nextInt(5));
+            Node node = graph.getNodeOrThrow("a" + random.nextInt(200));
+            int op = random.nextInt(100);
+
+            if (op < 55) {
+                TaskState state = states[random.nextInt(states.length)];
+                compact.statePut(context, node, state);
+                reference.statePut(context, node, state);
+            } else if (op < 95) {
+                compact.stateRemove(context, node);
+                reference.stateRemove(context, node);
+            } else if (op < 96) {
+                compact.stateClear(context);
+                reference.stateClear(context);
+            } else {
+                assertEquals(reference.statesGet(context), compact.statesGet(context));
+            }
+
+            assertEquals(reference.stateGet(context, node), compact.stateGet(context, node));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            FlowContext context = FlowContext.of("i-" + i);
+            assertEquals(reference.statesGet(context), compact.statesGet(context));
+        }
+    }
+
+    @Test
+    void testCompareAndApply() {
+        Graph graph = createGraph("compact-graph", 3);
+        FlowContext context = FlowContext.of("i-1");
+        CompactStateRepository repository = new CompactStateRepository();
+        Node a0 = graph.getNodeOrThrow("a0");
+
+        assertTrue(repository.stateCompareAndApply(context, a0, TaskState.UNKNOWN, new StateChanges().put(a0, TaskState.WAITING)));
+        assertTrue(repository.stateCompareAndApply(context, a0, TaskState.WAITING, new StateChanges().put(a0, TaskState.COMPLETED)));
+        assertFalse(repository.stateCompareAndApply(context, a0, TaskState.WAITING, new StateChanges().put(a0, TaskState.TERMINATED)));
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a0));
+    }
+
+    @Test
+    void testTtl() throws Exception {
+        Graph graph = createGraph("compact-graph", 3);
+        CompactStateRepository repository = new CompactStateRepository(20);
+
+        FlowContext done = FlowContext.of("done");
+        FlowContext running = FlowContext.of("running");
+        FlowContext reopened = FlowContext.of("reopened");
+        for (int i = 0; i < 3; i++) {
+            repository.statePut(done, graph.getNodeOrThrow("a" + i), TaskState.COMPLETED);
+        }
+        //进行中（等待别的用户办理时，只有已完成的状态）
+        repository.statePut(running, graph.getNodeOrThrow("a0"), TaskState.COMPLETED);
+        repository.statePut(reopened, graph.getNodeOrThrow("a0"), TaskState.COMPLETED);
+
+        repository.complete("done");
+        repository.complete("reopened");
+        //再有写入时取消完成标记
+        repository.statePut(reopened, graph.getNodeOrThrow("a1"), TaskState.WAITING);
+        assertEquals(3, repository.getInstanceCount());
+
+        Thread.sleep(50);
+
+        //只有标记完成的实例会过期
+        assertEquals(1, repository.evictExpired());
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(done, graph.getNodeOrThrow("a0")));
+        assertEquals(TaskState.COMPLETED, repository.stateGet(running, graph.getNodeOrThrow("a0")));
+        assertEquals(TaskState.WAITING, repository.stateGet(reopened, graph.getNodeOrThrow("a1")));
+
+        repository.evict("running");
+        repository.evict("reopened");
+        assertEquals(0, repository.getInstanceCount());
+        assertEquals(0, new CompactStateRepository().evictExpired());
+    }
+
+    @Test
+    void testTtlInProgress() throws Exception {
+        Graph graph = createGraph("compact-ttl", 3);
+        FlowContext context = FlowContext.of("i-1");
+        CompactStateRepository repository = new CompactStateRepository(20);
+        //a0 由当前用户办理，a1 等待别的用户（不记录等待状态）
+        StateController controller = new StateController() {
+            @Override
+            public boolean isOperatable(FlowContext context, Node node) {
+                return "a0".equals(node.getId());
+            }
+        };
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), controller, repository);
+
+        Task task = workflow.claimTask(graph, context);
+        assertEquals("a0", task.getNodeId());
+        assertTrue(workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context));
+
+        Thread.sleep(50);
+        assertEquals(0, repository.evictExpired());
+
+        //进度没有丢失
+        assertEquals("a1", workflow.findTask(graph, context).getNodeId());
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, graph.getNodeOrThrow("a0")));
+    }
+
+    @Test
+    void testWorkflow() {
+        Graph graph = createGraph("compact-flow", 3);
+        FlowContext context = FlowContext.of("i-1");
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), new CompactStateRepository());
+
+        for (int i = 0; i < 3; i++) {
+            Task task = workflow.claimTask(graph, context);
+            assertEquals("a" + i, task.getNodeId());
+            assertTrue(workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context));
+        }
+
+        assertNull(workflow.claimTask(graph, context));
+    }
+}
@@ -0,0 +1,179 @@
+package features.workflow.generated;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.repository.JdbcStateRepository;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Jdbc 状态仓库测试（H2 内存库）
+ */
+class JdbcStateRepositoryTest {
+    private JdbcDataSource dataSource;
+
+    private Graph createGraph() {
+        return Graph.create("jdbc-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @BeforeEach
+    void setup() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:flow_" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+    }
+
+    @Test
+    void testBasic() {
+        JdbcStateRepository repository = new JdbcStateRepository(dataSource);
+        repository.createTables();
+        repository.createTables(); //可重复
+
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a1));
+
+        repository.statePut(context, a1, TaskState.WAITING);
+        repository.statePut(context, a1, TaskState.COMPLETED);
+        repository.statePut(context, a2, TaskState.WAITING);
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+
+        Map<String, TaskState> states = repository.statesGet(context);
+        assertEquals(2, states.size());
+        assertEquals(TaskState.WAITING, states.get(StateRepository.stateKey(a2)));
+
+        repository.stateRemove(context, a2);
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a2));
+
+        repository.stateClear(context);
+        assertTrue(repository.statesGet(context).isEmpty());
+    }
+
+    @Test
+    void testApply() {
+        JdbcStateRepository repository = new JdbcStateRepository(dataSource);
+        repository.createTables();
+
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+
+        repository.statePut(context, a2, TaskState.TERMINATED);
+        repository.stateApply(context, new StateChanges().clear().put(a1, TaskState.WAITING));
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a2));
+
+        assertTrue(repository.stateCompareAndApply(context, a1, TaskState.WAITING, new StateChanges().put(a1, TaskState.COMPLETED)));
+        assertFalse(repository.stateCompareAndApply(context, a1, TaskState.WAITING, new StateChanges().put(a1, TaskState.TERMINATED)));
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+
+        assertTrue(repository.stateCompareAndApply(context, a2, TaskState.UNKNOWN, new StateChanges().put(a2, TaskState.WAITING)));
+        assertEquals(TaskState.WAITING, repository.stateGet(context, a2));
+    }
+
+    @Test
+    void testPartitions() {
+        JdbcStateRepository repository = new JdbcStateRepository(dataSource, "flow_state", 4);
+        repository.createTables();
+
+        assertEquals(Arrays.asList("flow_state_0", "flow_state_1", "flow_state_2", "flow_state_3"), repository.getTableNames());
+        assertEquals(repository.getTableName("i-1"), repository.getTableName("i-1"));
+
+        Graph graph = createGraph();
+        Set<String> tables = new HashSet<>();
+
+        for (int i = 0; i < 32; i++) {
+            FlowContext context = FlowContext.of("i-" + i);
+            tables.add(repository.getTableName(context.getInstanceId()));
+            repository.statePut(context, graph.getNodeOrThrow("a1"), TaskState.WAITING);
+        }
+
+        assertTrue(tables.size() > 1);
+
+        for (int i = 0; i < 32; i++) {
+            assertEquals(1, repository.statesGet(FlowContext.of("i-" + i)).size());
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new JdbcStateRepository(dataSource, "flow;drop", 1));
+        assertThrows(IllegalArgumentException.class, () -> new JdbcStateRepository(dataSource, "flow_state", 0));
+    }
+
+    @Test
+    void testWorkflow() throws Exception {
+        JdbcStateRepository repository = new JdbcStateRepository(dataSource, "flow_state", 4);
+        repository.createTables();
+
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+        Graph graph = createGraph();
+
+        //多个实例并发前进
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String instanceId = "w-" + i;
+                futures.add(pool.submit(() -> {
+                    FlowContext context = FlowContext.of(instanceId);
+                    Task task = workflow.claimTask(graph, context);
+                    workflow.submitTask(task, TaskAction.FORWARD, context);
+                    return workflow.claimTask(graph, context).getNodeId();
+                }));
+            }
+
+            for (Future<String> future : futures) {
+                assertEquals("a2", future.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConcurrentFirstInsert() throws Exception {
+        JdbcStateRepository repository = new JdbcStateRepository(dataSource);
+        repository.createTables();
+
+        Graph graph = createGraph();
+        Node a1 = graph.getNodeOrThrow("a1");
+
+        //同一行并发首次写入（主键冲突时重试）
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                TaskState state = (i % 2 == 0 ? TaskState.WAITING : TaskState.COMPLETED);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    repository.statePut(FlowContext.of("c-1"), a1, state);
+                    return null;
+                }));
+            }
+
+            start.countDown();
+
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertEquals(1, repository.statesGet(FlowContext.of("c-1")).size());
+        assertNotEquals(TaskState.UNKNOWN, repository.stateGet(FlowContext.of("c-1"), a1));
+    }
+}
@@ -0,0 +1,204 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.repository.MappedStateRepository;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存映射状态仓库测试
+ */
+class MappedStateRepositoryTest {
+
+    private Graph createGraph() {
+        return Graph.create("mapped-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    private Path tempFile() throws Exception {
+        Path dir = Files.createTempDirectory("flow-state");
+        dir.toFile().deleteOnExit();
+        return dir.resolve("state.log");
+    }
+
+    @Test
+    void testRecover() throws Exception {
+        Path file = tempFile();
+        Graph graph = createGraph();
+        FlowContext c1 = FlowContext.of("i-1");
+        FlowContext c2 = FlowContext.of("i-2");
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            repository.statePut(c1, a1, TaskState.COMPLETED);
+            repository.statePut(c1, a2, TaskState.WAITING);
+            repository.statePut(c2, a1, TaskState.WAITING);
+            repository.stateRemove(c1, a2);
+            repository.stateClear(c2);
+            repository.statePut(c2, a2, TaskState.TERMINATED);
+        }
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            assertEquals(TaskState.COMPLETED, repository.stateGet(c1, a1));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(c1, a2));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(c2, a1));
+            assertEquals(TaskState.TERMINATED, repository.stateGet(c2, a2));
+            assertEquals(1, repository.statesGet(c1).size());
+        }
+    }
+
+    @Test
+    void testTornTail() throws Exception {
+        Path file = tempFile();
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        int size;
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            repository.statePut(context, graph.getNodeOrThrow("a1"), TaskState.COMPLETED);
+            size = repository.getLogSize();
+            repository.stateApply(context, new StateChanges()
+                    .put(graph.getNodeOrThrow("a1"), TaskState.TERMINATED)
+                    .put(graph.getNodeOrThrow("a2"), TaskState.WAITING));
+        }
+
+        //破坏最后一条记录（模拟写到一半）
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(size + 12);
+            raf.write(raf.read() ^ 0xFF);
+        }
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            //整条丢弃
+            assertEquals(TaskState.COMPLETED, repository.stateGet(context, graph.getNodeOrThrow("a1")));
+            assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a2")));
+            assertEquals(size, repository.getLogSize());
+
+            //可以继续写
+            repository.statePut(context, graph.getNodeOrThrow("a2"), TaskState.WAITING);
+        }
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            assertEquals(TaskState.WAITING, repository.stateGet(context, graph.getNodeOrThrow("a2")));
+        }
+    }
+
+    @Test
+    void testGrowAndCompact() throws Exception {
+        Path file = tempFile();
+        Graph graph = createGraph();
+        Node a1 = graph.getNodeOrThrow("a1");
+
+        try (MappedStateRepository repository = new MappedStateRepository(file, 1024, false)) {
+            //同一批实例反复改写，日志会增长，然后被压缩
+            for (int n = 0; n < 200; n++) {
+                for (int i = 0; i < 10; i++) {
+                    repository.statePut(FlowContext.of("i-" + i), a1, n % 2 == 0 ? TaskState.WAITING : TaskState.COMPLETED);
+                }
+            }
+
+            assertTrue(repository.getLogSize() < 4096, "size: " + repository.getLogSize());
+
+            repository.compact();
+            int compacted = repository.getLogSize();
+            assertTrue(compacted < 1024);
+
+            for (int i = 0; i < 10; i++) {
+                assertEquals(TaskState.COMPLETED, repository.stateGet(FlowContext.of("i-" + i), a1));
+            }
+        }
+
+        try (MappedStateRepository repository = new MappedStateRepository(file, 1024, false)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(TaskState.COMPLETED, repository.stateGet(FlowContext.of("i-" + i), a1));
+            }
+        }
+    }
+
+    @Test
+    void testCompactFailure() throws Exception {
+        Path file = tempFile();
+        Graph graph = createGraph();
+        Node a1 = graph.getNodeOrThrow("a1");
+
+        //压缩的临时文件位置被目录占用（压缩会失败）
+        Path tmp = file.resolveSibling(file.getFileName() + ".compact");
+        Files.createDirectories(tmp);
+        Files.createFile(tmp.resolve("lock"));
+
+        try (MappedStateRepository repository = new MappedStateRepository(file, 1024, false)) {
+            //写入时的压缩失败，不影响写入
+            for (int i = 0; i < 200; i++) {
+                repository.statePut(FlowContext.of("i-" + (i % 10)), a1, (i % 2 == 0 ? TaskState.WAITING : TaskState.COMPLETED));
+            }
+
+            //显式压缩时抛出
+            assertThrows(FlowException.class, repository::compact);
+
+            repository.statePut(FlowContext.of("i-0"), a1, TaskState.TERMINATED);
+            assertEquals(TaskState.TERMINATED, repository.stateGet(FlowContext.of("i-0"), a1));
+            assertEquals(TaskState.COMPLETED, repository.stateGet(FlowContext.of("i-1"), a1));
+        }
+
+        try (MappedStateRepository repository = new MappedStateRepository(file, 1024, false)) {
+            assertEquals(TaskState.TERMINATED, repository.stateGet(FlowContext.of("i-0"), a1));
+        }
+    }
+
+    @Test
+    void testWriteAfterClose() throws Exception {
+        Path file = tempFile();
+        Node a1 = createGraph().getNodeOrThrow("a1");
+
+        MappedStateRepository repository = new MappedStateRepository(file, 64, false);
+        //扩容（旧的映射已释放）后仍可读写
+        for (int i = 0; i < 50; i++) {
+            repository.statePut(FlowContext.of("i-" + i), a1, TaskState.WAITING);
+        }
+        assertEquals(TaskState.WAITING, repository.stateGet(FlowContext.of("i-49"), a1));
+        repository.close();
+        repository.close();
+
+        FlowException error = assertThrows(FlowException.class, () -> repository.statePut(FlowContext.of("i-1"), a1, TaskState.COMPLETED));
+        assertTrue(error.getMessage().contains("closed"));
+        repository.force();
+
+        try (MappedStateRepository repository2 = new MappedStateRepository(file, 64, false)) {
+            assertEquals(TaskState.WAITING, repository2.stateGet(FlowContext.of("i-49"), a1));
+        }
+    }
+
+    @Test
+    void testWorkflow() throws Exception {
+        Path file = tempFile();
+        Graph graph = createGraph();
+
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+            FlowContext context = FlowContext.of("i-1");
+
+            Task task = workflow.claimTask(graph, context);
+            assertEquals("a1", task.getNodeId());
+            assertTrue(workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context));
+        }
+
+        //重启后继续
+        try (MappedStateRepository repository = new MappedStateRepository(file)) {
+            WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+            Task task = workflow.claimTask(graph, FlowContext.of("i-1"));
+            assertEquals("a2", task.getNodeId());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.locker.NoopWorkflowLocker;
+import org.noear.solon.flow.workflow.repository.PipelinedRedisStateRepository;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Redis 批量状态仓库测试（以内存替身执行脚本）
+ */
+class PipelinedRedisStateRepositoryTest {
+
+    private Graph createGraph() {
+        return Graph.create("redis-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    /**
+     * Redis 替身（按脚本的语义在内存中执行；脚本之间互斥，与 Redis 一样）
+     */
+    static class RedisStandIn implements PipelinedRedisStateRepository.ScriptExecutor {
+        final Map<String, Map<String, String>> hashes = new HashMap<>();
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public synchronized Object eval(String script, List<String> keys, List<String> args) {
+            calls.incrementAndGet();
+            Map<String, String> hash = hashes.computeIfAbsent(keys.get(0), k -> new LinkedHashMap<>());
+
+            if (PipelinedRedisStateRepository.SCRIPT_LOAD.equals(script)) {
+                List<String> list = new ArrayList<>();
+                for (Map.Entry<String, String> kv : hash.entrySet()) {
+                    list.add(kv.getKey());
+                    list.add(kv.getValue());
+                }
+                return list;
+            }
+
+            if (PipelinedRedisStateRepository.SCRIPT_GET.equals(script)) {
+                return hash.get(args.get(0));
+            }
+
+            if (PipelinedRedisStateRepository.SCRIPT_APPLY.equals(script)) {
+                if (args.get(0).isEmpty() == false) {
+                    String cur = hash.getOrDefault(args.get(0), args.get(2));
+                    if (cur.equals(args.get(1)) == false) {
+                        return 0L;
+                    }
+                }
+
+                if ("1".equals(args.get(3))) {
+                    hash.clear();
+                }
+
+                for (int i = 4; i < args.size(); i += 2) {
+                    if (args.get(i + 1).isEmpty()) {
+                        hash.remove(args.get(i));
+                    } else {
+                        hash.put(args.get(i), args.get(i + 1));
+                    }
+                }
+                return 1L;
+            }
+
+            throw new IllegalArgumentException("Unknown script");
+        }
+    }
+
+    @Test
+    void testBasic() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        RedisStandIn redis = new RedisStandIn();
+        PipelinedRedisStateRepository repository = new PipelinedRedisStateRepository(redis);
+
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+
+        repository.statePut(context, a1, TaskState.COMPLETED);
+        repository.statePut(context, a2, TaskState.WAITING);
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+        assertEquals(2, repository.statesGet(context).size());
+
+        repository.stateRemove(context, a2);
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a2));
+
+        repository.stateClear(context);
+        assertTrue(repository.statesGet(context).isEmpty());
+        assertTrue(redis.hashes.get("flow:state:i-1").isEmpty());
+    }
+
+    @Test
+    void testCompareAndApply() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        PipelinedRedisStateRepository repository = new PipelinedRedisStateRepository(new RedisStandIn());
+
+        Node a1 = graph.getNodeOrThrow("a1");
+        repository.statePut(context, a1, TaskState.WAITING);
+
+        assertTrue(repository.stateCompareAndApply(context, a1, TaskState.WAITING, new StateChanges().put(a1, TaskState.COMPLETED)));
+        assertFalse(repository.stateCompareAndApply(context, a1, TaskState.WAITING, new StateChanges().put(a1, TaskState.TERMINATED)));
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+
+        //没有状态时，视为 UNKNOWN
+        Node a2 = graph.getNodeOrThrow("a2");
+        assertTrue(repository.stateCompareAndApply(context, a2, TaskState.UNKNOWN, new StateChanges().put(a2, TaskState.WAITING)));
+    }
+
+    @Test
+    void testRoundTrips() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        RedisStandIn redis = new RedisStandIn();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(),
+                new PipelinedRedisStateRepository(redis), NoopWorkflowLocker.INSTANCE);
+
+        Task task = workflow.claimTask(graph, context);
+        assertEquals("a1", task.getNodeId());
+        //加载一次，应用一次
+        assertEquals(2, redis.calls.get());
+
+        redis.calls.set(0);
+        assertTrue(workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context));
+        assertEquals(2, redis.calls.get());
+
+        task = workflow.claimTask(graph, context);
+        assertEquals("a2", task.getNodeId());
+    }
+
+    @Test
+    void testConcurrentSubmitIfWaiting() throws Exception {
+        //不加锁时，只验证状态只被应用一次（任务处理可能重复运行）
+        Graph graph = createGraph();
+        RedisStandIn redis = new RedisStandIn();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(),
+                new PipelinedRedisStateRepository(redis), NoopWorkflowLocker.INSTANCE);
+
+        Task task = workflow.claimTask(graph, FlowContext.of("i-1"));
+        assertEquals(TaskState.WAITING, task.getState());
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                futures.add(pool.submit(() -> {
+                    //各自的上下文（模拟不同进程）
+                    FlowContext context = FlowContext.of("i-1");
+                    start.await();
+                    return workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context);
+                }));
+            }
+
+            start.countDown();
+
+            int submitted = 0;
+            for (Future<Boolean> future : futures) {
+                if (future.get(10, TimeUnit.SECONDS)) {
+                    submitted++;
+                }
+            }
+
+            assertEquals(1, submitted);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.controller.NotBlockStateController;
+import org.noear.solon.flow.workflow.repository.InMemoryStateRepository;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 状态仓库批量操作测试
+ */
+class StateRepositoryBatchTest {
+
+    private Graph createGraph() {
+        return Graph.create("batch-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("a3");
+            spec.addActivity("a3").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    /**
+     * 计数的状态仓库
+     */
+    static class CountingStateRepository extends InMemoryStateRepository {
+        int gets;
+        int statesGets;
+        int puts;
+        int applies;
+
+        @Override
+        public TaskState stateGet(FlowContext context, Node node) {
+            gets++;
+            return super.stateGet(context, node);
+        }
+
+        @Override
+        public void statePut(FlowContext context, Node node, TaskState state) {
+            puts++;
+            super.statePut(context, node, state);
+        }
+
+        @Override
+        public Map<String, TaskState> statesGet(FlowContext context) {
+            statesGets++;
+            return super.statesGet(context);
+        }
+
+        @Override
+        public void stateApply(FlowContext context, StateChanges changes) {
+            applies++;
+            super.stateApply(context, changes);
+        }
+
+        void reset() {
+            gets = statesGets = puts = applies = 0;
+        }
+    }
+
+    @Test
+    void testBatch() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        InMemoryStateRepository repository = new InMemoryStateRepository();
+
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+
+        Map<Node, TaskState> states = new LinkedHashMap<>();
+        states.put(a1, TaskState.COMPLETED);
+        states.put(a2, TaskState.WAITING);
+        repository.statesPut(context, states);
+
+        Map<String, TaskState> loaded = repository.statesGet(context);
+        assertEquals(2, loaded.size());
+        assertEquals(TaskState.COMPLETED, loaded.get(StateRepository.stateKey(a1)));
+        assertEquals(TaskState.WAITING, loaded.get(StateRepository.stateKey(a2)));
+
+        repository.statesRemove(context, Arrays.asList(a1, a2));
+        assertTrue(repository.statesGet(context).isEmpty());
+    }
+
+    @Test
+    void testApply() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        InMemoryStateRepository repository = new InMemoryStateRepository();
+
+        Node a1 = graph.getNodeOrThrow("a1");
+        Node a2 = graph.getNodeOrThrow("a2");
+        Node a3 = graph.getNodeOrThrow("a3");
+
+        repository.statePut(context, a3, TaskState.TERMINATED);
+
+        StateChanges changes = new StateChanges();
+        assertTrue(changes.isEmpty());
+
+        changes.clear()
+                .put(a1, TaskState.COMPLETED)
+                .put(a2, TaskState.WAITING)
+                .remove(a2);
+        repository.stateApply(context, changes);
+
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, a1));
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a2));
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, a3));
+    }
+
+    @Test
+    void testDefaultApply() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        Map<String, TaskState> map = new HashMap<>();
+
+        //只实现了单个操作的仓库
+        StateRepository repository = new StateRepository() {
+            @Override
+            public TaskState stateGet(FlowContext context, Node node) {
+                return map.getOrDefault(StateRepository.stateKey(node), TaskState.UNKNOWN);
+            }
+
+            @Override
+            public void statePut(FlowContext context, Node node, TaskState state) {
+                map.put(StateRepository.stateKey(node), state);
+            }
+
+            @Override
+            public void stateRemove(FlowContext context, Node node) {
+                map.remove(StateRepository.stateKey(node));
+            }
+
+            @Override
+            public void stateClear(FlowContext context) {
+                map.clear();
+            }
+        };
+
+        assertNull(repository.statesGet(context));
+
+        repository.stateApply(context, new StateChanges()
+                .put(graph.getNodeOrThrow("a1"), TaskState.COMPLETED)
+                .put(graph.getNodeOrThrow("a2"), TaskState.WAITING));
+
+        assertEquals(2, map.size());
+
+        //不支持批量获取时，也能正常运行
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+        Task task = workflow.claimTask(graph, context);
+        assertEquals("a2", task.getNodeId());
+    }
+
+    @Test
+    void testLoadOnceFlushOnce() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository repository = new CountingStateRepository();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+
+        Task task = workflow.claimTask(graph, context);
+        assertEquals("a1", task.getNodeId());
+        assertEquals(1, repository.statesGets);
+        assertEquals(0, repository.gets);
+        assertEquals(1, repository.applies);
+
+        repository.reset();
+        workflow.submitTask(task, TaskAction.FORWARD, context);
+
+        assertTrue(repository.statesGets <= 1);
+        assertEquals(0, repository.gets);
+        assertEquals(0, repository.puts);
+        assertEquals(1, repository.applies);
+
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, task.getNode()));
+
+        //跳转前进（内部有多次查找，也只加载一次）
+        repository.reset();
+        workflow.submitTask(graph, graph.getNodeOrThrow("a3"), TaskAction.FORWARD_JUMP, context);
+
+        assertEquals(1, repository.statesGets);
+        assertEquals(1, repository.applies);
+
+        task = workflow.claimTask(graph, context);
+        assertEquals("a3", task.getNodeId());
+        assertEquals(TaskState.WAITING, task.getState());
+    }
+
+    @Test
+    void testDiscardOnError() {
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository repository = new CountingStateRepository();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), repository);
+
+        Task task = workflow.claimTask(graph, context);
+        repository.reset();
+
+        assertThrows(IllegalArgumentException.class, () -> workflow.submitTask(task, TaskAction.UNKNOWN, context));
+        assertEquals(0, repository.applies);
+        assertEquals(TaskState.WAITING, repository.stateGet(context, task.getNode()));
+    }
+
+    @Test
+    void testFlushProgressOnError() {
+        Graph graph = Graph.create("batch-graph-error", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").task((c, n) -> {
+                throw new IllegalStateException("a2 failed");
+            }).linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowContext context = FlowContext.of("i-1");
+        CountingStateRepository repository = new CountingStateRepository();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new NotBlockStateController(), repository);
+
+        assertThrows(Throwable.class, () -> workflow.claimTask(graph, context));
+
+        //出错前自动前进的进度已应用
+        assertEquals(1, repository.applies);
+        assertEquals(TaskState.COMPLETED, repository.stateGet(context, graph.getNodeOrThrow("a1")));
+        assertEquals(TaskState.UNKNOWN, repository.stateGet(context, graph.getNodeOrThrow("a2")));
+    }
+}
@@ -0,0 +1,224 @@
+package features.workflow.generated;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.workflow.*;
+import org.noear.solon.flow.workflow.controller.BlockStateController;
+import org.noear.solon.flow.workflow.locker.KeyedWorkflowLocker;
+import org.noear.solon.flow.workflow.locker.StripedWorkflowLocker;
+import org.noear.solon.flow.workflow.repository.InMemoryStateRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 工作流锁（按流实例加锁）测试
+ */
+class WorkflowLockerTest {
+
+    private Graph createGraph() {
+        return Graph.create("locker-graph", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").linkAdd("a2");
+            spec.addActivity("a2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testStriped() {
+        StripedWorkflowLocker locker = new StripedWorkflowLocker(100);
+        assertEquals(128, locker.getStripes());
+        assertSame(locker.getLock("i-1"), locker.getLock("i-1"));
+        assertSame(locker.getLock(null), locker.getLock(null));
+
+        assertThrows(IllegalArgumentException.class, () -> new StripedWorkflowLocker(0));
+    }
+
+    @Test
+    void testLockByInstance() {
+        List<String> instanceIds = new ArrayList<>();
+        StripedWorkflowLocker striped = new StripedWorkflowLocker();
+
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), new InMemoryStateRepository(),
+                instanceId -> {
+                    instanceIds.add(instanceId);
+                    return striped.getLock(instanceId);
+                });
+
+        Graph graph = createGraph();
+        FlowContext context = FlowContext.of("i-1");
+        Task task = workflow.claimTask(graph, context);
+        workflow.submitTask(task, TaskAction.FORWARD, context);
+
+        task = workflow.claimTask(graph, context);
+        assertTrue(workflow.submitTaskIfWaiting(task, TaskAction.FORWARD, context));
+
+        assertEquals(2, instanceIds.size());
+        assertEquals("i-1", instanceIds.get(0));
+        assertEquals("i-1", instanceIds.get(1));
+    }
+
+    @Test
+    void testConcurrentInstances() throws Exception {
+        StripedWorkflowLocker locker = new StripedWorkflowLocker();
+        WorkflowExecutor workflow = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), new InMemoryStateRepository(), locker);
+        Graph graph = createGraph();
+
+        String idA = "i-a";
+        String idB = "i-b";
+        assertNotSame(locker.getLock(idA), locker.getLock(idB));
+
+        //另一个线程占住实例 A 的锁
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            Lock lock = locker.getLock(idA);
+            lock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        try {
+            //实例 B 不受影响
+            FlowContext contextB = FlowContext.of(idB);
+            Task taskB = workflow.claimTask(graph, contextB);
+            CompletableFuture.runAsync(() -> workflow.submitTask(taskB, TaskAction.FORWARD, contextB))
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals("a2", workflow.claimTask(graph, contextB).getNodeId());
+
+            //实例 A 要等待
+            FlowContext contextA = FlowContext.of(idA);
+            Task taskA = workflow.claimTask(graph, contextA);
+            CompletableFuture<Void> futureA = CompletableFuture.runAsync(() -> workflow.submitTask(taskA, TaskAction.FORWARD, contextA));
+            Thread.sleep(100);
+            assertFalse(futureA.isDone());
+
+            release.countDown();
+            futureA.get(5, TimeUnit.SECONDS);
+            assertEquals("a2", workflow.claimTask(graph, contextA).getNodeId());
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+
+    @Test
+    void testKeyed() throws Exception {
+        KeyedWorkflowLocker locker = new KeyedWorkflowLocker();
+        Lock lock = locker.getLock("i-1");
+
+        lock.lock();
+        lock.lock();
+        assertEquals(1, locker.getLockCount());
+
+        //别的线程加不上
+        assertFalse(CompletableFuture.supplyAsync(() -> locker.getLock("i-1").tryLock()).get(5, TimeUnit.SECONDS));
+        assertTrue(CompletableFuture.supplyAsync(() -> {
+            Lock lock2 = locker.getLock("i-2");
+            boolean locked = lock2.tryLock();
+            lock2.unlock();
+            return locked;
+        }).get(5, TimeUnit.SECONDS));
+
+        lock.unlock();
+        lock.unlock();
+        //没有线程使用时移除
+        assertEquals(0, locker.getLockCount());
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+    }
+
+    @Test
+    void testNestedCrossInstance() throws Exception {
+        KeyedWorkflowLocker locker = new KeyedWorkflowLocker();
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Map<String, Task> tasks = new ConcurrentHashMap<>();
+        WorkflowExecutor[] workflow = new WorkflowExecutor[1];
+
+        //任务里再提交另一个实例（嵌套提交）
+        Graph graph = Graph.create("locker-nested", spec -> {
+            spec.addStart("s").linkAdd("a1");
+            spec.addActivity("a1").task((context, node) -> {
+                String other = context.getAs("other");
+                if (other != null) {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    workflow[0].submitTask(tasks.get(other), TaskAction.FORWARD, FlowContext.of(other));
+                }
+            }).linkAdd("a2");
+            spec.addActivity("a2").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        workflow[0] = WorkflowExecutor.of(FlowEngine.newInstance(), new BlockStateController(), new InMemoryStateRepository());
+        tasks.put("i-a", workflow[0].claimTask(graph, FlowContext.of("i-a")));
+        tasks.put("i-b", workflow[0].claimTask(graph, FlowContext.of("i-b")));
+
+        //两个线程以相反的顺序嵌套提交（默认锁）
+        CompletableFuture<Void> futureA = CompletableFuture.runAsync(() -> workflow[0].submitTask(tasks.get("i-a"), TaskAction.FORWARD,
+                FlowContext.of("i-a").put("other", "i-b")));
+        CompletableFuture<Void> futureB = CompletableFuture.runAsync(() -> workflow[0].submitTask(tasks.get("i-b"), TaskAction.FORWARD,
+                FlowContext.of("i-b").put("other", "i-a")));
+
+        //不会死锁：一个完成，另一个（逆序的）快速失败
+        int failed = 0;
+        for (CompletableFuture<Void> future : new CompletableFuture[]{futureA, futureB}) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                failed++;
+            }
+        }
+
+        assertEquals(1, failed);
+        assertTrue(futureB.isCompletedExceptionally());
+        assertEquals("a2", workflow[0].claimTask(graph, FlowContext.of("i-a")).getNodeId());
+        assertEquals("a2", workflow[0].claimTask(graph, FlowContext.of("i-b")).getNodeId());
+
+        //逆序嵌套加锁，加不上时快速失败
+        Lock lockA = locker.getLock("i-a");
+        Lock lockB = locker.getLock("i-b");
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            Lock lock = locker.getLock("i-a");
+            lock.lock();
+            try {
+                locked.countDown();
+                release.await();
+            } catch (InterruptedException ignored) {
+            } finally {
+                lock.unlock();
+            }
+        });
+        holder.start();
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+
+        lockB.lock();
+        try {
+            assertThrows(FlowException.class, lockA::lock);
+        } finally {
+            lockB.unlock();
+            release.countDown();
+            holder.join();
+        }
+
+        //顺序嵌套加锁
+        lockA.lock();
+        lockB.lock();
+        lockB.unlock();
+        lockA.unlock();
+        assertEquals(0, locker.getLockCount());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.function.Function;
+
+/**
+ * 编译缓存（条件与任务描述上各有一个，由脚本执行器使用；随图加载与卸载）
+ *
+ * <pre>{@code
+ * Expression expr = condition.compiled().get(this, code, c -> parser.parse(c));
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class CompiledCache {
+    private volatile Entry entry;
+
+    /**
+     * 获取编译结果（没有或不匹配时编译并缓存）
+     *
+     * @param owner    所有者（一般为脚本执行器；不同所有者的编译结果不通用）
+     * @param code     代码
+     * @param compiler 编译器
+     */
+    public <T> T get(Object owner, String code, Function<String, T> compiler) {
+        Entry tmp = entry;
+
+        if (tmp != null && tmp.owner == owner && (tmp.code == code || tmp.code.equals(code))) {
+            return (T) tmp.compiled;
+        }
+
+        //重复编译是等价的（不需要加锁）
+        T compiled = compiler.apply(code);
+        entry = new Entry(owner, code, compiled);
+
+        return compiled;
+    }
+
+    /**
+     * 清除
+     */
+    public void clear() {
+        entry = null;
+    }
+
+    private static class Entry {
+        final Object owner;
+        final String code;
+        final Object compiled;
+
+        Entry(Object owner, String code, Object compiled) {
+            this.owner = owner;
+            this.code = code;
+            this.compiled = compiled;
+        }
+    }
+}
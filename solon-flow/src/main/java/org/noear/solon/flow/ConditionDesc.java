@@ -16,6 +16,7 @@
 package org.noear.solon.flow;
 
 import org.noear.solon.Utils;
+import org.noear.solon.lang.Preview;
 
 
 /**
@@ -41,6 +42,9 @@ public class ConditionDesc {
      */
     public Object attachment;//如果做扩展解析，用作存储位；（不解析，定制性更强）
 
+    //编译缓存（由脚本执行器使用）
+    private transient final CompiledCache compiled = new CompiledCache();
+
     /**
      * @param description 条件描述
      */
@@ -88,6 +92,16 @@ public class ConditionDesc {
         return component;
     }
 
+    /**
+     * 编译缓存（由脚本执行器使用）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public CompiledCache compiled() {
+        return compiled;
+    }
+
     /**
      * 是否为空
      */
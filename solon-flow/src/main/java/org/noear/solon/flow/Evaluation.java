@@ -42,4 +42,30 @@ public interface Evaluation {
      * @param code    任务代码
      */
     void runTask(FlowContext context, String code) throws Throwable;
+
+    /**
+     * 运行条件（可将编译结果缓存在条件描述上）
+     *
+     * @param context   流上下文
+     * @param condition 条件描述
+     * @param code      条件代码
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default boolean runCondition(FlowContext context, ConditionDesc condition, String code) throws Throwable {
+        return runCondition(context, code);
+    }
+
+    /**
+     * 运行任务（可将编译结果缓存在任务描述上）
+     *
+     * @param context 流上下文
+     * @param task    任务描述
+     * @param code    任务代码
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default void runTask(FlowContext context, TaskDesc task, String code) throws Throwable {
+        runTask(context, code);
+    }
 }
\ No newline at end of file
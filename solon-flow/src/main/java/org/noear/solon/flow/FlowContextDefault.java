@@ -40,7 +40,7 @@ import java.util.function.Function;
 @Preview("3.5")
 public class FlowContextDefault implements FlowContextInternal {
     //变量
-    private transient final Map<String, Object> data = new ConcurrentHashMap<>();
+    private transient final Map<String, Object> data;
     //痕迹
     private transient FlowTrace trace = new FlowTrace();
     //交换器
@@ -55,10 +55,36 @@ public class FlowContextDefault implements FlowContextInternal {
     }
 
     public FlowContextDefault(String instanceId) {
+        this(instanceId, new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param data 数据存储（需要支持并发）
+     * @since 4.0
+     */
+    protected FlowContextDefault(String instanceId, Map<String, Object> data) {
+        this.data = data;
+
         put("instanceId", (instanceId == null ? "" : instanceId));
         put("context", this); //放这里不需要不断的推入移出，性能更好（序列化是要移除）
     }
 
+    /**
+     * 重置（用于会话复用；痕迹的启用状态保留）
+     *
+     * @since 4.0
+     */
+    void reset(String instanceId) {
+        data.clear();
+        trace.clear();
+        exchanger = null;
+        eventBus = null;
+        stopped = false;
+
+        put("instanceId", (instanceId == null ? "" : instanceId));
+        put("context", this);
+    }
+
     private static final Options OPTIONS = Options.of(
             Feature.Read_AutoType,
             Feature.Write_ClassName,
@@ -103,6 +129,7 @@ public class FlowContextDefault implements FlowContextInternal {
         oNode.set("data", ONode.ofBean(data, OPTIONS));
 
         if (trace != null) {
+            trace.syncRecords();
             oNode.set("trace", ONode.ofBean(trace));
         }
 
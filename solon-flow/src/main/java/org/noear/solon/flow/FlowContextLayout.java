@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.flow.util.ScriptNames;
+import org.noear.solon.lang.Preview;
+
+import java.util.*;
+
+/**
+ * 流上下文变量布局（变量名预先解析为槽位；不可变，可共享）
+ *
+ * <pre>{@code
+ * FlowContextLayout layout = graph.getPlan().getLayout(); //由图的条件、任务与循环变量生成
+ * FlowContext context = new FlowContextSlotted(layout);
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowContextLayout {
+    /**
+     * 最大槽位数（其余的变量进入溢出表）
+     */
+    public static final int MAX_SLOTS = 128;
+
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+
+    protected FlowContextLayout(Collection<String> names) {
+        this.names = names.toArray(new String[0]);
+        this.indexes = new HashMap<>(this.names.length * 2);
+
+        for (int i = 0; i < this.names.length; i++) {
+            indexes.put(this.names[i], i);
+        }
+    }
+
+    /**
+     * 由变量名构建（instanceId 与 context 总是在前）
+     */
+    public static FlowContextLayout of(String... names) {
+        Builder builder = new Builder();
+        for (String name : names) {
+            builder.add(name);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * 由图构建（图的计划里有缓存的，优先用 {@code graph.getPlan().getLayout()}）
+     */
+    public static FlowContextLayout of(Graph graph) {
+        Builder builder = new Builder();
+
+        for (Node node : graph.getNodes().values()) {
+            builder.scan(node.getWhen().getDescription());
+            builder.scan(node.getTask().getDescription());
+            builder.add(node.getMetaAsString("$for"));
+
+            Object inKey = node.getMeta("$in");
+            if (inKey instanceof String) {
+                builder.add((String) inKey);
+            }
+
+            for (Link link : node.getNextLinks()) {
+                builder.scan(link.getWhen().getDescription());
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * 获取变量的槽位（没有时为 -1）
+     */
+    public int indexOf(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * 获取槽位的变量名
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * 槽位数量
+     */
+    public int size() {
+        return names.length;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowContextLayout{" +
+                "names=" + Arrays.toString(names) +
+                '}';
+    }
+
+    /**
+     * 布局构建器
+     */
+    static class Builder {
+        private final Set<String> names = new LinkedHashSet<>();
+
+        Builder() {
+            names.add("instanceId");
+            names.add("context");
+        }
+
+        /**
+         * 添加变量名
+         */
+        void add(String name) {
+            if (name != null && name.isEmpty() == false && names.size() < MAX_SLOTS) {
+                names.add(name);
+            }
+        }
+
+        /**
+         * 扫描代码中的标识符（宽松匹配；多出的名字只是空槽位）
+         */
+        void scan(String code) {
+            ScriptNames.scan(code, this::add);
+        }
+
+        FlowContextLayout build() {
+            return new FlowContextLayout(names);
+        }
+    }
+}
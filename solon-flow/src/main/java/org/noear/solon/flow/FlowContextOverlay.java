@@ -0,0 +1,230 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.dami2.bus.DamiBus;
+import org.noear.solon.lang.Nullable;
+import org.noear.solon.lang.Preview;
+import org.noear.solon.util.CallableTx;
+import org.noear.solon.util.RunnableTx;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 流上下文叠加层（并行循环时，每项一个；读取时先本层、后父上下文，写入只在本层）
+ *
+ * <p>停止会传递给父上下文（即整个流程停止）；事件总线与父上下文共用；痕迹每层独立（并行的项不会相互覆盖最后记录，汇聚后由父上下文继续记录）</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowContextOverlay implements FlowContextInternal {
+    //父上下文
+    private transient final FlowContextInternal parent;
+    //变量（叠加视图）
+    private transient final OverlayMap data;
+    //交换器
+    private transient volatile FlowExchanger exchanger;
+    //痕迹（本层的）
+    private transient final FlowTrace trace;
+
+    public FlowContextOverlay(FlowContext parent) {
+        this.parent = (FlowContextInternal) parent;
+        this.data = new OverlayMap(parent.data());
+        this.trace = new FlowTrace();
+        this.trace.enable(parent.trace().isEnabled());
+
+        data.local.put("context", this); //给脚本用（写入落在本层）
+    }
+
+    /**
+     * 父上下文
+     */
+    public FlowContext parent() {
+        return parent;
+    }
+
+    /**
+     * 本层变量（不含父上下文的）
+     */
+    public Map<String, Object> local() {
+        return data.local;
+    }
+
+    @Override
+    public String toJson() {
+        //不单独序列化（以父上下文为准）
+        return parent.toJson();
+    }
+
+    @Override
+    public String toJson(Object data) {
+        return parent.toJson(data);
+    }
+
+    @Override
+    public DamiBus eventBus() {
+        return parent.eventBus();
+    }
+
+    @Override
+    public void exchanger(FlowExchanger exchanger) {
+        this.exchanger = exchanger;
+    }
+
+    @Override
+    public @Nullable FlowExchanger exchanger() {
+        return exchanger;
+    }
+
+    /**
+     * 中断（仅对当前分支有效）
+     */
+    @Override
+    public void interrupt() {
+        if (exchanger != null) {
+            exchanger.interrupt();
+        }
+    }
+
+    /**
+     * 停止（即结束运行）
+     */
+    @Override
+    public void stop() {
+        if (exchanger != null) {
+            exchanger.stop();
+        }
+    }
+
+    @Override
+    public boolean isStopped() {
+        return parent.isStopped();
+    }
+
+    @Override
+    public void stopped(boolean stopped) {
+        parent.stopped(stopped);
+    }
+
+    @Override
+    public FlowTrace trace() {
+        return trace;
+    }
+
+    @Override
+    public FlowContext enableTrace(boolean enable) {
+        trace.enable(enable);
+        return this;
+    }
+
+    @Override
+    public @Nullable NodeRecord lastRecord() {
+        return trace.lastRecord(null);
+    }
+
+    @Override
+    public @Nullable String lastNodeId() {
+        return trace.lastNodeId(null);
+    }
+
+    @Override
+    public Map<String, Object> data() {
+        return data;
+    }
+
+    @Override
+    public <X extends Throwable> void with(String key, Object value, RunnableTx<X> runnable) throws X {
+        Object bak = data.local.get(key);
+
+        try {
+            put(key, value);
+            runnable.run();
+        } finally {
+            if (bak == null) {
+                remove(key);
+            } else {
+                put(key, bak);
+            }
+        }
+    }
+
+    @Override
+    public <R, X extends Throwable> R with(String key, Object value, CallableTx<R, X> callable) throws X {
+        Object bak = data.local.get(key);
+
+        try {
+            put(key, value);
+            return callable.call();
+        } finally {
+            if (bak == null) {
+                remove(key);
+            } else {
+                put(key, bak);
+            }
+        }
+    }
+
+    /**
+     * 叠加视图（移除只作用于本层）
+     */
+    static class OverlayMap extends AbstractMap<String, Object> {
+        final Map<String, Object> local = new ConcurrentHashMap<>();
+        final Map<String, Object> parent;
+
+        OverlayMap(Map<String, Object> parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public Object get(Object key) {
+            Object val = local.get(key);
+            return val != null ? val : parent.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return local.containsKey(key) || parent.containsKey(key);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object old = get(key);
+            local.put(key, value);
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return local.remove(key);
+        }
+
+        @Override
+        public void clear() {
+            local.clear();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            //合并快照（本层优先）
+            Map<String, Object> tmp = new HashMap<>(parent);
+            tmp.putAll(local);
+            return Collections.unmodifiableMap(tmp).entrySet();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * 槽位数据表（布局内的变量存于槽位数组，其余的存于按需创建的溢出表；与 ConcurrentHashMap 一样，不支持 null 键与值）
+ *
+ * @author noear
+ * @since 4.0
+ */
+class FlowContextSlotMap extends AbstractMap<String, Object> {
+    private final FlowContextLayout layout;
+    private final AtomicReferenceArray<Object> slots;
+    private volatile Map<String, Object> overflow;
+
+    FlowContextSlotMap(FlowContextLayout layout) {
+        this.layout = layout;
+        this.slots = new AtomicReferenceArray<>(layout.size());
+    }
+
+    FlowContextLayout layout() {
+        return layout;
+    }
+
+    Object getSlot(int index) {
+        return slots.get(index);
+    }
+
+    Object setSlot(int index, Object value) {
+        return slots.getAndSet(index, value);
+    }
+
+    private Map<String, Object> overflow() {
+        Map<String, Object> tmp = overflow;
+        if (tmp == null) {
+            synchronized (this) {
+                tmp = overflow;
+                if (tmp == null) {
+                    tmp = overflow = new ConcurrentHashMap<>();
+                }
+            }
+        }
+
+        return tmp;
+    }
+
+    private int indexOf(Object key) {
+        if (key instanceof String) {
+            return layout.indexOf((String) key);
+        } else {
+            return -1;
+        }
+    }
+
+    @Override
+    public Object get(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            Map<String, Object> tmp = overflow;
+            return tmp == null ? null : tmp.get(key);
+        } else {
+            return slots.get(index);
+        }
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Objects.requireNonNull(value);
+
+        int index = layout.indexOf(key);
+        if (index < 0) {
+            return overflow().put(key, value);
+        } else {
+            return slots.getAndSet(index, value);
+        }
+    }
+
+    @Override
+    public Object putIfAbsent(String key, Object value) {
+        Objects.requireNonNull(value);
+
+        int index = layout.indexOf(key);
+        if (index < 0) {
+            return overflow().putIfAbsent(key, value);
+        } else {
+            if (slots.compareAndSet(index, null, value)) {
+                return null;
+            } else {
+                return slots.get(index);
+            }
+        }
+    }
+
+    @Override
+    public Object computeIfAbsent(String key, Function<? super String, ?> mappingFunction) {
+        int index = layout.indexOf(key);
+        if (index < 0) {
+            return overflow().computeIfAbsent(key, mappingFunction);
+        } else {
+            Object value = slots.get(index);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                if (value != null && slots.compareAndSet(index, null, value) == false) {
+                    value = slots.get(index);
+                }
+            }
+
+            return value;
+        }
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            Map<String, Object> tmp = overflow;
+            return tmp == null ? null : tmp.remove(key);
+        } else {
+            return slots.getAndSet(index, null);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+
+        Map<String, Object> tmp = overflow;
+        if (tmp != null) {
+            tmp.clear();
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+
+        Map<String, Object> tmp = overflow;
+        return tmp == null ? size : size + tmp.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return FlowContextSlotMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * 条目迭代器（先槽位，后溢出表；弱一致）
+     */
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int index = -1;
+        private Entry<String, Object> next;
+        private Entry<String, Object> last;
+        private Iterator<Entry<String, Object>> overflowIterator;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+
+            while (++index < slots.length()) {
+                Object value = slots.get(index);
+                if (value != null) {
+                    next = new SlotEntry(index, value);
+                    return;
+                }
+            }
+
+            if (overflowIterator == null) {
+                Map<String, Object> tmp = overflow;
+                overflowIterator = (tmp == null ? Collections.emptyIterator() : tmp.entrySet().iterator());
+            }
+
+            if (overflowIterator.hasNext()) {
+                next = overflowIterator.next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+
+            last = next;
+            advance();
+            return last;
+        }
+
+        @Override
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+
+            FlowContextSlotMap.this.remove(last.getKey());
+            last = null;
+        }
+    }
+
+    private class SlotEntry extends SimpleEntry<String, Object> {
+        private final int index;
+
+        SlotEntry(int index, Object value) {
+            super(layout.getName(index), value);
+            this.index = index;
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Objects.requireNonNull(value);
+            slots.set(index, value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.lang.Preview;
+
+/**
+ * 槽位流上下文（图中用到的变量预先解析为槽位，存于数组；其余的存于按需创建的溢出表。适合短生命周期的请求级上下文）
+ *
+ * <pre>{@code
+ * FlowContext context = new FlowContextSlotted(graph).put("a", 1);
+ * flowEngine.eval(graph, context);
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowContextSlotted extends FlowContextDefault {
+    private final FlowContextSlotMap slotMap;
+
+    public FlowContextSlotted(Graph graph) {
+        this(null, graph.getPlan().getLayout());
+    }
+
+    public FlowContextSlotted(String instanceId, Graph graph) {
+        this(instanceId, graph.getPlan().getLayout());
+    }
+
+    public FlowContextSlotted(FlowContextLayout layout) {
+        this(null, layout);
+    }
+
+    public FlowContextSlotted(String instanceId, FlowContextLayout layout) {
+        this(instanceId, new FlowContextSlotMap(layout));
+    }
+
+    private FlowContextSlotted(String instanceId, FlowContextSlotMap slotMap) {
+        super(instanceId, slotMap);
+        this.slotMap = slotMap;
+    }
+
+    /**
+     * 获取变量布局
+     */
+    public FlowContextLayout getLayout() {
+        return slotMap.layout();
+    }
+
+    /**
+     * 按槽位获取（槽位由 {@link FlowContextLayout#indexOf(String)} 预先解析）
+     */
+    public <T> T getSlot(int index) {
+        return (T) slotMap.getSlot(index);
+    }
+
+    /**
+     * 按槽位推入（null 即为移除）
+     */
+    public FlowContextSlotted setSlot(int index, Object value) {
+        slotMap.setSlot(index, value);
+        return this;
+    }
+}
@@ -21,7 +21,11 @@ import org.noear.solon.lang.Internal;
 import org.noear.solon.lang.NonSerializable;
 import org.noear.solon.lang.Preview;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
@@ -134,9 +138,12 @@ public interface FlowEngine extends NonSerializable {
      */
     default void load(String graphUri) {
         if (graphUri.contains("*")) {
+            List<Graph> graphs = new ArrayList<>();
             for (String u1 : ResourceUtil.scanResources(graphUri)) {
-                load(Graph.fromUri(u1));
+                graphs.add(Graph.fromUri(u1));
             }
+
+            load(graphs);
         } else {
             load(Graph.fromUri(graphUri));
         }
@@ -149,6 +156,34 @@ public interface FlowEngine extends NonSerializable {
      */
     void load(Graph graph);
 
+    /**
+     * 批量加载图（一次性发布）
+     *
+     * @param graphs 图集合
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default void load(Collection<Graph> graphs) {
+        for (Graph graph : graphs) {
+            load(graph);
+        }
+    }
+
+    /**
+     * 重新加载全部图（替换已加载的所有图，一次性发布；运行中的仍使用旧版本）
+     *
+     * @param graphs 图集合
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default void reload(Collection<Graph> graphs) {
+        for (Graph graph : new ArrayList<>(getGraphs())) {
+            unload(graph.getId());
+        }
+
+        load(graphs);
+    }
+
     /**
      * 卸载图
      *
@@ -275,4 +310,88 @@ public interface FlowEngine extends NonSerializable {
      */
     @Internal
     void eval(Graph graph, FlowExchanger exchanger, FlowOptions options) throws FlowException;
+
+
+    /// ////////////////////
+
+    /**
+     * 异步运行（并行网关的分支以组合方式汇聚，不占用线程等待）
+     *
+     * @param graphId 图Id
+     * @param context 上下文
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default CompletionStage<Void> evalAsync(String graphId, FlowContext context) {
+        Graph graph = getGraphOrThrow(graphId);
+        return evalAsync(graph, -1, context, null);
+    }
+
+    /**
+     * 异步运行
+     *
+     * @param graph   图
+     * @param context 上下文
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default CompletionStage<Void> evalAsync(Graph graph, FlowContext context) {
+        return evalAsync(graph, -1, context, null);
+    }
+
+    /**
+     * 异步运行
+     *
+     * @param graph   图
+     * @param steps   步数
+     * @param context 上下文
+     * @param options 选项
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default CompletionStage<Void> evalAsync(Graph graph, int steps, FlowContext context, FlowOptions options) {
+        FlowDriver driver = getDriver(graph);
+
+        return evalAsync(graph, new FlowExchanger(graph, this, driver, context, steps, new AtomicInteger(0)), options);
+    }
+
+    /**
+     * 异步运行（默认为同步运行后返回结果）
+     *
+     * @param graph     图
+     * @param exchanger 交换器
+     * @since 4.0
+     */
+    @Internal
+    default CompletionStage<Void> evalAsync(Graph graph, FlowExchanger exchanger, FlowOptions options) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        try {
+            eval(graph, exchanger, options);
+            future.complete(null);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /// ////////////////////
+
+    /**
+     * 打开运行会话（复用上下文与交换器等；用后要关闭）
+     *
+     * <pre>{@code
+     * try (FlowSession session = flowEngine.openSession()) {
+     *     session.context().put("a", 1);
+     *     session.eval("r1");
+     * }
+     * }</pre>
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    default FlowSession openSession() {
+        return new FlowSession(this);
+    }
 }
\ No newline at end of file
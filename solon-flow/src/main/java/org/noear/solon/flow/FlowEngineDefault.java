@@ -19,13 +19,26 @@ import org.noear.solon.Utils;
 import org.noear.solon.core.util.Assert;
 import org.noear.solon.core.util.RankEntity;
 import org.noear.solon.flow.intercept.FlowInterceptor;
+import org.noear.solon.flow.intercept.FlowInterceptorChain;
 import org.noear.solon.flow.intercept.FlowInvocation;
+import org.noear.solon.flow.jfr.FlowJfr;
 import org.noear.solon.flow.driver.SimpleFlowDriver;
 import org.noear.solon.flow.util.Stepper;
+import org.noear.solon.lang.Preview;
 
+import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 /**
  * 流引擎实现
@@ -34,11 +47,18 @@ import java.util.concurrent.atomic.AtomicReference;
  * @since 3.0
  */
 public class FlowEngineDefault implements FlowEngine {
-    protected final Map<String, Graph> graphMap;
-    protected final Map<String, FlowDriver> driverMap;
-    protected FlowDriver driverDef;
+    //注册表（写时复制：读取无锁，写入时整体替换发布）
+    protected volatile Map<String, Graph> graphMap;
+    protected volatile Map<String, FlowDriver> driverMap;
+    protected volatile FlowDriver driverDef;
+    private final Object registryLock = new Object();
     protected final List<RankEntity<FlowInterceptor>> interceptorList;
     protected final boolean simplified;
+    protected volatile boolean iterative;
+    //默认选项（只含引擎拦截链的不可变快照；拦截器变化时重建）
+    private volatile FlowOptions defaultOptions = new FlowOptions(FlowInterceptorChain.EMPTY);
+    //运行会话（按线程复用；弱引用，线程不会因此一直引用引擎）
+    private final ThreadLocal<WeakReference<FlowSession>> sessionLocal = new ThreadLocal<>();
 
     public FlowEngineDefault(FlowDriver driver, boolean simplified) {
         //默认驱动器
@@ -56,11 +76,36 @@ public class FlowEngineDefault implements FlowEngine {
             this.graphMap = Collections.emptyMap();
             this.driverMap = Collections.emptyMap();
         } else {
-            this.graphMap = new HashMap<>();
-            this.driverMap = new HashMap<>();
+            this.graphMap = Collections.unmodifiableMap(new HashMap<>());
+            this.driverMap = Collections.unmodifiableMap(new HashMap<>());
         }
     }
 
+    /**
+     * 设置迭代遍历模式（以显式工作栈驱动遍历，替代逐跳递归；栈深不再随路径长度增长）
+     *
+     * <pre>{@code
+     * FlowEngine flowEngine = new FlowEngineDefault(null, false).iterative(true);
+     * }</pre>
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public FlowEngineDefault iterative(boolean iterative) {
+        this.iterative = iterative;
+        return this;
+    }
+
+    /**
+     * 是否为迭代遍历模式
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public boolean isIterative() {
+        return iterative;
+    }
+
     @Override
     public FlowDriver getDriver(Graph graph) {
         Assert.notNull(graph, "graph is null");
@@ -85,6 +130,8 @@ public class FlowEngineDefault implements FlowEngine {
         if (interceptorList.size() > 0) {
             Collections.sort(interceptorList);
         }
+
+        defaultOptions = new FlowOptions(FlowInterceptorChain.of(interceptorList));
     }
 
     @Override
@@ -95,6 +142,44 @@ public class FlowEngineDefault implements FlowEngine {
                 break;
             }
         }
+
+        defaultOptions = new FlowOptions(FlowInterceptorChain.of(interceptorList));
+    }
+
+    /**
+     * 获取生效的选项（没有指定选项，或选项没有拦截器时，使用默认选项；否则使用与引擎拦截链合并后的选项，有缓存）
+     */
+    private FlowOptions effectiveOptions(FlowOptions options) {
+        FlowOptions tmp = defaultOptions;
+
+        if (options == null) {
+            return tmp;
+        } else {
+            return options.mergeWith(tmp.getInterceptorChain(), tmp);
+        }
+    }
+
+    /**
+     * 打开运行会话（按线程复用，线程只弱引用会话，被回收后再新建；同一线程内嵌套打开时，新建不复用）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    @Override
+    public FlowSession openSession() {
+        WeakReference<FlowSession> sessionRef = sessionLocal.get();
+        FlowSession session = (sessionRef == null ? null : sessionRef.get());
+
+        if (session == null) {
+            session = new FlowSession(this);
+            sessionLocal.set(new WeakReference<>(session));
+        } else if (session.isClosed()) {
+            session.open();
+        } else {
+            return new FlowSession(this);
+        }
+
+        return session;
     }
 
     @Override
@@ -103,7 +188,13 @@ public class FlowEngineDefault implements FlowEngine {
             if (name == null) {
                 driverDef = driver;
             } else {
-                driverMap.put(name, driver);
+                assertRegistrable();
+
+                synchronized (registryLock) {
+                    Map<String, FlowDriver> tmp = new HashMap<>(driverMap);
+                    tmp.put(name, driver);
+                    driverMap = Collections.unmodifiableMap(tmp);
+                }
             }
         }
     }
@@ -111,18 +202,84 @@ public class FlowEngineDefault implements FlowEngine {
     @Override
     public void unregister(String name) {
         if (Utils.isNotEmpty(name)) {
-            driverMap.remove(name);
+            synchronized (registryLock) {
+                if (driverMap.containsKey(name)) {
+                    Map<String, FlowDriver> tmp = new HashMap<>(driverMap);
+                    tmp.remove(name);
+                    driverMap = Collections.unmodifiableMap(tmp);
+                }
+            }
         }
     }
 
     @Override
     public void load(Graph graph) {
-        graphMap.put(graph.getId(), graph);
+        load(Collections.singletonList(graph));
+    }
+
+    /**
+     * 批量加载图（一次性发布）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    @Override
+    public void load(Collection<Graph> graphs) {
+        assertRegistrable();
+
+        //预先编译执行计划（避免首次运行时编译；放在锁外）
+        for (Graph graph : graphs) {
+            graph.getPlan();
+        }
+
+        synchronized (registryLock) {
+            Map<String, Graph> tmp = new HashMap<>(graphMap);
+            for (Graph graph : graphs) {
+                tmp.put(graph.getId(), graph);
+            }
+            graphMap = Collections.unmodifiableMap(tmp);
+        }
+    }
+
+    /**
+     * 重新加载全部图（替换已加载的所有图，一次性发布；运行中的仍使用旧版本）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    @Override
+    public void reload(Collection<Graph> graphs) {
+        assertRegistrable();
+
+        Map<String, Graph> tmp = new HashMap<>();
+        for (Graph graph : graphs) {
+            graph.getPlan();
+            tmp.put(graph.getId(), graph);
+        }
+
+        synchronized (registryLock) {
+            graphMap = Collections.unmodifiableMap(tmp);
+        }
     }
 
     @Override
     public void unload(String graphId) {
-        graphMap.remove(graphId);
+        synchronized (registryLock) {
+            if (graphMap.containsKey(graphId)) {
+                Map<String, Graph> tmp = new HashMap<>(graphMap);
+                tmp.remove(graphId);
+                graphMap = Collections.unmodifiableMap(tmp);
+            }
+        }
+    }
+
+    /**
+     * 检测是否可注册（简化模式不支持）
+     */
+    private void assertRegistrable() {
+        if (simplified) {
+            throw new UnsupportedOperationException("The simplified flow engine does not support registration");
+        }
     }
 
     @Override
@@ -147,11 +304,8 @@ public class FlowEngineDefault implements FlowEngine {
         Node lastNode = exchanger.context().trace().lastNode(graph);
         FlowExchanger bak = exchanger.context().exchanger();
 
-        if (options == null) {
-            options = new FlowOptions();
-        }
-
-        options.interceptorAdd(interceptorList);
+        options = effectiveOptions(options);
+        Object jfrEvent = FlowJfr.beginFlow(lastNode);
 
         try {
             exchanger.context().exchanger(exchanger);
@@ -159,14 +313,85 @@ public class FlowEngineDefault implements FlowEngine {
             new FlowInvocation(exchanger, options, lastNode, this::evalDo).invoke();
         } finally {
             exchanger.context().exchanger(bak);
+            FlowJfr.commit(jfrEvent);
+        }
+    }
+
+    /**
+     * 异步评估
+     *
+     * <p>以迭代模式遍历；有执行器时，运行交给执行器，并行网关的各分支异步运行，由最后完成的分支接续后面的工作（不占用线程等待）。
+     * 拦截器的 interceptFlow 只包围启动阶段</p>
+     *
+     * @param graph     图
+     * @param exchanger 交换器
+     * @since 4.0
+     */
+    @Preview("4.0")
+    @Override
+    public CompletionStage<Void> evalAsync(Graph graph, FlowExchanger exchanger, FlowOptions options) {
+        //开始执行
+        Node lastNode = exchanger.context().trace().lastNode(graph);
+        FlowExchanger bak = exchanger.context().exchanger();
+
+        options = effectiveOptions(options);
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<Void>> futureRef = new AtomicReference<>();
+        Object jfrEvent = FlowJfr.beginFlow(lastNode);
+
+        try {
+            exchanger.context().exchanger(exchanger);
+            exchanger.context().stopped(false); //每次执行前，重置下
+            new FlowInvocation(exchanger, options, lastNode, (inv, opts) -> {
+                Node startNode = inv.getStartNode();
+                Executor executor = exchanger.driver().getExecutor();
+
+                if (executor == null) {
+                    futureRef.set(node_walk_async(inv.getExchanger(), opts, startNode.getGraph().getStart(), startNode));
+                } else {
+                    //有执行器时，整个运行都交给执行器（调用线程不等待；任务可运行在虚拟线程上）
+                    futureRef.set(CompletableFuture.supplyAsync(() -> node_walk_async(inv.getExchanger(), opts, startNode.getGraph().getStart(), startNode), executor)
+                            .thenCompose(f -> f));
+                }
+            }).invoke();
+        } catch (Throwable e) {
+            exchanger.context().exchanger(bak);
+            FlowJfr.commit(jfrEvent);
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        CompletableFuture<Void> future = futureRef.get();
+        if (future == null) {
+            //拦截器没有放行
+            future = CompletableFuture.completedFuture(null);
         }
+
+        future.whenComplete((v, e) -> {
+            //运行结束后，再恢复交换器
+            exchanger.context().exchanger(bak);
+            FlowJfr.commit(jfrEvent);
+
+            if (e == null) {
+                result.complete(null);
+            } else {
+                result.completeExceptionally(async_error(e));
+            }
+        });
+
+        return result;
     }
 
     /**
      * 执行评估
      */
     protected void evalDo(FlowInvocation inv, FlowOptions options) throws FlowException {
-        node_run(inv.getExchanger(), options, inv.getStartNode().getGraph().getStart(), inv.getStartNode());
+        if (iterative) {
+            node_walk(inv.getExchanger(), options, inv.getStartNode().getGraph().getStart(), inv.getStartNode());
+        } else {
+            node_run(inv.getExchanger(), options, inv.getStartNode().getGraph().getStart(), inv.getStartNode());
+        }
     }
 
     /**
@@ -175,8 +400,9 @@ public class FlowEngineDefault implements FlowEngine {
     protected boolean onNodeStart(FlowExchanger exchanger, FlowOptions options, Node node) {
         if (exchanger.isReverting() == false) {
             //恢复完成，才执行拦截
-            for (RankEntity<FlowInterceptor> interceptor : options.getInterceptorList()) {
-                interceptor.target.onNodeStart(exchanger.context(), node);
+            //没有重写 onNodeStart 的拦截器时，整体跳过
+            for (FlowInterceptor interceptor : options.getInterceptorChain().getNodeStartInterceptors()) {
+                interceptor.onNodeStart(exchanger.context(), node);
             }
 
             exchanger.driver().onNodeStart(exchanger, node);
@@ -203,8 +429,8 @@ public class FlowEngineDefault implements FlowEngine {
      */
     protected boolean onNodeEnd(FlowExchanger exchanger, FlowOptions options, Node node) {
         if (exchanger.isReverting() == false) {
-            for (RankEntity<FlowInterceptor> interceptor : options.getInterceptorList()) {
-                interceptor.target.onNodeEnd(exchanger.context(), node);
+            for (FlowInterceptor interceptor : options.getInterceptorChain().getNodeEndInterceptors()) {
+                interceptor.onNodeEnd(exchanger.context(), node);
             }
 
             exchanger.driver().onNodeEnd(exchanger, node);
@@ -226,11 +452,33 @@ public class FlowEngineDefault implements FlowEngine {
         return true;
     }
 
+    /**
+     * 获取节点的执行计划槽位
+     */
+    protected NodePlan plan(Node node) {
+        return node.getGraph().getPlan().get(node);
+    }
+
+    /**
+     * 循环变量推入（槽位上下文与图的布局相同时，直接按预先解析的槽位写入）
+     */
+    private void loop_put(FlowContext context, NodePlan np, Object item) {
+        if (item != null && np.getForSlot() >= 0 && context instanceof FlowContextSlotted) {
+            FlowContextSlotted slotted = (FlowContextSlotted) context;
+            if (slotted.getLayout() == np.getNode().getGraph().getPlan().getLayout()) {
+                slotted.setSlot(np.getForSlot(), item);
+                return;
+            }
+        }
+
+        context.put(np.getForKey(), item);
+    }
+
     /**
      * 条件检测
      */
     protected boolean condition_test(FlowExchanger exchanger, ConditionDesc condition, boolean def) throws FlowException {
-        if (condition.isEmpty()) {
+        if (condition == null || condition.isEmpty()) {
             return def;
         }
 
@@ -254,6 +502,15 @@ public class FlowEngineDefault implements FlowEngine {
             return true;
         }
 
+        Object jfrEvent = FlowJfr.beginNode(node);
+        try {
+            return task_exec_do(exchanger, options, node);
+        } finally {
+            FlowJfr.commit(jfrEvent);
+        }
+    }
+
+    private boolean task_exec_do(FlowExchanger exchanger, FlowOptions options, Node node) throws FlowException {
         //任务之前，流入之后
         if (onNodeStart(exchanger, options, node) == false) {
             return false;
@@ -261,8 +518,9 @@ public class FlowEngineDefault implements FlowEngine {
 
         /// ///////////////////
 
-        //尝试检测条件；缺省为 true
-        if (condition_test(exchanger, node.getWhen(), true)) {
+        //尝试检测条件；缺省为 true（空条件在编译时已消除）
+        ConditionDesc when = plan(node).getWhen();
+        if (when == null || condition_test(exchanger, when, true)) {
             //起到触发事件的作用 //处理方会“过滤”空任务
             try {
                 exchanger.driver().handleTask(exchanger, node.getTask());
@@ -299,21 +557,58 @@ public class FlowEngineDefault implements FlowEngine {
             return;
         }
 
+        if (node_enter(exchanger, node, startNode) == false) {
+            return;
+        }
+
+        //按编译时预解析的处理方式分派
+        switch (plan(node).getKind()) {
+            case NodePlan.KIND_START:
+                start_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_END:
+                end_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_ACTIVITY:
+                activity_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_INCLUSIVE: //包容网关（多选）
+                inclusive_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_EXCLUSIVE: //排他网关（单选）
+                exclusive_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_PARALLEL: //并行网关（全选）
+                parallel_run(exchanger, options, node, startNode);
+                break;
+            case NodePlan.KIND_LOOP_IN:
+            case NodePlan.KIND_LOOP_OUT:
+                loop_run(exchanger, options, node, startNode);
+                break;
+        }
+    }
+
+    /**
+     * 进入节点（停止、阻断、恢复与步进控制）
+     *
+     * @return 是否继续
+     */
+    private boolean node_enter(FlowExchanger exchanger, Node node, Node startNode) {
         //如果停止
         if (exchanger.isStopped()) {
-            return;
+            return false;
         }
 
         //如果阻断，当前分支不再后流
         if (exchanger.isInterrupted()) {
             //重置阻断（不影响别的分支）
             exchanger.interrupt(false);
-            return;
+            return false;
         }
 
         //检测恢复情况
         if (exchanger.isReverting()) {
-            if (node.getId().equals(startNode.getId()) && node.getGraph().getId().equals(startNode.getGraph().getId())) {
+            if (node == startNode || (node.getId().equals(startNode.getId()) && node.getGraph().getId().equals(startNode.getGraph().getId()))) {
                 //恢复完成（恢复到同图同节点）
                 exchanger.reverting(false);
             }
@@ -326,63 +621,38 @@ public class FlowEngineDefault implements FlowEngine {
         if (exchanger.isReverting() == false) {
             if (exchanger.nextSetp(node) == false) {
                 exchanger.stop();
-                return;
+                return false;
             }
         }
 
-        switch (node.getType()) {
-            case START:
-                start_run(exchanger, options, node, startNode);
-                break;
-            case END:
-                end_run(exchanger, options, node, startNode);
-                break;
-            case ACTIVITY:
-                activity_run(exchanger, options, node, startNode);
-                break;
-            case INCLUSIVE: //包容网关（多选）
-                inclusive_run(exchanger, options, node, startNode);
-                break;
-            case EXCLUSIVE: //排他网关（单选）
-                exclusive_run(exchanger, options, node, startNode);
-                break;
-            case PARALLEL: //并行网关（全选）
-                parallel_run(exchanger, options, node, startNode);
-                break;
-            case LOOP:
-                loop_run(exchanger, options, node, startNode);
-                break;
-        }
+        return true;
     }
 
     protected void start_run(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        //任务之前，流入之后
-        if (onNodeStart(exchanger, options, node) == false) {
-            return;
-        }
-
-        //任务之后，流出之前
-        if (onNodeEnd(exchanger, options, node) == false) {
+        if (empty_exec(exchanger, options, node) == false) {
             return;
         }
 
         //::流出
-        for (Link l : node.getNextLinks()) {
-            if (condition_test(exchanger, l.getWhen(), true)) {
-                node_run(exchanger, options, l.getNextNode(), startNode);
-            }
-        }
+        activity_run_out(exchanger, options, node, startNode);
     }
 
     protected void end_run(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        //任务之前，流入之后
-        if (onNodeStart(exchanger, options, node) == false) {
-            return;
-        }
+        empty_exec(exchanger, options, node);
+    }
 
-        //任务之后，流出之前
-        if (onNodeEnd(exchanger, options, node) == false) {
-            return;
+    /**
+     * 运行没有任务的节点（开始、结束）
+     *
+     * @return 是否继续
+     */
+    private boolean empty_exec(FlowExchanger exchanger, FlowOptions options, Node node) {
+        Object jfrEvent = FlowJfr.beginNode(node);
+        try {
+            //任务之前，流入之后；任务之后，流出之前
+            return onNodeStart(exchanger, options, node) && onNodeEnd(exchanger, options, node);
+        } finally {
+            FlowJfr.commit(jfrEvent);
         }
     }
 
@@ -397,13 +667,23 @@ public class FlowEngineDefault implements FlowEngine {
     }
 
     protected void activity_run_out(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        for (Link l : node.getNextLinks()) {
-            if (condition_test(exchanger, l.getWhen(), true)) {
-                node_run(exchanger, options, l.getNextNode(), startNode);
+        NodePlan np = plan(node);
+
+        for (int i = 0, len = np.size(); i < len; i++) {
+            if (condition_test(exchanger, np.getWhen(i), true)) {
+                node_run(exchanger, options, target(np, i), startNode);
             }
         }
     }
 
+    /**
+     * 获取流出目标节点
+     */
+    private static Node target(NodePlan np, int index) {
+        NodePlan target = np.getTarget(index);
+        return target == null ? null : target.getNode();
+    }
+
     /**
      * 运行包容网关
      */
@@ -423,13 +703,13 @@ public class FlowEngineDefault implements FlowEngine {
 
     //包容网关
     protected boolean inclusive_run_in(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
-        Stack<Integer> inclusive_stack = exchanger.temporary().stack(node.getGraph(), "inclusive_run");
-
         //::流入
-        if (node.getPrevLinks().size() > 1) { //如果是多个输入连接（尝试等待）
+        if (plan(node).getPrevCount() > 1) { //如果是多个输入连接（尝试等待）
+            TemporaryStack<Integer> inclusive_stack = exchanger.temporary().inclusiveStack(node.getGraph());
+
             if (inclusive_stack.size() > 0) {
                 int start_size = inclusive_stack.peek();
-                int in_size = exchanger.temporary().countIncr(node.getGraph(), node.getId());//运行次数累计
+                int in_size = exchanger.temporary().countIncr(node);//运行次数累计
                 if (start_size > in_size) { //等待所有支线流入完成
                     return false;
                 }
@@ -445,26 +725,36 @@ public class FlowEngineDefault implements FlowEngine {
 
     //包容网关
     protected void inclusive_run_out(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
-        Stack<Integer> inclusive_stack = exchanger.temporary().stack(node.getGraph(), "inclusive_run");
+        NodePlan np = plan(node);
 
         //::流出
-        List<Link> matched_lines = new ArrayList<>();
+        int[] matched_lines = inclusive_match(exchanger, np);
+
+        if (matched_lines.length > 0) {
+            //记录流出数量
+            exchanger.temporary().inclusiveStack(node.getGraph()).push(matched_lines.length);
 
-        for (Link l : node.getNextLinks()) {
-            if (condition_test(exchanger, l.getWhen(), true)) {
-                matched_lines.add(l);
+            //执行所有满足条件
+            for (int i : matched_lines) {
+                node_run(exchanger, options, target(np, i), startNode);
             }
         }
+    }
 
-        if (matched_lines.size() > 0) {
-            //记录流出数量
-            inclusive_stack.push(matched_lines.size());
+    /**
+     * 包容网关匹配（所有满足条件的流出位置）
+     */
+    private int[] inclusive_match(FlowExchanger exchanger, NodePlan np) throws FlowException {
+        int[] matched_lines = new int[np.size()];
+        int matched_size = 0;
 
-            //执行所有满足条件
-            for (Link l : matched_lines) {
-                node_run(exchanger, options, l.getNextNode(), startNode);
+        for (int i = 0, len = np.size(); i < len; i++) {
+            if (condition_test(exchanger, np.getWhen(i), true)) {
+                matched_lines[matched_size++] = i;
             }
         }
+
+        return matched_size == matched_lines.length ? matched_lines : Arrays.copyOf(matched_lines, matched_size);
     }
 
     /**
@@ -481,24 +771,31 @@ public class FlowEngineDefault implements FlowEngine {
     }
 
     protected void exclusive_run_out(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
+        NodePlan np = plan(node);
+
         //::流出
-        Link def_line = null; //默认线
-        for (Link l : node.getNextLinks()) {
-            if (l.getWhen().isEmpty()) {
-                def_line = l;
-            } else {
-                if (condition_test(exchanger, l.getWhen(), false)) {
-                    //执行第一个满足条件
-                    node_run(exchanger, options, l.getNextNode(), startNode);
-                    return; //结束
-                }
-            }
+        int matched_line = exclusive_match(exchanger, np);
+
+        if (matched_line >= 0) {
+            node_run(exchanger, options, target(np, matched_line), startNode);
         }
+    }
 
-        if (def_line != null) {
-            //如果有默认
-            node_run(exchanger, options, def_line.getNextNode(), startNode);
+    /**
+     * 排他网关匹配（第一个满足条件的流出位置；没有时取默认线；都没有为 -1）
+     */
+    private int exclusive_match(FlowExchanger exchanger, NodePlan np) throws FlowException {
+        for (int i = 0, len = np.size(); i < len; i++) {
+            ConditionDesc when = np.getWhen(i);
+
+            if (when != null && condition_test(exchanger, when, false)) {
+                //第一个满足条件
+                return i;
+            }
         }
+
+        //如果有默认线（空条件）
+        return np.getDefaultIndex();
     }
 
     /**
@@ -519,8 +816,8 @@ public class FlowEngineDefault implements FlowEngine {
 
     protected boolean parallel_run_in(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
         //::流入
-        int count = exchanger.temporary().countIncr(node.getGraph(), node.getId());//运行次数累计
-        if (node.getPrevLinks().size() > count) { //等待所有支线计数完成
+        int count = exchanger.temporary().countIncr(node);//运行次数累计
+        if (plan(node).getPrevCount() > count) { //等待所有支线计数完成
             return false;
         }
 
@@ -528,55 +825,93 @@ public class FlowEngineDefault implements FlowEngine {
     }
 
     protected void parallel_run_out(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
+        NodePlan np = plan(node);
+
         //恢复计数
-        exchanger.temporary().countSet(node.getGraph(), node.getId(), 0);
+        exchanger.temporary().countSet(node, 0);
 
         //::流出
-        if (exchanger.driver().getExecutor() == null || node.getNextNodes().size() < 2) { //没有2个，也没必要用线程池
+        if (exchanger.driver().getExecutor() == null || np.size() < 2) { //没有2个，也没必要用线程池
             //单线程
-            for (Node n : node.getNextNodes()) {
-                node_run(exchanger, options, n, startNode);
+            for (int i = 0, len = np.size(); i < len; i++) {
+                node_run(exchanger, options, target(np, i), startNode);
             }
         } else {
             //多线程
-            CountDownLatch cdl = new CountDownLatch(node.getNextNodes().size());
-            AtomicReference<Throwable> errorRef = new AtomicReference<>();
-            for (Node n : node.getNextNodes()) {
-                exchanger.driver().getExecutor().execute(() -> {
-                    try {
-                        if (errorRef.get() != null) {
-                            return;
-                        }
+            parallel_fork(exchanger, np, n -> node_run(exchanger, options, n, startNode));
+        }
+    }
 
-                        node_run(exchanger, options, n, startNode);
-                    } catch (Throwable ex) {
-                        errorRef.set(ex);
-                    } finally {
-                        cdl.countDown();
+    /**
+     * 并行网关分支（调用线程也运行分支，其余的交给执行器，并等待全部完成）
+     */
+    private void parallel_fork(FlowExchanger exchanger, NodePlan np, Consumer<Node> branch) throws FlowException {
+        fork_join(exchanger, np, np.size(), i -> branch.accept(target(np, i)),
+                "The parallel branches wait was interrupted: ");
+    }
+
+    /**
+     * 分叉并汇聚（第一个由调用线程运行，其余的提交给执行器；调用线程随后领取还没开始的，最后只等待已在别的线程上运行的）
+     *
+     * <p>等待的总是正在运行的工作，所以嵌套的并行网关在有界线程池上也不会因线程都在等待而死锁</p>
+     */
+    private void fork_join(FlowExchanger exchanger, NodePlan np, int size, IntConsumer work, String interruptedMessage) throws FlowException {
+        CountDownLatch cdl = new CountDownLatch(size);
+        AtomicIntegerArray claims = new AtomicIntegerArray(size);
+        AtomicReference<Throwable> errorRef = new AtomicReference<>();
+
+        IntConsumer claimAndRun = i -> {
+            if (claims.compareAndSet(i, 0, 1)) {
+                try {
+                    if (errorRef.get() == null) {
+                        work.accept(i);
                     }
-                });
+                } catch (Throwable ex) {
+                    errorRef.set(ex);
+                } finally {
+                    cdl.countDown();
+                }
             }
+        };
 
-            //等待
+        Executor executor = exchanger.driver().getExecutor();
+        for (int i = 1; i < size; i++) {
+            int idx = i;
             try {
-                cdl.await();
-            } catch (InterruptedException ignore) {
-                //
+                executor.execute(() -> claimAndRun.accept(idx));
+            } catch (RejectedExecutionException ignore) {
+                //由调用线程领取
             }
+        }
 
-            //异常处理
-            if (errorRef.get() != null) {
-                if (errorRef.get() instanceof FlowException) {
-                    throw (FlowException) errorRef.get();
-                } else {
-                    throw new FlowException(errorRef.get());
-                }
+        //调用线程运行第一个，再领取还没开始的
+        for (int i = 0; i < size; i++) {
+            claimAndRun.accept(i);
+        }
+
+        //等待
+        Object jfrEvent = FlowJfr.beginJoin(np.getNode());
+        try {
+            cdl.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FlowException(interruptedMessage + np.getNode().getGraph().getId() + " / " + np.getNode().getId(), e);
+        } finally {
+            FlowJfr.commit(jfrEvent);
+        }
+
+        //异常处理
+        if (errorRef.get() != null) {
+            if (errorRef.get() instanceof FlowException) {
+                throw (FlowException) errorRef.get();
+            } else {
+                throw new FlowException(errorRef.get());
             }
         }
     }
 
     protected void loop_run(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        if (Utils.isEmpty(node.getMetaAsString("$for"))) {
+        if (plan(node).getKind() == NodePlan.KIND_LOOP_IN) {
             //流入（结束）
             if (loop_run_in(exchanger, options, node, startNode) == false) {
                 return;
@@ -602,11 +937,17 @@ public class FlowEngineDefault implements FlowEngine {
     }
 
     protected boolean loop_run_in(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        Stack<Iterator> loop_stack = exchanger.temporary().stack(node.getGraph(), "loop_run");
+        TemporaryStack<Iterator> loop_stack = exchanger.temporary().loopStack(node.getGraph());
 
         //::流入
         if (loop_stack.size() > 0) {
             Iterator inIter = loop_stack.peek();
+            if (inIter instanceof LoopJoin) {
+                //并行循环的某一项到达结束节点（由汇聚后统一继续）
+                ((LoopJoin) inIter).closing = node;
+                return false;
+            }
+
             if (inIter.hasNext()) { //等待遍历完成
                 return false;
             }
@@ -620,8 +961,38 @@ public class FlowEngineDefault implements FlowEngine {
     }
 
     protected void loop_run_out(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
-        String forKey = node.getMetaAsString("$for");
-        Object inKey = node.getMeta("$in");
+        NodePlan np = plan(node);
+        Iterator inIter = loop_iterator(exchanger, np);
+
+        TemporaryStack<Iterator> loop_stack = exchanger.temporary().loopStack(node.getGraph());
+
+        if (loop_parallel_able(exchanger, np)) {
+            //并行遍历（汇聚后，从结束节点继续）
+            Node closing = loop_parallel_join(exchanger, options, np, inIter, startNode);
+
+            if (closing != null && exchanger.isStopped() == false) {
+                loop_stack.push(Collections.emptyIterator());
+                node_run(exchanger, options, closing, startNode);
+            }
+            return;
+        }
+
+        loop_stack.push(inIter);
+
+        //::流出
+        while (inIter.hasNext()) {
+            Object item = inIter.next();
+            loop_put(exchanger.context(), np, item);
+            //node_run(exchanger, node.getNextNode(), startNode);
+            activity_run_out(exchanger, options, node, startNode);
+        }
+    }
+
+    /**
+     * 获取循环遍历器（$in）
+     */
+    private Iterator loop_iterator(FlowExchanger exchanger, NodePlan np) throws FlowException {
+        Object inKey = np.getInKey();
         Object inObj = null;
 
         if (inKey instanceof List) {
@@ -650,16 +1021,424 @@ public class FlowEngineDefault implements FlowEngine {
             throw new FlowException(inKey + " is not a collection");
         }
 
+        return inIter;
+    }
 
-        Stack<Iterator> loop_stack = exchanger.temporary().stack(node.getGraph(), "loop_run");
-        loop_stack.push(inIter);
+    /**
+     * 是否可并行遍历（$parallel；需要有执行器，且不在步进或恢复中）
+     */
+    private boolean loop_parallel_able(FlowExchanger exchanger, NodePlan np) {
+        return np.getParallel() > 0
+                && exchanger.driver().getExecutor() != null
+                && exchanger.getSteps() < 0
+                && exchanger.isReverting() == false;
+    }
 
-        //::流出
-        while (inIter.hasNext()) {
-            Object item = inIter.next();
-            exchanger.context().put(forKey, item);
-            //node_run(exchanger, node.getNextNode(), startNode);
-            activity_run_out(exchanger, options, node, startNode);
+    /**
+     * 并行遍历并等待汇聚（调用线程也作为一个工作者，只另外提交 $parallel - 1 个）
+     *
+     * @return 结束节点（没有项到达时为 null）
+     */
+    private Node loop_parallel_join(FlowExchanger exchanger, FlowOptions options, NodePlan np, Iterator inIter, Node startNode) throws FlowException {
+        LoopJoin join = new LoopJoin(inIter, np.getChunk());
+
+        fork_join(exchanger, np, np.getParallel(), i -> loop_worker(exchanger, options, np, join, startNode),
+                "The loop iterations wait was interrupted: ");
+
+        return join.closing;
+    }
+
+    /**
+     * 并行遍历（$parallel 个工作者，每次领取 $chunk 项；每项使用独立的交换器与上下文叠加层）
+     *
+     * @return 结束节点（没有项到达时为 null）
+     */
+    private CompletableFuture<Node> loop_fork(FlowExchanger exchanger, FlowOptions options, NodePlan np, Iterator inIter, Node startNode) {
+        Executor executor = exchanger.driver().getExecutor();
+        LoopJoin join = new LoopJoin(inIter, np.getChunk());
+        CompletableFuture<?>[] workers = new CompletableFuture[np.getParallel()];
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = CompletableFuture.runAsync(() -> loop_worker(exchanger, options, np, join, startNode), executor);
+        }
+
+        return CompletableFuture.allOf(workers).thenApply(v -> join.closing);
+    }
+
+    /**
+     * 并行遍历的工作者
+     */
+    private void loop_worker(FlowExchanger exchanger, FlowOptions options, NodePlan np, LoopJoin join, Node startNode) {
+        Graph graph = np.getNode().getGraph();
+        List<Object> items = new ArrayList<>(np.getChunk());
+
+        try {
+            while (exchanger.isStopped() == false && join.take(items)) {
+                for (Object item : items) {
+                    if (exchanger.isStopped()) {
+                        return;
+                    }
+
+                    FlowContextOverlay itemContext = new FlowContextOverlay(exchanger.context());
+                    itemContext.put(np.getForKey(), item);
+
+                    FlowExchanger itemExchanger = new FlowExchanger(graph, exchanger.engine(), exchanger.driver(), itemContext, -1, new AtomicInteger(0))
+                            .reverting(false);
+                    itemExchanger.temporary().loopStack(graph).push(join);
+                    itemContext.exchanger(itemExchanger);
+
+                    //::流出（到结束节点为止）
+                    if (iterative) {
+                        Deque<WalkFrame> stack = new ArrayDeque<>();
+                        stack.push(new WalkFrame(WalkFrame.OUT, np));
+                        walk_loop(itemExchanger, options, stack, startNode, false);
+                    } else {
+                        activity_run_out(itemExchanger, options, np.getNode(), startNode);
+                    }
+                }
+
+                items.clear();
+            }
+        } catch (Throwable e) {
+            join.failed = true;
+            throw e;
+        }
+    }
+
+    /// ////////////////////////////////////////
+    /// 迭代遍历（以显式工作栈替代逐跳递归）
+
+    /**
+     * 遍历节点（迭代模式）
+     *
+     * <p>与 node_run 的递归遍历保持相同的次序与语义（深度优先；普通流出的条件在前一分支完成后才检测）。
+     * 按节点类型的处理直接基于执行计划，不经过 start_run、activity_run 等递归方法</p>
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    protected void node_walk(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) throws FlowException {
+        if (node == null) {
+            return;
+        }
+
+        Deque<WalkFrame> stack = new ArrayDeque<>();
+        stack.push(new WalkFrame(WalkFrame.NODE, plan(node)));
+
+        walk_loop(exchanger, options, stack, startNode, false);
+    }
+
+    /**
+     * 遍历节点（异步迭代模式）
+     *
+     * <p>并行网关有执行器时，各分支异步遍历并组合汇聚，后面的工作作为汇聚后的接续运行</p>
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    protected CompletableFuture<Void> node_walk_async(FlowExchanger exchanger, FlowOptions options, Node node, Node startNode) {
+        Deque<WalkFrame> stack = new ArrayDeque<>();
+        if (node != null) {
+            stack.push(new WalkFrame(WalkFrame.NODE, plan(node)));
+        }
+
+        return walk_resume(exchanger, options, stack, startNode);
+    }
+
+    /**
+     * 继续遍历（异步迭代模式）
+     */
+    private CompletableFuture<Void> walk_resume(FlowExchanger exchanger, FlowOptions options, Deque<WalkFrame> stack, Node startNode) {
+        try {
+            CompletableFuture<Void> fork = walk_loop(exchanger, options, stack, startNode, true);
+
+            if (fork == null) {
+                return CompletableFuture.completedFuture(null);
+            } else {
+                //分支全部完成后（在最后完成的分支线程上），接续余下的工作
+                return fork.thenCompose(v -> walk_resume(exchanger, options, stack, startNode));
+            }
+        } catch (Throwable e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    /**
+     * 遍历工作栈
+     *
+     * @param async 是否异步（异步时，遇到并行分支会暂停并返回分支汇聚；否则阻塞等待）
+     * @return 暂停时的分支汇聚（没有暂停为 null）
+     */
+    private CompletableFuture<Void> walk_loop(FlowExchanger exchanger, FlowOptions options, Deque<WalkFrame> stack, Node startNode, boolean async) throws FlowException {
+        while (stack.isEmpty() == false) {
+            //如果停止（余下的工作全部放弃）
+            if (exchanger.isStopped()) {
+                stack.clear();
+                return null;
+            }
+
+            WalkFrame frame = stack.pop();
+
+            switch (frame.type) {
+                case WalkFrame.NODE: {
+                    CompletableFuture<Void> fork = walk_node(exchanger, options, frame.plan, startNode, stack, async);
+                    if (fork != null) {
+                        return fork;
+                    }
+                    break;
+                }
+                case WalkFrame.OUT:
+                    walk_out(exchanger, frame, stack);
+                    break;
+                case WalkFrame.LOOP:
+                    if (frame.iter.hasNext()) {
+                        loop_put(exchanger.context(), frame.plan, frame.iter.next());
+                        //当前项的流出完成后，再回到循环帧
+                        stack.push(frame);
+                        stack.push(new WalkFrame(WalkFrame.OUT, frame.plan));
+                    }
+                    break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * 遍历节点：流入、任务与流出调度
+     *
+     * @return 异步并行分支的汇聚（没有为 null）
+     */
+    private CompletableFuture<Void> walk_node(FlowExchanger exchanger, FlowOptions options, NodePlan np, Node startNode, Deque<WalkFrame> stack, boolean async) throws FlowException {
+        Node node = np.getNode();
+
+        if (node_enter(exchanger, node, startNode) == false) {
+            return null;
+        }
+
+        switch (np.getKind()) {
+            case NodePlan.KIND_START:
+                if (empty_exec(exchanger, options, node)) {
+                    stack.push(new WalkFrame(WalkFrame.OUT, np));
+                }
+                break;
+            case NodePlan.KIND_END:
+                empty_exec(exchanger, options, node);
+                break;
+            case NodePlan.KIND_ACTIVITY:
+                if (task_exec(exchanger, options, node)) {
+                    stack.push(new WalkFrame(WalkFrame.OUT, np));
+                }
+                break;
+            case NodePlan.KIND_INCLUSIVE: {
+                if (inclusive_run_in(exchanger, options, node, startNode) && task_exec(exchanger, options, node)) {
+                    int[] matched_lines = inclusive_match(exchanger, np);
+
+                    if (matched_lines.length > 0) {
+                        //记录流出数量
+                        exchanger.temporary().inclusiveStack(node.getGraph()).push(matched_lines.length);
+
+                        //逆序入栈（保持原有执行次序）
+                        for (int i = matched_lines.length - 1; i >= 0; i--) {
+                            walk_push(stack, np.getTarget(matched_lines[i]));
+                        }
+                    }
+                }
+                break;
+            }
+            case NodePlan.KIND_EXCLUSIVE: {
+                if (task_exec(exchanger, options, node)) {
+                    int matched_line = exclusive_match(exchanger, np);
+
+                    if (matched_line >= 0) {
+                        walk_push(stack, np.getTarget(matched_line));
+                    }
+                }
+                break;
+            }
+            case NodePlan.KIND_PARALLEL: {
+                if (parallel_run_in(exchanger, options, node, startNode) && task_exec(exchanger, options, node)) {
+                    //恢复计数
+                    exchanger.temporary().countSet(node, 0);
+
+                    if (exchanger.driver().getExecutor() == null || np.size() < 2) {
+                        //单线程（逆序入栈，保持原有执行次序）
+                        for (int i = np.size() - 1; i >= 0; i--) {
+                            walk_push(stack, np.getTarget(i));
+                        }
+                    } else if (async) {
+                        //多线程（异步，每个分支各用一个工作栈）
+                        return parallel_fork_async(exchanger, options, np, startNode);
+                    } else {
+                        //多线程（每个分支各用一个工作栈）
+                        parallel_fork(exchanger, np, n -> node_walk(exchanger, options, n, startNode));
+                    }
+                }
+                break;
+            }
+            case NodePlan.KIND_LOOP_IN:
+                if (loop_run_in(exchanger, options, node, startNode) && task_exec(exchanger, options, node)) {
+                    stack.push(new WalkFrame(WalkFrame.OUT, np));
+                }
+                break;
+            case NodePlan.KIND_LOOP_OUT:
+                if (task_exec(exchanger, options, node)) {
+                    Iterator inIter = loop_iterator(exchanger, np);
+                    TemporaryStack<Iterator> loop_stack = exchanger.temporary().loopStack(node.getGraph());
+
+                    if (loop_parallel_able(exchanger, np)) {
+                        //并行遍历（汇聚后，从结束节点继续）
+                        if (async) {
+                            return loop_fork(exchanger, options, np, inIter, startNode).thenAccept(closing -> {
+                                walk_loop_join(exchanger, loop_stack, closing, stack);
+                            });
+                        } else {
+                            Node closing = loop_parallel_join(exchanger, options, np, inIter, startNode);
+                            walk_loop_join(exchanger, loop_stack, closing, stack);
+                        }
+                        break;
+                    }
+
+                    loop_stack.push(inIter);
+
+                    stack.push(new WalkFrame(WalkFrame.LOOP, np, inIter));
+                }
+                break;
+        }
+
+        return null;
+    }
+
+    /**
+     * 并行网关分支（异步；各分支提交给执行器，组合为一个汇聚）
+     */
+    private CompletableFuture<Void> parallel_fork_async(FlowExchanger exchanger, FlowOptions options, NodePlan np, Node startNode) {
+        Executor executor = exchanger.driver().getExecutor();
+        CompletableFuture<?>[] branches = new CompletableFuture[np.size()];
+
+        for (int i = 0, len = np.size(); i < len; i++) {
+            Node n = target(np, i);
+            branches[i] = CompletableFuture.supplyAsync(() -> node_walk_async(exchanger, options, n, startNode), executor)
+                    .thenCompose(f -> f);
+        }
+
+        return CompletableFuture.allOf(branches);
+    }
+
+    /**
+     * 异步异常（展开并统一为 FlowException）
+     */
+    private static FlowException async_error(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+
+        if (e instanceof FlowException) {
+            return (FlowException) e;
+        } else {
+            return new FlowException(e);
+        }
+    }
+
+    /**
+     * 遍历流出：找到下一个满足条件的连接（余下的连接，等该分支完成后再检测）
+     */
+    private void walk_out(FlowExchanger exchanger, WalkFrame frame, Deque<WalkFrame> stack) throws FlowException {
+        NodePlan np = frame.plan;
+
+        for (int i = frame.index, len = np.size(); i < len; i++) {
+            if (condition_test(exchanger, np.getWhen(i), true)) {
+                if (i + 1 < len) {
+                    frame.index = i + 1;
+                    stack.push(frame);
+                }
+
+                walk_push(stack, np.getTarget(i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * 并行遍历汇聚后，从结束节点继续
+     */
+    private void walk_loop_join(FlowExchanger exchanger, TemporaryStack<Iterator> loop_stack, Node closing, Deque<WalkFrame> stack) {
+        if (closing != null && exchanger.isStopped() == false) {
+            loop_stack.push(Collections.emptyIterator());
+            stack.push(new WalkFrame(WalkFrame.NODE, plan(closing)));
+        }
+    }
+
+    private static void walk_push(Deque<WalkFrame> stack, NodePlan target) {
+        if (target != null) {
+            stack.push(new WalkFrame(WalkFrame.NODE, target));
+        }
+    }
+
+    /**
+     * 并行循环汇聚（放在每项的循环栈上，作为结束节点的标记）
+     */
+    private static final class LoopJoin implements Iterator<Object> {
+        private final Iterator inIter;
+        private final int chunk;
+        volatile Node closing;
+        volatile boolean failed;
+
+        LoopJoin(Iterator inIter, int chunk) {
+            this.inIter = inIter;
+            this.chunk = chunk;
+        }
+
+        /**
+         * 领取一批项
+         */
+        synchronized boolean take(List<Object> items) {
+            if (failed) {
+                return false;
+            }
+
+            while (items.size() < chunk && inIter.hasNext()) {
+                items.add(inIter.next());
+            }
+
+            return items.size() > 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            //总是等待（由汇聚后统一继续）
+            return true;
+        }
+
+        @Override
+        public Object next() {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * 遍历帧
+     */
+    private static final class WalkFrame {
+        static final int NODE = 0; //运行节点
+        static final int OUT = 1; //普通流出（逐个检测连接条件）
+        static final int LOOP = 2; //循环流出（逐项）
+
+        final int type;
+        final NodePlan plan;
+        final Iterator iter;
+        int index;
+
+        WalkFrame(int type, NodePlan plan) {
+            this(type, plan, null);
+        }
+
+        WalkFrame(int type, NodePlan plan, Iterator iter) {
+            this.type = type;
+            this.plan = plan;
+            this.iter = iter;
         }
     }
-}
\ No newline at end of file
+}
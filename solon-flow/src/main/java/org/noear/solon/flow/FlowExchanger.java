@@ -64,6 +64,19 @@ public class FlowExchanger {
         this.stepCount = stepCount;
     }
 
+    /**
+     * 重置（用于会话复用）
+     *
+     * @since 4.0
+     */
+    void reset() {
+        temporary.clear();
+        stepCount.set(0);
+        interrupted = false;
+        stopped = false;
+        reverting = true;
+    }
+
     /**
      * 浅度复制
      */
@@ -17,6 +17,9 @@ package org.noear.solon.flow;
 
 import org.noear.solon.core.util.RankEntity;
 import org.noear.solon.flow.intercept.FlowInterceptor;
+import org.noear.solon.flow.intercept.FlowInterceptorChain;
+import org.noear.solon.lang.Internal;
+import org.noear.solon.lang.Preview;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,18 +32,81 @@ import java.util.List;
  * @since 3.8.1
  */
 public class FlowOptions {
-    private final List<RankEntity<FlowInterceptor>> interceptorList = new ArrayList<>();
+    private final List<RankEntity<FlowInterceptor>> interceptorList;
+    //拦截链快照（添加拦截器时失效）
+    private volatile FlowInterceptorChain interceptorChain;
+    //与引擎拦截链合并后的选项（引擎拦截链变化或添加拦截器时失效）
+    private volatile FlowOptions mergedOptions;
+    //合并时的引擎拦截链（用于检测缓存是否有效）
+    private FlowInterceptorChain mergedBase;
+
+    public FlowOptions() {
+        this.interceptorList = new ArrayList<>();
+    }
+
+    /**
+     * @param interceptorChain 拦截链（不可再添加拦截器）
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public FlowOptions(FlowInterceptorChain interceptorChain) {
+        this.interceptorList = interceptorChain.getEntities();
+        this.interceptorChain = interceptorChain;
+    }
 
     public List<RankEntity<FlowInterceptor>> getInterceptorList() {
         return interceptorList;
     }
 
+    /**
+     * 获取拦截链（已排序的快照）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public FlowInterceptorChain getInterceptorChain() {
+        FlowInterceptorChain tmp = interceptorChain;
+
+        if (tmp == null) {
+            tmp = FlowInterceptorChain.of(interceptorList);
+            interceptorChain = tmp;
+        }
+
+        return tmp;
+    }
+
+    /**
+     * 与引擎拦截链合并（有缓存；自己没有拦截器时，直接使用引擎的默认选项）
+     *
+     * @param engineChain   引擎拦截链
+     * @param engineOptions 引擎的默认选项
+     * @since 4.0
+     */
+    @Internal
+    public FlowOptions mergeWith(FlowInterceptorChain engineChain, FlowOptions engineOptions) {
+        if (interceptorList.isEmpty()) {
+            return engineOptions;
+        }
+
+        FlowOptions tmp = mergedOptions;
+        if (tmp == null || tmp.mergedBase != engineChain) {
+            tmp = new FlowOptions(engineChain.merge(interceptorList));
+            tmp.mergedBase = engineChain;
+            mergedOptions = tmp;
+        }
+
+        return tmp;
+    }
+
     protected void interceptorAdd(List<RankEntity<FlowInterceptor>> interceptors) {
         interceptorList.addAll(interceptors);
 
         if (interceptorList.size() > 0) {
             Collections.sort(interceptorList);
         }
+
+        interceptorChain = null;
+        mergedOptions = null;
     }
 
     /**
@@ -59,6 +125,9 @@ public class FlowOptions {
         if (interceptorList.size() > 0) {
             Collections.sort(interceptorList);
         }
+
+        interceptorChain = null;
+        mergedOptions = null;
         return this;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流运行会话（复用上下文、痕迹、交换器与临时存放器；用于高频的无状态运行，比如规则计算）
+ *
+ * <pre>{@code
+ * try (FlowSession session = flowEngine.openSession()) {
+ *     session.context().put("a", 1);
+ *     session.eval("r1");
+ *     return session.context().get("result");
+ * } //关闭后重置，上下文及其数据不可再使用
+ * }</pre>
+ *
+ * <p>会话只能在一个线程内使用。关闭时重置所有状态（数据、痕迹、事件总线等），之后不能再使用会话与其上下文（也不要保留其引用）；
+ * 由 FlowEngineDefault 打开的会话按线程复用</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowSession implements AutoCloseable {
+    private final FlowEngine engine;
+    private final FlowContextDefault context;
+    private final AtomicInteger stepCount = new AtomicInteger(0);
+    //最后的交换器（同图、同驱动、同步数时复用）
+    private FlowExchanger exchanger;
+    private volatile boolean closed;
+
+    public FlowSession(FlowEngine engine) {
+        this.engine = engine;
+        this.context = new FlowContextDefault();
+    }
+
+    /**
+     * 重新打开（由池使用）
+     */
+    protected void open() {
+        closed = false;
+    }
+
+    /**
+     * 是否已关闭
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void assertOpen() {
+        if (closed) {
+            throw new IllegalStateException("The flow session is closed");
+        }
+    }
+
+    /**
+     * 上下文（关闭前有效）
+     */
+    public FlowContext context() {
+        assertOpen();
+        return context;
+    }
+
+    /**
+     * 运行
+     *
+     * @param graphId 图Id
+     */
+    public FlowSession eval(String graphId) throws FlowException {
+        return eval(engine.getGraphOrThrow(graphId), -1);
+    }
+
+    /**
+     * 运行
+     *
+     * @param graph 图
+     */
+    public FlowSession eval(Graph graph) throws FlowException {
+        return eval(graph, -1);
+    }
+
+    /**
+     * 运行
+     *
+     * @param graph 图
+     * @param steps 步数
+     */
+    public FlowSession eval(Graph graph, int steps) throws FlowException {
+        assertOpen();
+
+        FlowDriver driver = engine.getDriver(graph);
+        FlowExchanger tmp = exchanger;
+
+        if (tmp == null || tmp.graph() != graph || tmp.driver() != driver || tmp.getSteps() != steps) {
+            stepCount.set(0);
+            tmp = new FlowExchanger(graph, engine, driver, context, steps, stepCount);
+            exchanger = tmp;
+        } else {
+            tmp.reset();
+        }
+
+        engine.eval(graph, tmp, null);
+        return this;
+    }
+
+    /**
+     * 重置（清空数据与痕迹，可继续使用）
+     *
+     * @param instanceId 流实例id
+     */
+    public FlowSession reset(String instanceId) {
+        assertOpen();
+
+        context.reset(instanceId);
+        if (exchanger != null) {
+            exchanger.reset();
+        }
+
+        return this;
+    }
+
+    /**
+     * 关闭（重置后交还复用）
+     */
+    @Override
+    public void close() {
+        if (closed == false) {
+            reset(null);
+            closed = true;
+        }
+    }
+}
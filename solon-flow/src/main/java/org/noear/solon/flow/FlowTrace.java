@@ -21,6 +21,8 @@ import org.noear.solon.lang.Preview;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
@@ -38,7 +40,8 @@ public class FlowTrace implements Serializable {
     private volatile String rootGraphId;
     //每个图的最后一个节点记录
     private final Map<String, NodeRecord> lastRecords = new ConcurrentHashMap<>();
-
+    //访问历史（启用后，最后记录也由它派生）
+    private transient volatile FlowTraceHistory history;
 
     /**
      * 是否已启用
@@ -54,19 +57,85 @@ public class FlowTrace implements Serializable {
         this.enabled = enabled;
     }
 
+    /**
+     * 启用访问历史（记录每次节点访问到预分配的环形缓冲，超出容量时覆盖最旧的；容量不大于 0 时，则停用）
+     *
+     * @param capacity 容量
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public void enableHistory(int capacity) {
+        syncRecords();
+
+        if (capacity > 0) {
+            history = new FlowTraceHistory(capacity);
+        } else {
+            history = null;
+        }
+    }
+
+    /**
+     * 是否已启用访问历史
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public boolean isHistoryEnabled() {
+        return history != null;
+    }
+
+    /**
+     * 访问历史（由旧到新；查询时才构建记录）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public List<NodeRecord> history() {
+        FlowTraceHistory tmp = history;
+
+        if (tmp == null) {
+            return Collections.emptyList();
+        } else {
+            return tmp.records();
+        }
+    }
+
     /**
      * 每个图的最后记录
      */
     public Collection<NodeRecord> lastRecords() {
+        syncRecords();
         return lastRecords.values();
     }
 
     /**
-     * 清空记录
+     * 同步访问历史里的最后记录（用于查询全部与持久化）
+     */
+    void syncRecords() {
+        FlowTraceHistory tmp = history;
+
+        if (tmp != null) {
+            for (Map.Entry<String, NodeRecord> kv : tmp.lasts().entrySet()) {
+                if (kv.getValue() == FlowTraceHistory.RESET) {
+                    lastRecords.remove(kv.getKey());
+                } else {
+                    lastRecords.put(kv.getKey(), kv.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * 清空记录（不要在流程运行中调用；正在记录的节点可能落到清空后的记录里）
      */
     public void clear() {
         rootGraphId = null;
         lastRecords.clear();
+
+        FlowTraceHistory tmp = history;
+        if (tmp != null) {
+            tmp.clear();
+        }
     }
 
     /**
@@ -80,6 +149,11 @@ public class FlowTrace implements Serializable {
         Objects.requireNonNull(graph, "graph");
 
         if (nodeId == null) {
+            FlowTraceHistory tmp = history;
+            if (tmp != null) {
+                tmp.record(graph, null);
+            }
+
             lastRecords.remove(graph.getId());
         } else {
             recordNode(graph, graph.getNodeOrThrow(nodeId));
@@ -100,7 +174,15 @@ public class FlowTrace implements Serializable {
             rootGraphId = graph.getId();
         }
 
-        if (node == null) {
+        FlowTraceHistory tmp = history;
+        if (tmp != null) {
+            //不再构建记录（由访问历史派生）；移除可能遗留的旧记录
+            tmp.record(graph, node);
+
+            if (lastRecords.isEmpty() == false) {
+                lastRecords.remove(graph.getId());
+            }
+        } else if (node == null) {
             lastRecords.remove(graph.getId());
         } else {
             lastRecords.put(graph.getId(), new NodeRecord(node));
@@ -123,6 +205,17 @@ public class FlowTrace implements Serializable {
             return null;
         }
 
+        FlowTraceHistory tmp = history;
+        if (tmp != null) {
+            NodeRecord record = tmp.last(graphId);
+
+            if (record == FlowTraceHistory.RESET) {
+                return null;
+            } else if (record != null) {
+                return record;
+            }
+        }
+
         return lastRecords.get(graphId);
     }
 
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 流痕迹历史（预分配的环形缓冲，按原始类型字段记录每次节点访问；节点记录在查询时才构建）
+ *
+ * <p>记录时以原子递增认领位置，不加锁（只有图表增长时才加锁）；查询是弱一致的，正在写入或已被覆盖的位置会被跳过。</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+class FlowTraceHistory {
+    static final byte OUTCOME_VISIT = 0;
+    static final byte OUTCOME_END = 1;
+    static final byte OUTCOME_RESET = 2;
+
+    //查询最后记录时，表示已被清除
+    static final NodeRecord RESET = new NodeRecord();
+
+    //最后记录的打包：高位为序号，低位为节点序号 + 1（0 为已被清除）
+    private static final int NODE_BITS = 24;
+    private static final long NODE_MASK = (1L << NODE_BITS) - 1;
+
+    private final int capacity;
+    private final int[] graphSlots;
+    private final int[] nodeSlots;
+    private final long[] nanos;
+    private final byte[] outcomes;
+    //各位置已写入的序号 + 1（0 为正在写入）
+    private final AtomicLongArray seqs;
+    private final AtomicLong count = new AtomicLong();
+    //清空时的序号（之前的不再查询）
+    private volatile long floor;
+
+    //图表（按实例区分；只追加，增长时复制替换；最后记录不会被环形缓冲覆盖）
+    private volatile GraphLast[] graphs = new GraphLast[0];
+
+    //时间基准（nanoTime 换算为毫秒时间戳）
+    private final long baseMillis = System.currentTimeMillis();
+    private final long baseNanos = System.nanoTime();
+
+    FlowTraceHistory(int capacity) {
+        this.capacity = capacity;
+        this.graphSlots = new int[capacity];
+        this.nodeSlots = new int[capacity];
+        this.nanos = new long[capacity];
+        this.outcomes = new byte[capacity];
+        this.seqs = new AtomicLongArray(capacity);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 记录（node 为 null 时，表示最后记录被清除）
+     */
+    void record(Graph graph, Node node) {
+        //只取一次图表（清空会替换图表）
+        GraphLast last = graphLast(graph);
+        int g = last.index;
+        int n = (node == null ? -1 : node.getIndex());
+        long seq = count.getAndIncrement();
+        long now = System.nanoTime();
+        int i = (int) (seq % capacity);
+
+        seqs.set(i, 0L);
+        graphSlots[i] = g;
+        nodeSlots[i] = n;
+        nanos[i] = now;
+        if (node == null) {
+            outcomes[i] = OUTCOME_RESET;
+        } else if (node.getType() == NodeType.END) {
+            outcomes[i] = OUTCOME_END;
+        } else {
+            outcomes[i] = OUTCOME_VISIT;
+        }
+        seqs.set(i, seq + 1);
+
+        last.update(seq, n, now);
+    }
+
+    private GraphLast graphLast(Graph graph) {
+        GraphLast[] tmp = graphs;
+        for (GraphLast last : tmp) {
+            if (last.graph == graph) {
+                return last;
+            }
+        }
+
+        synchronized (this) {
+            tmp = graphs;
+            for (GraphLast last : tmp) {
+                if (last.graph == graph) {
+                    return last;
+                }
+            }
+
+            GraphLast last = new GraphLast(graph, tmp.length);
+            tmp = Arrays.copyOf(tmp, tmp.length + 1);
+            tmp[last.index] = last;
+            graphs = tmp;
+            return last;
+        }
+    }
+
+    /**
+     * 获取图的最后记录（没有时为 null；已被清除时为 RESET）
+     */
+    NodeRecord last(String graphId) {
+        GraphLast found = null;
+        long foundLast = -1L;
+
+        //同id的图可能有多个实例（比如重新加载），取最近的
+        for (GraphLast tmp : graphs) {
+            if (tmp.graph.getId().equals(graphId)) {
+                long last = tmp.last.get();
+                if (last >= 0 && (found == null || last > foundLast)) {
+                    found = tmp;
+                    foundLast = last;
+                }
+            }
+        }
+
+        if (found == null) {
+            return null;
+        } else {
+            return view(found.graph, (int) (foundLast & NODE_MASK) - 1, found.nanos);
+        }
+    }
+
+    /**
+     * 各图的最后记录（用于持久化；已被清除的为 RESET）
+     */
+    Map<String, NodeRecord> lasts() {
+        GraphLast[] tmp = graphs;
+        Map<String, NodeRecord> map = new HashMap<>(tmp.length * 2);
+
+        for (GraphLast last : tmp) {
+            String graphId = last.graph.getId();
+            if (map.containsKey(graphId) == false) {
+                NodeRecord record = last(graphId);
+                if (record != null) {
+                    map.put(graphId, record);
+                }
+            }
+        }
+
+        return map;
+    }
+
+    /**
+     * 历史记录（由旧到新；不包括清除）
+     */
+    List<NodeRecord> records() {
+        GraphLast[] tmp = graphs;
+        long end = count.get();
+        long start = Math.max(floor, end - capacity);
+        List<NodeRecord> list = new ArrayList<>((int) (end - start));
+
+        for (long seq = start; seq < end; seq++) {
+            int i = (int) (seq % capacity);
+
+            if (seqs.get(i) != seq + 1) {
+                continue;
+            }
+
+            int g = graphSlots[i];
+            int n = nodeSlots[i];
+            long t = nanos[i];
+            byte outcome = outcomes[i];
+
+            //读取期间被覆盖的，跳过
+            if (seqs.get(i) != seq + 1 || g >= tmp.length) {
+                continue;
+            }
+
+            if (outcome != OUTCOME_RESET) {
+                list.add(view(tmp[g].graph, n, t));
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * 总记录数（包括已被覆盖的）
+     */
+    long count() {
+        return count.get() - floor;
+    }
+
+    /**
+     * 清空（不能与记录并发：正在记录的可能落到清空后的历史里）
+     */
+    synchronized void clear() {
+        floor = count.get();
+        graphs = new GraphLast[0];
+    }
+
+    private NodeRecord view(Graph graph, int nodeSlot, long nanoTime) {
+        if (nodeSlot < 0) {
+            return RESET;
+        }
+
+        Node node = graph.getPlan().get(nodeSlot).getNode();
+        return new NodeRecord(node, baseMillis + (nanoTime - baseNanos) / 1_000_000L);
+    }
+
+    /**
+     * 图的最后记录
+     */
+    private static class GraphLast {
+        final Graph graph;
+        //在图表中的位置
+        final int index;
+        //打包的序号与节点（-1 为还没有）
+        final AtomicLong last = new AtomicLong(-1L);
+        //最后记录的时间（并发记录同一个图时，可能是相邻记录的时间）
+        volatile long nanos;
+
+        GraphLast(Graph graph, int index) {
+            this.graph = graph;
+            this.index = index;
+        }
+
+        void update(long seq, int nodeSlot, long now) {
+            long packed = (seq << NODE_BITS) | ((nodeSlot + 1) & NODE_MASK);
+
+            while (true) {
+                long prev = last.get();
+                if (prev > packed) {
+                    //已有更新的记录
+                    return;
+                }
+
+                if (last.compareAndSet(prev, packed)) {
+                    nanos = now;
+                    return;
+                }
+            }
+        }
+    }
+}
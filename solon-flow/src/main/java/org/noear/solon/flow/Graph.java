@@ -59,6 +59,7 @@ public class Graph {
     private transient final Map<String, Node> nodes;
     private transient final List<Link> links;
     private transient Node start;
+    private transient volatile GraphPlan plan;
 
     protected Graph(GraphSpec spec) {
         this.id = spec.getId();
@@ -76,6 +77,9 @@ public class Graph {
         //正排加入图
         this.nodes = Collections.unmodifiableMap(nodeMap);
         this.links = Collections.unmodifiableList(linkAry);
+
+        //构建邻接（一次遍历，生成正向与反向的）
+        doBindNodes();
         if (spec.getMeta() == null) {
             this.metas = Collections.emptyMap();
         } else {
@@ -188,8 +192,41 @@ public class Graph {
         return node;
     }
 
+    /**
+     * 获取执行计划（首次获取时编译）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public GraphPlan getPlan() {
+        GraphPlan tmp = plan;
+        if (tmp == null) {
+            //图是不可变的，重复编译也是等价的（不需要加锁）
+            tmp = GraphPlan.compile(this);
+            plan = tmp;
+        }
+
+        return tmp;
+    }
+
     /// ////////
 
+    /**
+     * 绑定邻接
+     */
+    private void doBindNodes() {
+        Map<String, List<Link>> inLinksMap = new HashMap<>(nodes.size());
+
+        for (Link l : links) {
+            l.bind(nodes.get(l.getPrevId()), nodes.get(l.getNextId()));
+            inLinksMap.computeIfAbsent(l.getNextId(), k -> new ArrayList<>()).add(l);
+        }
+
+        for (Node node : nodes.values()) {
+            node.bind(inLinksMap.get(node.getId()));
+        }
+    }
+
     /**
      * 添加节点
      */
@@ -202,6 +239,7 @@ public class Graph {
         linkAry.addAll(tmp);
 
         Node node = new Node(this, nodeSpec, tmp);
+        node.index = nodeMap.size();
         nodeMap.put(node.getId(), node);
         if (nodeSpec.getType() == NodeType.START) {
             start = node;
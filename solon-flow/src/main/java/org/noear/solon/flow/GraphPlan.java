@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.lang.Preview;
+
+/**
+ * 图执行计划（图的编译形态：节点按序号平铺为槽位，引擎直接按槽位运行）
+ *
+ * <pre>{@code
+ * GraphPlan plan = graph.getPlan(); //首次获取时编译（FlowEngine.load 时会预先编译）
+ * NodePlan start = plan.getStart();
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class GraphPlan {
+    private final Graph graph;
+    private final NodePlan[] slots;
+    private final NodePlan start;
+    private final FlowContextLayout layout;
+
+    protected GraphPlan(Graph graph) {
+        this.graph = graph;
+        this.slots = new NodePlan[graph.getNodes().size()];
+
+        //构建槽位
+        for (Node node : graph.getNodes().values()) {
+            slots[node.getIndex()] = new NodePlan(node);
+        }
+
+        //变量布局（条件、任务与循环变量；连接时用于解析循环变量的槽位）
+        this.layout = FlowContextLayout.of(graph);
+
+        //连接槽位（流出目标与流入计数）
+        for (NodePlan slot : slots) {
+            slot.link(this);
+        }
+
+        this.start = get(graph.getStart());
+    }
+
+    /**
+     * 编译
+     */
+    public static GraphPlan compile(Graph graph) {
+        return new GraphPlan(graph);
+    }
+
+    /**
+     * 获取所属图
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * 获取开始槽位
+     */
+    public NodePlan getStart() {
+        return start;
+    }
+
+    /**
+     * 获取变量布局（用于槽位流上下文）
+     */
+    public FlowContextLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * 槽位数量
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    /**
+     * 获取槽位
+     */
+    public NodePlan get(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * 获取节点的槽位
+     */
+    public NodePlan get(Node node) {
+        if (node == null) {
+            return null;
+        }
+
+        int slot = node.getIndex();
+        if (slot < slots.length && slots[slot].getNode() == node) {
+            return slots[slot];
+        } else {
+            //可能是同构的别的图实例
+            return slots[graph.getNodeOrThrow(node.getId()).getIndex()];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GraphPlan{" +
+                "graphId='" + graph.getId() + '\'' +
+                ", size=" + slots.length +
+                '}';
+    }
+}
@@ -120,6 +120,14 @@ public class Link implements Comparable<Link> {
         return nextId;
     }
 
+    /**
+     * 绑定两端节点（图构建时调用）
+     */
+    void bind(Node prevNode, Node nextNode) {
+        this.prevNode = prevNode;
+        this.nextNode = nextNode;
+    }
+
     /**
      * 前面的节点
      */
@@ -39,9 +39,13 @@ public class Node {
 
     private transient final List<Link> nextLinks; //as nextLinks
 
+    //邻接（由图构建时一次性生成；随图的 final 字段安全发布）
     private transient List<Node> prevNodes, nextNodes;
     private transient List<Link> prevLinks;
 
+    //图内序号（稠密，由图构建时分配）
+    transient int index;
+
     /**
      * 附件（按需定制使用）
      */
@@ -84,6 +88,15 @@ public class Node {
         return id;
     }
 
+    /**
+     * 获取图内序号（从 0 开始的稠密序号，可作为槽位使用）
+     *
+     * @since 4.0
+     */
+    public int getIndex() {
+        return index;
+    }
+
     /**
      * 获取显示标题
      */
@@ -183,6 +196,42 @@ public class Node {
         return (T) metas.getOrDefault(key, def);
     }
 
+    /**
+     * 绑定邻接（图构建时调用）
+     *
+     * @param inLinks 流入连接（按图的连接次序）
+     */
+    void bind(List<Link> inLinks) {
+        if (getType() == NodeType.START || inLinks == null || inLinks.isEmpty()) {
+            prevLinks = Collections.emptyList();
+            prevNodes = Collections.emptyList();
+        } else {
+            int size = inLinks.size();
+            Link[] linkAry = new Link[size];
+            Node[] nodeAry = new Node[size];
+
+            for (int i = 0; i < size; i++) {
+                Link l = inLinks.get(i);
+                linkAry[size - 1 - i] = l; //按优先级排序（倒序）
+                nodeAry[i] = l.getPrevNode();
+            }
+
+            prevLinks = Collections.unmodifiableList(Arrays.asList(linkAry));
+            prevNodes = Collections.unmodifiableList(Arrays.asList(nodeAry));
+        }
+
+        if (getType() == NodeType.END || nextLinks.isEmpty()) {
+            nextNodes = Collections.emptyList();
+        } else {
+            Node[] nodeAry = new Node[nextLinks.size()];
+            for (int i = 0; i < nodeAry.length; i++) {
+                nodeAry[i] = nextLinks.get(i).getNextNode();
+            }
+
+            nextNodes = Collections.unmodifiableList(Arrays.asList(nodeAry));
+        }
+    }
+
     /**
      * 前面的连接（流入连接）
      */
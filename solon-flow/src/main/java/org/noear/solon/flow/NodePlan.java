@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.Utils;
+import org.noear.solon.lang.Preview;
+
+/**
+ * 节点执行计划（图编译后的节点槽位，预解析了处理方式、流出连接与条件）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class NodePlan {
+    /**
+     * 处理方式
+     */
+    public static final int KIND_UNKNOWN = 0;
+    public static final int KIND_START = 1;
+    public static final int KIND_END = 2;
+    public static final int KIND_ACTIVITY = 11;
+    public static final int KIND_EXCLUSIVE = 21;
+    public static final int KIND_INCLUSIVE = 31;
+    public static final int KIND_PARALLEL = 32;
+    public static final int KIND_LOOP_IN = 33; //循环流入（结束）
+    public static final int KIND_LOOP_OUT = 34; //循环流出（开始）
+
+    private static final ConditionDesc[] EMPTY_WHENS = new ConditionDesc[0];
+    private static final Link[] EMPTY_LINKS = new Link[0];
+    private static final NodePlan[] EMPTY_TARGETS = new NodePlan[0];
+
+    private final Node node;
+    private final int slot;
+    private final int kind;
+    private final ConditionDesc when;
+
+    private Link[] links = EMPTY_LINKS;
+    private ConditionDesc[] whens = EMPTY_WHENS;
+    private NodePlan[] targets = EMPTY_TARGETS;
+    private int defaultIndex = -1;
+    private int prevCount;
+
+    private final String forKey;
+    private int forSlot = -1;
+    private final Object inKey;
+    private final int parallel;
+    private final int chunk;
+
+    protected NodePlan(Node node) {
+        this.node = node;
+        this.slot = node.getIndex();
+        this.when = (node.getWhen().isEmpty() ? null : node.getWhen());
+
+        String forKeyTmp = node.getMetaAsString("$for");
+
+        switch (node.getType()) {
+            case START:
+                kind = KIND_START;
+                break;
+            case END:
+                kind = KIND_END;
+                break;
+            case EXCLUSIVE:
+                kind = KIND_EXCLUSIVE;
+                break;
+            case INCLUSIVE:
+                kind = KIND_INCLUSIVE;
+                break;
+            case PARALLEL:
+                kind = KIND_PARALLEL;
+                break;
+            case LOOP:
+                kind = (Utils.isEmpty(forKeyTmp) ? KIND_LOOP_IN : KIND_LOOP_OUT);
+                break;
+            case ACTIVITY:
+                kind = KIND_ACTIVITY;
+                break;
+            default:
+                kind = KIND_UNKNOWN;
+                break;
+        }
+
+        if (kind == KIND_LOOP_OUT) {
+            this.forKey = forKeyTmp;
+            this.inKey = node.getMeta("$in");
+            this.parallel = metaAsInt(node, "$parallel", 0);
+            this.chunk = Math.max(1, metaAsInt(node, "$chunk", 1));
+        } else {
+            this.forKey = null;
+            this.inKey = null;
+            this.parallel = 0;
+            this.chunk = 1;
+        }
+    }
+
+    private static int metaAsInt(Node node, String key, int def) {
+        Object val = node.getMeta(key);
+
+        if (val instanceof Number) {
+            return ((Number) val).intValue();
+        } else if (val instanceof String && Utils.isNotEmpty((String) val)) {
+            try {
+                return Integer.parseInt(((String) val).trim());
+            } catch (NumberFormatException e) {
+                throw new FlowException("The '" + key + "' must be an integer: " + node.getGraph().getId() + " / " + node.getId());
+            }
+        } else {
+            return def;
+        }
+    }
+
+    /**
+     * 连接（编译时调用）
+     */
+    protected void link(GraphPlan plan) {
+        if (forKey != null) {
+            forSlot = plan.getLayout().indexOf(forKey);
+        }
+
+        int size = node.getNextLinks().size();
+
+        if (size > 0) {
+            links = node.getNextLinks().toArray(new Link[size]);
+            whens = new ConditionDesc[size];
+            targets = new NodePlan[size];
+
+            for (int i = 0; i < size; i++) {
+                Link l = links[i];
+
+                //空条件预先消除（运行时不再检测）
+                if (l.getWhen().isEmpty()) {
+                    whens[i] = null;
+                    defaultIndex = i; //排他网关的默认线（取最后一个）
+                } else {
+                    whens[i] = l.getWhen();
+                }
+
+                targets[i] = plan.get(l.getNextNode());
+                if (targets[i] != null) {
+                    targets[i].prevCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取节点
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * 获取槽位
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * 获取处理方式
+     */
+    public int getKind() {
+        return kind;
+    }
+
+    /**
+     * 获取节点条件（空条件为 null）
+     */
+    public ConditionDesc getWhen() {
+        return when;
+    }
+
+    /**
+     * 流出数量
+     */
+    public int size() {
+        return links.length;
+    }
+
+    /**
+     * 流出连接（已按优先级排序）
+     */
+    public Link getLink(int index) {
+        return links[index];
+    }
+
+    /**
+     * 流出条件（空条件为 null）
+     */
+    public ConditionDesc getWhen(int index) {
+        return whens[index];
+    }
+
+    /**
+     * 流出目标
+     */
+    public NodePlan getTarget(int index) {
+        return targets[index];
+    }
+
+    /**
+     * 默认流出位置（最后一个无条件连接；没有时为 -1）
+     */
+    public int getDefaultIndex() {
+        return defaultIndex;
+    }
+
+    /**
+     * 流入数量
+     */
+    public int getPrevCount() {
+        return prevCount;
+    }
+
+    /**
+     * 循环变量名（$for）
+     */
+    public String getForKey() {
+        return forKey;
+    }
+
+    /**
+     * 循环变量在图变量布局中的槽位（没有时为 -1）
+     *
+     * @see GraphPlan#getLayout()
+     */
+    public int getForSlot() {
+        return forSlot;
+    }
+
+    /**
+     * 循环集合（$in）
+     */
+    public Object getInKey() {
+        return inKey;
+    }
+
+    /**
+     * 循环并行度（$parallel；0 为顺序遍历）
+     */
+    public int getParallel() {
+        return parallel;
+    }
+
+    /**
+     * 循环并行时，每次领取的项数（$chunk；默认为 1）
+     */
+    public int getChunk() {
+        return chunk;
+    }
+
+    @Override
+    public String toString() {
+        return "NodePlan{" +
+                "slot=" + slot +
+                ", kind=" + kind +
+                ", node=" + node.getId() +
+                '}';
+    }
+}
@@ -41,11 +41,15 @@ public class NodeRecord implements Serializable {
     }
 
     public NodeRecord(Node node) {
+        this(node, System.currentTimeMillis());
+    }
+
+    NodeRecord(Node node, long timestamp) {
         this.graphId = node.getGraph().getId();
         this.id = node.getId();
         this.title = node.getTitle();
         this.type = node.getType();
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
     }
 
     /**
@@ -16,6 +16,7 @@
 package org.noear.solon.flow;
 
 import org.noear.solon.Utils;
+import org.noear.solon.lang.Preview;
 
 /**
  * 任务描述（表达式参考：'F,tag/fun1;R,tag/rule1'）
@@ -42,6 +43,9 @@ public class TaskDesc {
      */
     public Object attachment;//如果做扩展解析，用作存储位；
 
+    //编译缓存（由脚本执行器使用）
+    private transient final CompiledCache compiled = new CompiledCache();
+
 
     /**
      * @param description 任务描述
@@ -90,6 +94,16 @@ public class TaskDesc {
         return component;
     }
 
+    /**
+     * 编译缓存（由脚本执行器使用）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public CompiledCache compiled() {
+        return compiled;
+    }
+
     /**
      * 是否为空
      */
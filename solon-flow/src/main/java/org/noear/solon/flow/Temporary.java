@@ -15,10 +15,14 @@
  */
 package org.noear.solon.flow;
 
+import org.noear.solon.lang.Preview;
+
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * 临时的（内部使用）
@@ -28,6 +32,8 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class Temporary {
     static final String ROOT = "_ROOT";
+    static final String INCLUSIVE_RUN = "inclusive_run";
+    static final String LOOP_RUN = "loop_run";
 
     //记数器
     private final Map<String, AtomicInteger> counts = new ConcurrentHashMap<>();
@@ -35,12 +41,99 @@ public class Temporary {
     private final Map<String, Stack> stacks = new ConcurrentHashMap<>();
     //变量
     private final Map<String, Object> vars = new ConcurrentHashMap<>();
+    //图槽位（按节点序号存放计数与网关栈，不需要拼接键；用到网关时才创建）
+    private volatile Map<Graph, GraphSlots> slotsMap;
+    private volatile GraphSlots slotsLast;
+
+    /**
+     * 获取图槽位
+     */
+    private GraphSlots slots(Graph graph) {
+        GraphSlots tmp = slotsLast;
+        if (tmp == null || tmp.graph != graph) {
+            Map<Graph, GraphSlots> map = slotsMap;
+            if (map == null) {
+                synchronized (this) {
+                    map = slotsMap;
+                    if (map == null) {
+                        map = new ConcurrentHashMap<>();
+                        slotsMap = map;
+                    }
+                }
+            }
+
+            tmp = map.computeIfAbsent(graph, GraphSlots::new);
+            slotsLast = tmp;
+        }
+
+        return tmp;
+    }
+
+    /**
+     * 节点计数获取（按节点序号）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public int count(Node node) {
+        AtomicIntegerArray counts = slots(node.getGraph()).counts;
+        return counts == null ? 0 : counts.get(node.getIndex());
+    }
+
+    /**
+     * 节点计数设置（按节点序号）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public void countSet(Node node, int value) {
+        slots(node.getGraph()).counts().set(node.getIndex(), value);
+    }
+
+    /**
+     * 节点计数增量（按节点序号）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public int countIncr(Node node) {
+        return slots(node.getGraph()).counts().incrementAndGet(node.getIndex());
+    }
+
+    /**
+     * 包容网关栈（记录流出数量）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public TemporaryStack<Integer> inclusiveStack(Graph graph) {
+        return slots(graph).inclusiveStack();
+    }
+
+    /**
+     * 循环栈（记录遍历器）
+     *
+     * @since 4.0
+     */
+    @Preview("4.0")
+    public TemporaryStack<Iterator> loopStack(Graph graph) {
+        return slots(graph).loopStack();
+    }
 
 
     /**
      * 栈获取
+     *
+     * <p>保留键 "inclusive_run"、"loop_run" 映射到 {@link #inclusiveStack(Graph)}、{@link #loopStack(Graph)}
+     * （返回的视图只转发 push、pop、peek、empty、size、clear 等栈操作）；新代码请直接使用后者。</p>
      */
     public <T> Stack<T> stack(Graph graph, String key) {
+        if (INCLUSIVE_RUN.equals(key)) {
+            return (Stack<T>) slots(graph).inclusiveView();
+        } else if (LOOP_RUN.equals(key)) {
+            return (Stack<T>) slots(graph).loopView();
+        }
+
         return stacks.computeIfAbsent(graph.getId() + "/" + key, k -> new Stack<>());
     }
 
@@ -49,6 +142,12 @@ public class Temporary {
      * 计数获取
      */
     public int count(Graph graph, String key) {
+        Node node = graph.getNode(key);
+        if (node != null) {
+            //节点计数（与按节点序号的为同一个）
+            return count(node);
+        }
+
         return counts.computeIfAbsent(graph.getId() + "/" + key, k -> new AtomicInteger(0))
                 .get();
     }
@@ -65,6 +164,12 @@ public class Temporary {
      * 计数设置
      */
     public void countSet(Graph graph, String key, int value) {
+        Node node = graph.getNode(key);
+        if (node != null) {
+            countSet(node, value);
+            return;
+        }
+
         counts.computeIfAbsent(graph.getId() + "/" + key, k -> new AtomicInteger(0))
                 .set(value);
     }
@@ -81,6 +186,11 @@ public class Temporary {
      * 计数增量
      */
     public int countIncr(Graph graph, String key) {
+        Node node = graph.getNode(key);
+        if (node != null) {
+            return countIncr(node);
+        }
+
         return counts.computeIfAbsent(graph.getId() + "/" + key, k -> new AtomicInteger(0))
                 .incrementAndGet();
     }
@@ -117,11 +227,193 @@ public class Temporary {
         return (T) vars.get(key);
     }
 
+    /**
+     * 清空（用于会话复用；图槽位保留并归零，图较多时整体丢弃）
+     *
+     * @since 4.0
+     */
+    void clear() {
+        counts.clear();
+        stacks.clear();
+        vars.clear();
+
+        Map<Graph, GraphSlots> map = slotsMap;
+        if (map == null) {
+            return;
+        }
+
+        if (map.size() > 8) {
+            map.clear();
+            slotsLast = null;
+        } else {
+            for (GraphSlots slots : map.values()) {
+                slots.clear();
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "{" +
                 "counts=" + counts +
                 ", stacks=" + stacks +
+                ", slots=" + (slotsMap == null ? "[]" : slotsMap.values()) +
                 '}';
     }
-}
\ No newline at end of file
+
+    /**
+     * 图槽位（计数在汇聚网关首次计数时创建，栈在首次使用时创建）
+     */
+    private static class GraphSlots {
+        final Graph graph;
+        volatile AtomicIntegerArray counts;
+        volatile TemporaryStack<Integer> inclusiveStack;
+        volatile TemporaryStack<Iterator> loopStack;
+        volatile Stack<Integer> inclusiveView;
+        volatile Stack<Iterator> loopView;
+
+        GraphSlots(Graph graph) {
+            this.graph = graph;
+        }
+
+        AtomicIntegerArray counts() {
+            AtomicIntegerArray tmp = counts;
+            if (tmp == null) {
+                synchronized (this) {
+                    tmp = counts;
+                    if (tmp == null) {
+                        tmp = new AtomicIntegerArray(graph.getNodes().size());
+                        counts = tmp;
+                    }
+                }
+            }
+
+            return tmp;
+        }
+
+        TemporaryStack<Integer> inclusiveStack() {
+            TemporaryStack<Integer> tmp = inclusiveStack;
+            if (tmp == null) {
+                synchronized (this) {
+                    tmp = inclusiveStack;
+                    if (tmp == null) {
+                        tmp = new TemporaryStack<>();
+                        inclusiveStack = tmp;
+                    }
+                }
+            }
+
+            return tmp;
+        }
+
+        TemporaryStack<Iterator> loopStack() {
+            TemporaryStack<Iterator> tmp = loopStack;
+            if (tmp == null) {
+                synchronized (this) {
+                    tmp = loopStack;
+                    if (tmp == null) {
+                        tmp = new TemporaryStack<>();
+                        loopStack = tmp;
+                    }
+                }
+            }
+
+            return tmp;
+        }
+
+        synchronized Stack<Integer> inclusiveView() {
+            if (inclusiveView == null) {
+                inclusiveView = new StackView<>(inclusiveStack());
+            }
+
+            return inclusiveView;
+        }
+
+        synchronized Stack<Iterator> loopView() {
+            if (loopView == null) {
+                loopView = new StackView<>(loopStack());
+            }
+
+            return loopView;
+        }
+
+        void clear() {
+            AtomicIntegerArray tmp = counts;
+            if (tmp != null) {
+                for (int i = 0; i < tmp.length(); i++) {
+                    tmp.set(i, 0);
+                }
+            }
+
+            if (inclusiveStack != null) {
+                inclusiveStack.clear();
+            }
+
+            if (loopStack != null) {
+                loopStack.clear();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "{" +
+                    "graph=" + graph.getId() +
+                    ", counts=" + counts +
+                    ", inclusiveStack=" + inclusiveStack +
+                    ", loopStack=" + loopStack +
+                    '}';
+        }
+    }
+
+    /**
+     * 栈视图（兼容按保留键获取网关栈的旧用法）
+     */
+    private static class StackView<T> extends Stack<T> {
+        private final TemporaryStack<T> target;
+
+        StackView(TemporaryStack<T> target) {
+            this.target = target;
+        }
+
+        @Override
+        public T push(T item) {
+            target.push(item);
+            return item;
+        }
+
+        @Override
+        public T pop() {
+            return target.pop();
+        }
+
+        @Override
+        public T peek() {
+            return target.peek();
+        }
+
+        @Override
+        public boolean empty() {
+            return target.isEmpty();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return target.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return target.size();
+        }
+
+        @Override
+        public void clear() {
+            target.clear();
+        }
+
+        @Override
+        public String toString() {
+            return target.toString();
+        }
+    }
+}
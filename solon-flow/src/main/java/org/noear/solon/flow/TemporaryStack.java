@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * 临时栈（数组实现，用于网关的流出记录；内部使用）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class TemporaryStack<T> {
+    private Object[] elements = new Object[4];
+    private int size;
+
+    /**
+     * 推入
+     */
+    public synchronized void push(T item) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+
+        elements[size++] = item;
+    }
+
+    /**
+     * 弹出
+     */
+    public synchronized T pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+
+        T item = (T) elements[--size];
+        elements[size] = null;
+        return item;
+    }
+
+    /**
+     * 查看栈顶
+     */
+    public synchronized T peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+
+        return (T) elements[size - 1];
+    }
+
+    /**
+     * 数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 是否为空
+     */
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 清空
+     */
+    public synchronized void clear() {
+        Arrays.fill(elements, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Arrays.toString(Arrays.copyOf(elements, size));
+    }
+}
@@ -19,6 +19,7 @@ import org.noear.solon.Utils;
 import org.noear.solon.flow.*;
 import org.noear.solon.flow.container.SolonContainer;
 import org.noear.solon.flow.evaluation.LiquorEvaluation;
+import org.noear.solon.flow.jfr.FlowJfr;
 
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -106,7 +107,12 @@ public abstract class AbstractFlowDriver implements FlowDriver {
         //（不需要检测是否为空，引擎会把空条件作为默认，不会再传入）
 
         //如果 condition.description 有加密，可以转码后传入
-        return handleConditionDo(exchanger, condition, condition.getDescription());
+        Object jfrEvent = FlowJfr.beginCondition(condition);
+        try {
+            return handleConditionDo(exchanger, condition, condition.getDescription());
+        } finally {
+            FlowJfr.commit(jfrEvent);
+        }
     }
 
     protected boolean handleConditionDo(FlowExchanger exchanger, ConditionDesc condition, String description) throws Throwable {
@@ -143,7 +149,7 @@ public abstract class AbstractFlowDriver implements FlowDriver {
      * 尝试作为脚本条件运行
      */
     protected boolean tryAsScriptCondition(FlowExchanger exchanger, ConditionDesc condition, String description) throws Throwable {
-        return getEvaluation().runCondition(exchanger.context(), description);
+        return getEvaluation().runCondition(exchanger.context(), condition, description);
     }
 
     /// //////////////
@@ -159,7 +165,12 @@ public abstract class AbstractFlowDriver implements FlowDriver {
         }
 
         //如果 task.description 有加密，可以转码后传入
-        handleTaskDo(exchanger, task);
+        Object jfrEvent = FlowJfr.beginTask(task);
+        try {
+            handleTaskDo(exchanger, task);
+        } finally {
+            FlowJfr.commit(jfrEvent);
+        }
     }
 
     protected void handleTaskDo(FlowExchanger exchanger, TaskDesc task) throws Throwable {
@@ -237,7 +248,7 @@ public abstract class AbstractFlowDriver implements FlowDriver {
             //给脚本用
             exchanger.context().put(Node.TAG, task.getNode());
 
-            getEvaluation().runTask(exchanger.context(), description);
+            getEvaluation().runTask(exchanger.context(), task, description);
         } finally {
             exchanger.context().remove(Node.TAG);
         }
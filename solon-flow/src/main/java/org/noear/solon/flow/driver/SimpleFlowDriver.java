@@ -17,6 +17,7 @@ package org.noear.solon.flow.driver;
 
 import org.noear.solon.flow.*;
 import org.noear.solon.flow.Evaluation;
+import org.noear.solon.flow.util.FlowExecutors;
 import org.noear.solon.lang.Preview;
 
 import java.util.concurrent.ExecutorService;
@@ -105,6 +106,31 @@ public class SimpleFlowDriver extends AbstractFlowDriver implements FlowDriver {
             return this;
         }
 
+        /**
+         * 异步执行器：虚拟线程（每个分支一个虚拟线程）；不支持时，退回有界的平台线程池
+         *
+         * <p>有界时，嵌套的并行网关不会死锁（调用线程也运行分支），见 {@link FlowExecutors#newBounded(int)}</p>
+         *
+         * @param maxThreads 平台线程池的最大线程数
+         * @since 4.0
+         */
+        @Preview("4.0")
+        public Builder virtualExecutor(int maxThreads) {
+            this.executor = FlowExecutors.newVirtualOrBounded(maxThreads);
+            return this;
+        }
+
+        /**
+         * 异步执行器：虚拟线程（每个分支一个虚拟线程）；不支持时，退回有界的平台线程池
+         *
+         * @since 4.0
+         */
+        @Preview("4.0")
+        public Builder virtualExecutor() {
+            this.executor = FlowExecutors.newVirtualOrBounded();
+            return this;
+        }
+
         /**
          * 构建
          */
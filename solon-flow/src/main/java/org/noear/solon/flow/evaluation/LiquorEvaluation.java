@@ -16,7 +16,9 @@
 package org.noear.solon.flow.evaluation;
 
 import org.noear.liquor.eval.Scripts;
+import org.noear.solon.expression.Expression;
 import org.noear.solon.expression.snel.SnelParser;
+import org.noear.solon.flow.ConditionDesc;
 import org.noear.solon.flow.Evaluation;
 import org.noear.solon.flow.FlowContext;
 
@@ -33,6 +35,18 @@ public class LiquorEvaluation implements Evaluation {
     public boolean runCondition(FlowContext context, String code) {
         Object val = snel.forEval().parse(code).eval(context.data());
 
+        return asBoolean(val);
+    }
+
+    @Override
+    public boolean runCondition(FlowContext context, ConditionDesc condition, String code) {
+        //编译结果缓存在条件描述上（随图加载与卸载，不受共享缓存容量限制）
+        Expression<Object> expr = condition.compiled().get(this, code, c -> snel.forEval().parse(c));
+
+        return asBoolean(expr.eval(context.data()));
+    }
+
+    protected boolean asBoolean(Object val) {
         if (val == null) {
             return false;
         } else if (val instanceof Boolean) {
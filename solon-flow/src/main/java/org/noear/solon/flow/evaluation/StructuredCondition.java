@@ -0,0 +1,493 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.evaluation;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.lang.Preview;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+
+/**
+ * 结构化条件（解析并编译为断言链；运行时直接按键读取上下文，不经过脚本解释）
+ *
+ * <pre>{@code
+ * (a,>,12) and (b,=,1) or (c,!=,'x')
+ * [{l:'a',p:'>',r:'12'},{l:'b',p:'=',r:'1'},{c:'or',l:'c',p:'!=',r:'x'}]
+ * }</pre>
+ *
+ * <p>操作符：=, ==, !=, <>, >, >=, <, <=；连接符：and, or（也可用 &&, ||），and 优先于 or。
+ * 数组形式中，c 为与前一项的连接符（默认为 and）</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public final class StructuredCondition {
+    private StructuredCondition() {
+    }
+
+    /**
+     * 是否可能为结构化条件（快速判断）
+     */
+    public static boolean isStructured(String code) {
+        if (code == null || code.isEmpty()) {
+            return false;
+        }
+
+        char c0 = code.charAt(0);
+        return c0 == '(' || c0 == '[';
+    }
+
+    /**
+     * 编译（不是结构化条件时，返回 null）
+     */
+    public static Predicate<FlowContext> compile(String code) {
+        if (isStructured(code) == false) {
+            return null;
+        }
+
+        try {
+            List<List<Predicate<FlowContext>>> groups;
+            if (code.charAt(0) == '[') {
+                groups = new ArrayParser(code).parse();
+            } else {
+                groups = new TupleParser(code).parse();
+            }
+
+            return link(groups);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /// ////////////////
+
+    /**
+     * 连接（or 分组，组内为 and）
+     */
+    private static Predicate<FlowContext> link(List<List<Predicate<FlowContext>>> groups) {
+        Predicate<FlowContext>[] ors = new Predicate[groups.size()];
+        for (int i = 0; i < ors.length; i++) {
+            ors[i] = and(groups.get(i));
+        }
+
+        if (ors.length == 1) {
+            return ors[0];
+        } else {
+            return ctx -> {
+                for (Predicate<FlowContext> p : ors) {
+                    if (p.test(ctx)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+    }
+
+    private static Predicate<FlowContext> and(List<Predicate<FlowContext>> items) {
+        if (items.size() == 1) {
+            return items.get(0);
+        } else if (items.size() == 2) {
+            Predicate<FlowContext> p1 = items.get(0);
+            Predicate<FlowContext> p2 = items.get(1);
+            return ctx -> p1.test(ctx) && p2.test(ctx);
+        } else {
+            Predicate<FlowContext>[] ands = items.toArray(new Predicate[0]);
+            return ctx -> {
+                for (Predicate<FlowContext> p : ands) {
+                    if (p.test(ctx) == false) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+    }
+
+    /**
+     * 比较断言（操作符与右值在编译时确定）
+     */
+    private static Predicate<FlowContext> compare(String key, String op, String right, boolean quoted) {
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("The left is empty");
+        }
+
+        IntPredicate test;
+        boolean notEquals = false;
+
+        switch (op) {
+            case "=":
+            case "==":
+                test = c -> c == 0;
+                break;
+            case "!=":
+            case "<>":
+                test = c -> c != 0;
+                notEquals = true;
+                break;
+            case ">":
+                test = c -> c > 0;
+                break;
+            case ">=":
+                test = c -> c >= 0;
+                break;
+            case "<":
+                test = c -> c < 0;
+                break;
+            case "<=":
+                test = c -> c <= 0;
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported operator: " + op);
+        }
+
+        Literal literal = new Literal(right, quoted);
+        boolean incomparableResult = notEquals;
+
+        return ctx -> {
+            int c = literal.compareFrom(ctx.get(key));
+            if (c == Literal.INCOMPARABLE) {
+                return incomparableResult;
+            } else {
+                return test.test(c);
+            }
+        };
+    }
+
+    /**
+     * 右值字面量（预先解析数字与布尔形态）
+     */
+    private static class Literal {
+        static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+        final String text;
+        final boolean isNull;
+        final Long longValue;
+        final Double doubleValue;
+        final Boolean boolValue;
+
+        Literal(String text, boolean quoted) {
+            this.text = text;
+            this.isNull = (quoted == false && "null".equals(text));
+            this.boolValue = ("true".equals(text) ? Boolean.TRUE : ("false".equals(text) ? Boolean.FALSE : null));
+
+            Long l = null;
+            Double d = null;
+            try {
+                l = Long.parseLong(text);
+                d = l.doubleValue();
+            } catch (NumberFormatException e) {
+                try {
+                    d = Double.parseDouble(text);
+                } catch (NumberFormatException e2) {
+                    //不是数字
+                }
+            }
+
+            this.longValue = l;
+            this.doubleValue = d;
+        }
+
+        /**
+         * 左值与本字面量比较
+         */
+        int compareFrom(Object v) {
+            if (v == null) {
+                return isNull ? 0 : INCOMPARABLE;
+            }
+
+            if (isNull) {
+                return INCOMPARABLE;
+            }
+
+            if (v instanceof Number) {
+                if (longValue != null && (v instanceof Integer || v instanceof Long || v instanceof Short || v instanceof Byte)) {
+                    return Long.compare(((Number) v).longValue(), longValue);
+                }
+
+                if (doubleValue != null) {
+                    return Double.compare(((Number) v).doubleValue(), doubleValue);
+                }
+            } else if (v instanceof Boolean) {
+                if (boolValue != null) {
+                    return Boolean.compare((Boolean) v, boolValue);
+                }
+            } else if (v instanceof CharSequence) {
+                if (doubleValue != null) {
+                    //数字字面量：先按数字比较（"9" < 12），不是数字时再按文本
+                    String str = v.toString().trim();
+
+                    if (longValue != null) {
+                        try {
+                            return Long.compare(Long.parseLong(str), longValue);
+                        } catch (NumberFormatException e) {
+                            //不是整数
+                        }
+                    }
+
+                    try {
+                        return Double.compare(Double.parseDouble(str), doubleValue);
+                    } catch (NumberFormatException e) {
+                        //不是数字
+                    }
+                }
+            }
+
+            return Integer.signum(v.toString().compareTo(text));
+        }
+    }
+
+    /// ////////////////
+
+    private static abstract class Parser {
+        protected final String code;
+        protected int pos;
+
+        Parser(String code) {
+            this.code = code;
+        }
+
+        protected void skipSpaces() {
+            while (pos < code.length() && Character.isWhitespace(code.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        protected boolean isEnd() {
+            skipSpaces();
+            return pos >= code.length();
+        }
+
+        protected char peek() {
+            skipSpaces();
+            if (pos >= code.length()) {
+                throw new IllegalArgumentException("Unexpected end");
+            }
+            return code.charAt(pos);
+        }
+
+        protected void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+            }
+            pos++;
+        }
+
+        /**
+         * 读取带引号的字符串（当前字符为引号）
+         */
+        protected String readQuoted() {
+            char quote = code.charAt(pos++);
+            int start = pos;
+            while (pos < code.length() && code.charAt(pos) != quote) {
+                pos++;
+            }
+
+            if (pos >= code.length()) {
+                throw new IllegalArgumentException("Unclosed quote");
+            }
+
+            return code.substring(start, pos++);
+        }
+
+        /**
+         * 读取到任一结束字符为止（不含）
+         */
+        protected String readUntil(String stops) {
+            int start = pos;
+            while (pos < code.length() && stops.indexOf(code.charAt(pos)) < 0) {
+                pos++;
+            }
+
+            if (pos >= code.length()) {
+                throw new IllegalArgumentException("Unexpected end");
+            }
+
+            return code.substring(start, pos).trim();
+        }
+
+        /**
+         * 读取连接符（返回 true 为 or）
+         */
+        protected boolean readJoiner(String joiner) {
+            switch (joiner.toLowerCase()) {
+                case "and":
+                case "&&":
+                    return false;
+                case "or":
+                case "||":
+                    return true;
+                default:
+                    throw new IllegalArgumentException("Unsupported joiner: " + joiner);
+            }
+        }
+    }
+
+    /**
+     * 元组形式：(a,>,12) and (b,=,1)
+     */
+    private static class TupleParser extends Parser {
+        TupleParser(String code) {
+            super(code);
+        }
+
+        List<List<Predicate<FlowContext>>> parse() {
+            List<List<Predicate<FlowContext>>> groups = new ArrayList<>();
+            List<Predicate<FlowContext>> group = new ArrayList<>();
+            groups.add(group);
+
+            while (true) {
+                group.add(readTuple());
+
+                if (isEnd()) {
+                    break;
+                }
+
+                int start = pos;
+                while (pos < code.length() && code.charAt(pos) != '(' && Character.isWhitespace(code.charAt(pos)) == false) {
+                    pos++;
+                }
+
+                if (readJoiner(code.substring(start, pos))) {
+                    group = new ArrayList<>();
+                    groups.add(group);
+                }
+            }
+
+            return groups;
+        }
+
+        private Predicate<FlowContext> readTuple() {
+            expect('(');
+            String left = readUntil(",)");
+            expect(',');
+            String op = readUntil(",)");
+            expect(',');
+
+            String right;
+            boolean quoted;
+            char c = peek();
+            if (c == '\'' || c == '"') {
+                right = readQuoted();
+                quoted = true;
+            } else {
+                right = readUntil(")");
+                quoted = false;
+            }
+            expect(')');
+
+            return compare(left, op, right, quoted);
+        }
+    }
+
+    /**
+     * 数组形式：[{l:'a',p:'>',r:'12'},{c:'or',l:'b',p:'=',r:'1'}]
+     */
+    private static class ArrayParser extends Parser {
+        ArrayParser(String code) {
+            super(code);
+        }
+
+        List<List<Predicate<FlowContext>>> parse() {
+            List<List<Predicate<FlowContext>>> groups = new ArrayList<>();
+            List<Predicate<FlowContext>> group = new ArrayList<>();
+            groups.add(group);
+
+            expect('[');
+            if (peek() != ']') {
+                while (true) {
+                    String l = null, p = null, r = null, j = null;
+                    boolean quoted = false;
+
+                    expect('{');
+                    while (peek() != '}') {
+                        String name = readName();
+                        expect(':');
+
+                        char c = peek();
+                        boolean valueQuoted = (c == '\'' || c == '"');
+                        String value;
+                        if (valueQuoted) {
+                            value = readQuoted();
+                        } else {
+                            value = readUntil(",}");
+                        }
+
+                        switch (name) {
+                            case "l":
+                                l = value;
+                                break;
+                            case "p":
+                                p = value;
+                                break;
+                            case "r":
+                                r = value;
+                                quoted = valueQuoted;
+                                break;
+                            case "c":
+                                j = value;
+                                break;
+                            default:
+                                throw new IllegalArgumentException("Unsupported name: " + name);
+                        }
+
+                        if (peek() == ',') {
+                            pos++;
+                        }
+                    }
+                    expect('}');
+
+                    if (l == null || p == null || r == null) {
+                        throw new IllegalArgumentException("The l, p, r are required");
+                    }
+
+                    if (j != null && group.size() > 0 && readJoiner(j)) {
+                        group = new ArrayList<>();
+                        groups.add(group);
+                    }
+
+                    group.add(compare(l, p, r, quoted));
+
+                    if (peek() == ',') {
+                        pos++;
+                    } else {
+                        break;
+                    }
+                }
+            }
+            expect(']');
+
+            if (isEnd() == false || group.isEmpty()) {
+                throw new IllegalArgumentException("Invalid condition");
+            }
+
+            return groups;
+        }
+
+        private String readName() {
+            char c = peek();
+            if (c == '\'' || c == '"') {
+                return readQuoted();
+            } else {
+                return readUntil(":");
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.evaluation;
+
+import org.noear.solon.flow.ConditionDesc;
+import org.noear.solon.flow.Evaluation;
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.TaskDesc;
+import org.noear.solon.flow.util.ScriptCache;
+import org.noear.solon.lang.Preview;
+
+import java.util.function.Predicate;
+
+/**
+ * 结构化条件执行器（"(a,>,12) and (b,=,1)" 或 "[{l:'a',p:'>',r:'12'}]" 形式的条件编译为断言链运行；
+ * 其它条件与任务，交由后备执行器）
+ *
+ * <pre>{@code
+ * FlowDriver driver = SimpleFlowDriver.builder().evaluation(new StructuredEvaluation()).build();
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class StructuredEvaluation implements Evaluation {
+    //不是结构化条件的标记（避免重复解析）
+    private static final Predicate<FlowContext> NOT_STRUCTURED = ctx -> false;
+
+    private final Evaluation fallback;
+    private final ScriptCache<Predicate<FlowContext>> scriptCache;
+
+    public StructuredEvaluation() {
+        this(new LiquorEvaluation());
+    }
+
+    /**
+     * @param fallback 后备执行器
+     */
+    public StructuredEvaluation(Evaluation fallback) {
+        this(fallback, ScriptCache.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param fallback  后备执行器
+     * @param cacheSize 编译缓存的最大数量
+     */
+    public StructuredEvaluation(Evaluation fallback, int cacheSize) {
+        this.fallback = fallback;
+        this.scriptCache = new ScriptCache<>(cacheSize);
+    }
+
+    /**
+     * 后备执行器
+     */
+    public Evaluation getFallback() {
+        return fallback;
+    }
+
+    /**
+     * 编译（有缓存；不是结构化条件时，返回 null）
+     */
+    protected Predicate<FlowContext> compile(String code) {
+        Predicate<FlowContext> predicate = scriptCache.get(code, c -> {
+            Predicate<FlowContext> tmp = StructuredCondition.compile(c);
+            return tmp == null ? NOT_STRUCTURED : tmp;
+        });
+
+        return predicate == NOT_STRUCTURED ? null : predicate;
+    }
+
+    @Override
+    public boolean runCondition(FlowContext context, String code) throws Throwable {
+        if (StructuredCondition.isStructured(code)) {
+            Predicate<FlowContext> predicate = compile(code);
+            if (predicate != null) {
+                return predicate.test(context);
+            }
+        }
+
+        return fallback.runCondition(context, code);
+    }
+
+    @Override
+    public boolean runCondition(FlowContext context, ConditionDesc condition, String code) throws Throwable {
+        if (StructuredCondition.isStructured(code)) {
+            Predicate<FlowContext> predicate = condition.compiled().get(this, code, c -> {
+                Predicate<FlowContext> tmp = compile(c);
+                return tmp == null ? NOT_STRUCTURED : tmp;
+            });
+
+            if (predicate != NOT_STRUCTURED) {
+                return predicate.test(context);
+            } else {
+                //描述上已缓存了“不是结构化条件”的标记（后备执行器不再共用，避免相互覆盖）
+                return fallback.runCondition(context, code);
+            }
+        }
+
+        return fallback.runCondition(context, condition, code);
+    }
+
+    @Override
+    public void runTask(FlowContext context, String code) throws Throwable {
+        fallback.runTask(context, code);
+    }
+
+    @Override
+    public void runTask(FlowContext context, TaskDesc task, String code) throws Throwable {
+        fallback.runTask(context, task, code);
+    }
+}
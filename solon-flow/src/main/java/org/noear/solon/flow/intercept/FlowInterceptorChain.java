@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.intercept;
+
+import org.noear.solon.core.util.RankEntity;
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.Node;
+import org.noear.solon.lang.Preview;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 流拦截链（已排序的不可变快照；按拦截点预先筛选出有重写的拦截器，没有时可整体跳过）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public final class FlowInterceptorChain {
+    private static final FlowInterceptor[] EMPTY_ARRAY = new FlowInterceptor[0];
+
+    public static final FlowInterceptorChain EMPTY = new FlowInterceptorChain(Collections.emptyList());
+
+    private final List<RankEntity<FlowInterceptor>> entities;
+    private final FlowInterceptor[] flowInterceptors;
+    private final FlowInterceptor[] nodeStartInterceptors;
+    private final FlowInterceptor[] nodeEndInterceptors;
+
+    private FlowInterceptorChain(List<RankEntity<FlowInterceptor>> sorted) {
+        this.entities = Collections.unmodifiableList(sorted);
+
+        List<FlowInterceptor> flows = new ArrayList<>();
+        List<FlowInterceptor> nodeStarts = new ArrayList<>();
+        List<FlowInterceptor> nodeEnds = new ArrayList<>();
+
+        for (RankEntity<FlowInterceptor> entity : sorted) {
+            Class<?> clz = entity.target.getClass();
+
+            if (isOverridden(clz, "interceptFlow", FlowInvocation.class)) {
+                flows.add(entity.target);
+            }
+
+            if (isOverridden(clz, "onNodeStart", FlowContext.class, Node.class)) {
+                nodeStarts.add(entity.target);
+            }
+
+            if (isOverridden(clz, "onNodeEnd", FlowContext.class, Node.class)) {
+                nodeEnds.add(entity.target);
+            }
+        }
+
+        this.flowInterceptors = flows.toArray(EMPTY_ARRAY);
+        this.nodeStartInterceptors = nodeStarts.toArray(EMPTY_ARRAY);
+        this.nodeEndInterceptors = nodeEnds.toArray(EMPTY_ARRAY);
+    }
+
+    /**
+     * 是否有重写（不能确定时，视为有重写）
+     */
+    private static boolean isOverridden(Class<?> clz, String name, Class<?>... parameterTypes) {
+        try {
+            return clz.getMethod(name, parameterTypes).getDeclaringClass() != FlowInterceptor.class;
+        } catch (Throwable e) {
+            return true;
+        }
+    }
+
+    /**
+     * 构建（会排序）
+     */
+    public static FlowInterceptorChain of(Collection<RankEntity<FlowInterceptor>> interceptors) {
+        if (interceptors.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<RankEntity<FlowInterceptor>> sorted = new ArrayList<>(interceptors);
+        Collections.sort(sorted);
+        return new FlowInterceptorChain(sorted);
+    }
+
+    /**
+     * 合并（返回新的拦截链；没有可合并的时，返回自己）
+     */
+    public FlowInterceptorChain merge(Collection<RankEntity<FlowInterceptor>> interceptors) {
+        if (interceptors.isEmpty()) {
+            return this;
+        }
+
+        List<RankEntity<FlowInterceptor>> sorted = new ArrayList<>(entities.size() + interceptors.size());
+        sorted.addAll(interceptors);
+        sorted.addAll(entities);
+        Collections.sort(sorted);
+        return new FlowInterceptorChain(sorted);
+    }
+
+    /**
+     * 是否为空
+     */
+    public boolean isEmpty() {
+        return entities.isEmpty();
+    }
+
+    /**
+     * 全部（已排序，只读）
+     */
+    public List<RankEntity<FlowInterceptor>> getEntities() {
+        return entities;
+    }
+
+    /**
+     * 有重写 interceptFlow 的拦截器（只读）
+     */
+    public FlowInterceptor[] getFlowInterceptors() {
+        return flowInterceptors;
+    }
+
+    /**
+     * 有重写 onNodeStart 的拦截器（只读）
+     */
+    public FlowInterceptor[] getNodeStartInterceptors() {
+        return nodeStartInterceptors;
+    }
+
+    /**
+     * 有重写 onNodeEnd 的拦截器（只读）
+     */
+    public FlowInterceptor[] getNodeEndInterceptors() {
+        return nodeEndInterceptors;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowInterceptorChain{" +
+                "size=" + entities.size() +
+                ", flow=" + flowInterceptors.length +
+                ", nodeStart=" + nodeStartInterceptors.length +
+                ", nodeEnd=" + nodeEndInterceptors.length +
+                '}';
+    }
+}
@@ -15,12 +15,10 @@
  */
 package org.noear.solon.flow.intercept;
 
-import org.noear.solon.core.util.RankEntity;
 import org.noear.solon.flow.*;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -37,7 +35,7 @@ public class FlowInvocation {
     private final FlowOptions options;
     private final Node startNode;
 
-    private final List<RankEntity<FlowInterceptor>> interceptorList;
+    private final FlowInterceptor[] interceptors;
     private final BiConsumer<FlowInvocation, FlowOptions> lastHandler;
     private int index;
 
@@ -46,7 +44,8 @@ public class FlowInvocation {
         this.options = options;
         this.startNode = startNode;
 
-        this.interceptorList = options.getInterceptorList();
+        //只含有重写 interceptFlow 的拦截器（其它的只是放行）
+        this.interceptors = options.getInterceptorChain().getFlowInterceptors();
         this.lastHandler = lastHandler;
 
         this.index = 0;
@@ -87,8 +86,8 @@ public class FlowInvocation {
      * 调用
      */
     public void invoke() throws FlowException {
-        if (index < interceptorList.size()) {
-            interceptorList.get(index++).target.interceptFlow(this);
+        if (index < interceptors.length) {
+            interceptors[index++].interceptFlow(this);
         } else {
             lastHandler.accept(this, options);
         }
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.intercept;
+
+import org.noear.solon.flow.FlowContext;
+import org.noear.solon.flow.FlowException;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.util.LatencyHistogram;
+import org.noear.solon.lang.Nullable;
+import org.noear.solon.lang.Preview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流指标拦截器（按图id与节点id，统计运行数、异常数与延时分布；拉取式快照）
+ *
+ * <pre>{@code
+ * FlowMetricsInterceptor metrics = new FlowMetricsInterceptor();
+ * flowEngine.addInterceptor(metrics);
+ *
+ * for (FlowMetricsSnapshot s : metrics.snapshot()) {
+ *     log.info("{}", s);
+ * }
+ * }</pre>
+ *
+ * <p>节点延时为 onNodeStart 到 onNodeEnd（包括任务与拦截）；节点异常（没有 onNodeEnd）在流程结束时计入。
+ * 异步分支里抛出的异常，只计入图的异常数</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowMetricsInterceptor implements FlowInterceptor {
+    private final Map<String, GraphMetrics> graphs = new ConcurrentHashMap<>();
+    //运行中的节点（最外层流程结束时移除，线程不会因此一直引用拦截器与图）
+    private final ThreadLocal<InFlight> inFlights = ThreadLocal.withInitial(InFlight::new);
+    private volatile long startMillis = System.currentTimeMillis();
+
+    @Override
+    public void interceptFlow(FlowInvocation invocation) throws FlowException {
+        InFlight inFlight = inFlights.get();
+        int mark = inFlight.size;
+        long start = System.nanoTime();
+
+        inFlight.depth++;
+        boolean failed = true;
+
+        try {
+            invocation.invoke();
+            failed = false;
+        } finally {
+            long now = System.nanoTime();
+            GraphMetrics metrics = graphMetrics(invocation.getGraph().getId());
+
+            if (failed) {
+                //仍未结束的节点，即为异常节点（及其所在的外层节点）
+                for (int i = inFlight.size - 1; i >= mark; i--) {
+                    Node node = inFlight.nodes[i];
+                    graphMetrics(node.getGraph().getId()).node(node.getId()).error(now - inFlight.starts[i]);
+                }
+
+                metrics.error(now - start);
+            } else {
+                metrics.record(now - start);
+            }
+
+            //丢弃被停止或阻断的节点（它们没有 onNodeEnd）
+            inFlight.truncate(mark);
+
+            if (--inFlight.depth == 0) {
+                inFlights.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onNodeStart(FlowContext context, Node node) {
+        inFlights.get().push(node, System.nanoTime());
+    }
+
+    @Override
+    public void onNodeEnd(FlowContext context, Node node) {
+        InFlight inFlight = inFlights.get();
+        long start = inFlight.pop(node);
+
+        if (inFlight.size == 0 && inFlight.depth == 0) {
+            //异步分支的线程（没有流程拦截）
+            inFlights.remove();
+        }
+
+        if (start != InFlight.NONE) {
+            graphMetrics(node.getGraph().getId()).node(node.getId()).record(System.nanoTime() - start);
+        }
+    }
+
+    private GraphMetrics graphMetrics(String graphId) {
+        GraphMetrics metrics = graphs.get(graphId);
+        if (metrics == null) {
+            metrics = graphs.computeIfAbsent(graphId, k -> new GraphMetrics());
+        }
+
+        return metrics;
+    }
+
+    /**
+     * 所有快照（每个图在前，其节点随后）
+     */
+    public List<FlowMetricsSnapshot> snapshot() {
+        long elapsed = elapsedMillis();
+        List<FlowMetricsSnapshot> list = new ArrayList<>();
+
+        for (Map.Entry<String, GraphMetrics> kv : graphs.entrySet()) {
+            list.add(kv.getValue().snapshot(kv.getKey(), null, elapsed));
+
+            for (Map.Entry<String, Metrics> kv2 : kv.getValue().nodes.entrySet()) {
+                list.add(kv2.getValue().snapshot(kv.getKey(), kv2.getKey(), elapsed));
+            }
+        }
+
+        return list;
+    }
+
+    /**
+     * 图的快照
+     */
+    public @Nullable FlowMetricsSnapshot snapshot(String graphId) {
+        GraphMetrics metrics = graphs.get(graphId);
+
+        if (metrics == null) {
+            return null;
+        } else {
+            return metrics.snapshot(graphId, null, elapsedMillis());
+        }
+    }
+
+    /**
+     * 节点的快照
+     */
+    public @Nullable FlowMetricsSnapshot snapshot(String graphId, String nodeId) {
+        GraphMetrics metrics = graphs.get(graphId);
+        Metrics nodeMetrics = (metrics == null ? null : metrics.nodes.get(nodeId));
+
+        if (nodeMetrics == null) {
+            return null;
+        } else {
+            return nodeMetrics.snapshot(graphId, nodeId, elapsedMillis());
+        }
+    }
+
+    /**
+     * 重置
+     */
+    public void reset() {
+        graphs.clear();
+        startMillis = System.currentTimeMillis();
+    }
+
+    private long elapsedMillis() {
+        return System.currentTimeMillis() - startMillis;
+    }
+
+    /**
+     * 指标
+     */
+    static class Metrics {
+        final LongAdder count = new LongAdder();
+        final LongAdder errorCount = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        void record(long nanos) {
+            count.increment();
+            latency.record(nanos);
+        }
+
+        void error(long nanos) {
+            errorCount.increment();
+            record(nanos);
+        }
+
+        FlowMetricsSnapshot snapshot(String graphId, String nodeId, long elapsedMillis) {
+            return new FlowMetricsSnapshot(graphId, nodeId, count.sum(), errorCount.sum(), latency.snapshot(), elapsedMillis);
+        }
+    }
+
+    /**
+     * 图的指标（包括其节点的）
+     */
+    static class GraphMetrics extends Metrics {
+        final Map<String, Metrics> nodes = new ConcurrentHashMap<>();
+
+        Metrics node(String nodeId) {
+            Metrics metrics = nodes.get(nodeId);
+            if (metrics == null) {
+                metrics = nodes.computeIfAbsent(nodeId, k -> new Metrics());
+            }
+
+            return metrics;
+        }
+    }
+
+    /**
+     * 运行中的节点（线程内；按开始顺序）
+     */
+    static class InFlight {
+        static final long NONE = Long.MIN_VALUE;
+        //异步分支的线程没有流程结束时的清理，限制其遗留
+        static final int MAX_SIZE = 64;
+
+        Node[] nodes = new Node[8];
+        long[] starts = new long[8];
+        int size;
+        //流程嵌套深度
+        int depth;
+
+        void push(Node node, long start) {
+            if (size == nodes.length) {
+                if (size == MAX_SIZE) {
+                    //丢弃最早的
+                    System.arraycopy(nodes, 1, nodes, 0, size - 1);
+                    System.arraycopy(starts, 1, starts, 0, size - 1);
+                    size--;
+                } else {
+                    nodes = Arrays.copyOf(nodes, size * 2);
+                    starts = Arrays.copyOf(starts, size * 2);
+                }
+            }
+
+            nodes[size] = node;
+            starts[size] = start;
+            size++;
+        }
+
+        long pop(Node node) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (nodes[i] == node) {
+                    long start = starts[i];
+                    size--;
+
+                    if (i < size) {
+                        System.arraycopy(nodes, i + 1, nodes, i, size - i);
+                        System.arraycopy(starts, i + 1, starts, i, size - i);
+                    }
+
+                    nodes[size] = null;
+                    return start;
+                }
+            }
+
+            return NONE;
+        }
+
+        void truncate(int mark) {
+            if (mark > size) {
+                //已被丢弃最早的
+                mark = size;
+            }
+
+            for (int i = mark; i < size; i++) {
+                nodes[i] = null;
+            }
+
+            size = mark;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.intercept;
+
+import org.noear.solon.flow.util.LatencyHistogram;
+import org.noear.solon.lang.Nullable;
+import org.noear.solon.lang.Preview;
+
+/**
+ * 流指标快照（图或节点的运行数、异常数与延时分布；延时单位为纳秒）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowMetricsSnapshot {
+    private final String graphId;
+    private final String nodeId;
+    private final long count;
+    private final long errorCount;
+    private final LatencyHistogram.Snapshot latency;
+    private final long elapsedMillis;
+
+    public FlowMetricsSnapshot(String graphId, String nodeId, long count, long errorCount, LatencyHistogram.Snapshot latency, long elapsedMillis) {
+        this.graphId = graphId;
+        this.nodeId = nodeId;
+        this.count = count;
+        this.errorCount = errorCount;
+        this.latency = latency;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    /**
+     * 获取图id
+     */
+    public String getGraphId() {
+        return graphId;
+    }
+
+    /**
+     * 获取节点id（图的指标时为 null）
+     */
+    public @Nullable String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 运行数（包括异常的）
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * 异常数
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * 延时分布
+     */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency;
+    }
+
+    /**
+     * 统计时长（从创建或重置开始）
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 吞吐量（每秒运行数）
+     */
+    public double getThroughput() {
+        return elapsedMillis == 0 ? 0 : count * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "FlowMetricsSnapshot{" +
+                "graphId='" + graphId + '\'' +
+                (nodeId == null ? "" : ", nodeId='" + nodeId + '\'') +
+                ", count=" + count +
+                ", errorCount=" + errorCount +
+                ", latency=" + latency +
+                '}';
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.jfr;
+
+import org.noear.solon.flow.ConditionDesc;
+import org.noear.solon.flow.Node;
+import org.noear.solon.flow.TaskDesc;
+import org.noear.solon.lang.Internal;
+import org.noear.solon.lang.Preview;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Proxy;
+import java.util.List;
+
+/**
+ * 流的 JFR（JDK Flight Recorder）事件
+ *
+ * <p>事件（类别 Solon / Flow）：solon.flow.FlowEval, solon.flow.NodeRun, solon.flow.ConditionEval, solon.flow.TaskRun,
+ * solon.flow.GatewayJoin；字段有 graphId, nodeId, nodeType（条件事件为 graphId, condition），时长为事件自带。
+ * 事件由 jdk.jfr.EventFactory 动态定义（不依赖 jdk.jfr 编译；没有 JFR 的运行时自动停用）。
+ * 是否启用按事件类型缓存（记录状态变化时刷新），事件未启用时（包括没有记录在运行），只有一次 volatile 读取的开销。
+ * 在运行中的记录上改变事件设置，要到下次记录状态变化时才生效</p>
+ *
+ * <pre>{@code
+ * java -XX:StartFlightRecording=filename=flow.jfr ...
+ * jfr print --events solon.flow.NodeRun flow.jfr
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public final class FlowJfr {
+    private static final Logger log = LoggerFactory.getLogger(FlowJfr.class);
+
+    private static final String[] NODE_FIELDS = {"graphId", "nodeId", "nodeType"};
+
+    private static final JfrEventType FLOW_EVAL;
+    private static final JfrEventType NODE_RUN;
+    private static final JfrEventType CONDITION_EVAL;
+    private static final JfrEventType TASK_RUN;
+    private static final JfrEventType GATEWAY_JOIN;
+
+    private static MethodHandle getFlightRecorder;
+    private static MethodHandle getRecordings;
+    private static MethodHandle getState;
+
+    //是否有记录在运行
+    private static volatile boolean recording;
+
+    static {
+        JfrEventType flowEval = null;
+        JfrEventType nodeRun = null;
+        JfrEventType conditionEval = null;
+        JfrEventType taskRun = null;
+        JfrEventType gatewayJoin = null;
+
+        try {
+            if (isRecorderAvailable()) {
+                JfrEventType.Jfr jfr = new JfrEventType.Jfr();
+
+                flowEval = new JfrEventType(jfr, "solon.flow.FlowEval", "Flow Eval", NODE_FIELDS);
+                nodeRun = new JfrEventType(jfr, "solon.flow.NodeRun", "Node Run", NODE_FIELDS);
+                conditionEval = new JfrEventType(jfr, "solon.flow.ConditionEval", "Condition Eval", "graphId", "condition");
+                taskRun = new JfrEventType(jfr, "solon.flow.TaskRun", "Task Run", NODE_FIELDS);
+                gatewayJoin = new JfrEventType(jfr, "solon.flow.GatewayJoin", "Gateway Join", NODE_FIELDS);
+
+                listenRecorder();
+            }
+        } catch (Throwable e) {
+            //没有 JFR（比如 java 8 早期版本）
+            flowEval = null;
+            log.debug("The flow jfr events are not available: {}", e.toString());
+        }
+
+        if (flowEval == null) {
+            FLOW_EVAL = NODE_RUN = CONDITION_EVAL = TASK_RUN = GATEWAY_JOIN = null;
+        } else {
+            FLOW_EVAL = flowEval;
+            NODE_RUN = nodeRun;
+            CONDITION_EVAL = conditionEval;
+            TASK_RUN = taskRun;
+            GATEWAY_JOIN = gatewayJoin;
+
+            //添加监听时的回调早于事件类型赋值，再刷新一次（记录器还没有初始化时，等回调）
+            if (isRecorderInitialized()) {
+                updateRecording();
+            }
+        }
+    }
+
+    private FlowJfr() {
+    }
+
+    private static boolean isRecorderAvailable() throws Throwable {
+        Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+        return (boolean) recorderClass.getMethod("isAvailable").invoke(null);
+    }
+
+    private static boolean isRecorderInitialized() {
+        try {
+            Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+            return (boolean) recorderClass.getMethod("isInitialized").invoke(null);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 监听记录状态（用于快速判断）
+     */
+    private static void listenRecorder() throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        Class<?> recorderClass = Class.forName("jdk.jfr.FlightRecorder");
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Class<?> listenerClass = Class.forName("jdk.jfr.FlightRecorderListener");
+
+        getFlightRecorder = lookup.findStatic(recorderClass, "getFlightRecorder", MethodType.methodType(recorderClass));
+        getRecordings = lookup.findVirtual(recorderClass, "getRecordings", MethodType.methodType(List.class));
+        getState = lookup.findVirtual(recordingClass, "getState", MethodType.methodType(Class.forName("jdk.jfr.RecordingState")));
+
+        Object listener = Proxy.newProxyInstance(FlowJfr.class.getClassLoader(), new Class<?>[]{listenerClass}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "recorderInitialized":
+                case "recordingStateChanged":
+                    updateRecording();
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "FlowJfr$Listener";
+                default:
+                    return null;
+            }
+        });
+
+        recorderClass.getMethod("addListener", listenerClass).invoke(null, listener);
+    }
+
+    private static void updateRecording() {
+        try {
+            boolean running = false;
+            for (Object r : (List<?>) getRecordings.invoke(getFlightRecorder.invoke())) {
+                if ("RUNNING".equals(((Enum<?>) getState.invoke(r)).name())) {
+                    running = true;
+                    break;
+                }
+            }
+
+            recording = running;
+        } catch (Throwable e) {
+            recording = false;
+        }
+
+        //静态初始化完成前（添加监听时的回调），事件类型还没有赋值
+        boolean running = recording;
+        for (JfrEventType type : new JfrEventType[]{FLOW_EVAL, NODE_RUN, CONDITION_EVAL, TASK_RUN, GATEWAY_JOIN}) {
+            if (type != null) {
+                type.refresh(running);
+            }
+        }
+    }
+
+    /**
+     * 是否可用（运行时有 JFR）
+     */
+    public static boolean isAvailable() {
+        return FLOW_EVAL != null;
+    }
+
+    /**
+     * 是否有记录在运行
+     */
+    public static boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * 开始流运行事件（事件未启用时为 null）
+     */
+    @Internal
+    public static Object beginFlow(Node startNode) {
+        if (isEnabled(FLOW_EVAL) == false) {
+            return null;
+        }
+
+        return beginNodeEvent(FLOW_EVAL, startNode);
+    }
+
+    /**
+     * 开始节点运行事件（事件未启用时为 null）
+     */
+    @Internal
+    public static Object beginNode(Node node) {
+        if (isEnabled(NODE_RUN) == false) {
+            return null;
+        }
+
+        return beginNodeEvent(NODE_RUN, node);
+    }
+
+    /**
+     * 开始条件评估事件（事件未启用时为 null）
+     */
+    @Internal
+    public static Object beginCondition(ConditionDesc condition) {
+        if (isEnabled(CONDITION_EVAL) == false) {
+            return null;
+        }
+
+        return CONDITION_EVAL.begin(condition.getGraph() == null ? null : condition.getGraph().getId(), condition.getDescription());
+    }
+
+    /**
+     * 开始任务运行事件（事件未启用时为 null）
+     */
+    @Internal
+    public static Object beginTask(TaskDesc task) {
+        if (isEnabled(TASK_RUN) == false) {
+            return null;
+        }
+
+        return beginNodeEvent(TASK_RUN, task.getNode());
+    }
+
+    /**
+     * 开始网关汇聚事件（事件未启用时为 null）
+     */
+    @Internal
+    public static Object beginJoin(Node node) {
+        if (isEnabled(GATEWAY_JOIN) == false) {
+            return null;
+        }
+
+        return beginNodeEvent(GATEWAY_JOIN, node);
+    }
+
+    /**
+     * 提交事件（为 null 时忽略）
+     */
+    @Internal
+    public static void commit(Object event) {
+        if (event != null) {
+            FLOW_EVAL.commit(event);
+        }
+    }
+
+    private static boolean isEnabled(JfrEventType type) {
+        return type != null && type.isEnabled();
+    }
+
+    private static Object beginNodeEvent(JfrEventType type, Node node) {
+        if (node == null) {
+            return type.begin();
+        } else {
+            return type.begin(node.getGraph().getId(), node.getId(), node.getType().name());
+        }
+    }
+}
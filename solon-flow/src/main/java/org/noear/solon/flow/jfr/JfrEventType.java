@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.jfr;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * JFR 事件类型（通过 jdk.jfr.EventFactory 动态定义；全部反射调用，编译与运行都不依赖 jdk.jfr）
+ *
+ * @author noear
+ * @since 4.0
+ */
+class JfrEventType {
+    private static final String[] CATEGORY = {"Solon", "Flow"};
+
+    private final Jfr jfr;
+    private final MethodHandle newEvent;
+    private final MethodHandle typeIsEnabled;
+    private final int fieldCount;
+    //是否启用（记录状态变化时刷新）
+    private volatile boolean enabled;
+
+    /**
+     * @param name   事件名
+     * @param label  事件标签
+     * @param fields 字段名（均为 String 类型）
+     */
+    JfrEventType(Jfr jfr, String name, String label, String... fields) throws Throwable {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(jfr.annotation("jdk.jfr.Name", name));
+        annotations.add(jfr.annotation("jdk.jfr.Label", label));
+        annotations.add(jfr.annotation("jdk.jfr.Category", CATEGORY));
+
+        List<Object> descriptors = new ArrayList<>();
+        for (String field : fields) {
+            descriptors.add(jfr.valueDescriptor(field));
+        }
+
+        Object factory = jfr.eventFactoryCreate.invoke(annotations, descriptors);
+
+        this.jfr = jfr;
+        this.newEvent = jfr.factoryNewEvent.bindTo(factory);
+        this.typeIsEnabled = jfr.eventTypeIsEnabled.bindTo(jfr.factoryGetEventType.invoke(factory));
+        this.fieldCount = fields.length;
+    }
+
+    /**
+     * 是否启用（缓存的；在开始事件之前检查，避免创建参数与事件）
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 刷新是否启用
+     *
+     * @param recording 是否有记录在运行
+     */
+    void refresh(boolean recording) {
+        if (recording) {
+            try {
+                enabled = (boolean) typeIsEnabled.invoke();
+            } catch (Throwable e) {
+                enabled = false;
+            }
+        } else {
+            enabled = false;
+        }
+    }
+
+    /**
+     * 开始（事件未启用时为 null）
+     */
+    Object begin(String... values) {
+        try {
+            Object event = newEvent.invoke();
+            if ((boolean) jfr.eventIsEnabled.invoke(event) == false) {
+                return null;
+            }
+
+            for (int i = 0; i < fieldCount && i < values.length; i++) {
+                jfr.eventSet.invoke(event, i, values[i]);
+            }
+
+            jfr.eventBegin.invoke(event);
+            return event;
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * 提交
+     */
+    void commit(Object event) {
+        try {
+            jfr.eventCommit.invoke(event);
+        } catch (Throwable e) {
+            //忽略（记录失败不影响流程）
+        }
+    }
+
+    /**
+     * jdk.jfr 的反射句柄
+     */
+    static class Jfr {
+        final MethodHandle eventFactoryCreate;
+        final MethodHandle factoryNewEvent;
+        final MethodHandle factoryGetEventType;
+        final MethodHandle eventTypeIsEnabled;
+        final MethodHandle eventIsEnabled;
+        final MethodHandle eventSet;
+        final MethodHandle eventBegin;
+        final MethodHandle eventCommit;
+
+        private final Constructor<?> annotationElementCtor;
+        private final Constructor<?> valueDescriptorCtor;
+        private final Class<?> labelClass;
+
+        Jfr() throws Throwable {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Class<?> eventFactoryClass = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventTypeClass = Class.forName("jdk.jfr.EventType");
+            Class<?> annotationElementClass = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptorClass = Class.forName("jdk.jfr.ValueDescriptor");
+            labelClass = Class.forName("jdk.jfr.Label");
+
+            eventFactoryCreate = lookup.findStatic(eventFactoryClass, "create",
+                    MethodType.methodType(eventFactoryClass, List.class, List.class));
+            factoryNewEvent = lookup.findVirtual(eventFactoryClass, "newEvent",
+                    MethodType.methodType(eventClass));
+            factoryGetEventType = lookup.findVirtual(eventFactoryClass, "getEventType",
+                    MethodType.methodType(eventTypeClass));
+            eventTypeIsEnabled = lookup.findVirtual(eventTypeClass, "isEnabled",
+                    MethodType.methodType(boolean.class));
+            eventIsEnabled = lookup.findVirtual(eventClass, "isEnabled",
+                    MethodType.methodType(boolean.class));
+            eventSet = lookup.findVirtual(eventClass, "set",
+                    MethodType.methodType(void.class, int.class, Object.class));
+            eventBegin = lookup.findVirtual(eventClass, "begin",
+                    MethodType.methodType(void.class));
+            eventCommit = lookup.findVirtual(eventClass, "commit",
+                    MethodType.methodType(void.class));
+
+            annotationElementCtor = annotationElementClass.getConstructor(Class.class, Object.class);
+            valueDescriptorCtor = valueDescriptorClass.getConstructor(Class.class, String.class, List.class);
+        }
+
+        Object annotation(String type, Object value) throws Throwable {
+            return annotationElementCtor.newInstance(Class.forName(type), value);
+        }
+
+        Object valueDescriptor(String name) throws Throwable {
+            //标签：graphId -> Graph Id
+            StringBuilder label = new StringBuilder();
+            for (char c : name.toCharArray()) {
+                if (label.length() == 0) {
+                    label.append(Character.toUpperCase(c));
+                } else if (Character.isUpperCase(c)) {
+                    label.append(' ').append(c);
+                } else {
+                    label.append(c);
+                }
+            }
+
+            List<Object> annotations = Arrays.asList(annotationElementCtor.newInstance(labelClass, label.toString()));
+            return valueDescriptorCtor.newInstance(String.class, name, annotations);
+        }
+    }
+}
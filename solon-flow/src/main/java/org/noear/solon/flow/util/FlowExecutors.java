@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.util;
+
+import org.noear.solon.lang.Preview;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流执行器工具（优先使用虚拟线程；运行环境不支持时，退回有界的平台线程池）
+ *
+ * <pre>{@code
+ * FlowDriver driver = SimpleFlowDriver.builder().executor(FlowExecutors.newVirtualOrBounded(64)).build();
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class FlowExecutors {
+    private static final Method virtualPerTaskMethod;
+
+    static {
+        //java 21+（通过反射获取，兼容 java 8 编译与运行）
+        Method tmp = null;
+        try {
+            tmp = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (Throwable ignore) {
+            //不支持虚拟线程
+        }
+        virtualPerTaskMethod = tmp;
+    }
+
+    /**
+     * 是否支持虚拟线程
+     */
+    public static boolean isVirtualSupported() {
+        return virtualPerTaskMethod != null;
+    }
+
+    /**
+     * 新建虚拟线程执行器（每个任务一个虚拟线程；不支持时为 null）
+     */
+    public static ExecutorService newVirtual() {
+        if (virtualPerTaskMethod == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) virtualPerTaskMethod.invoke(null);
+        } catch (Throwable e) {
+            //比如运行环境禁用了（预览）虚拟线程
+            return null;
+        }
+    }
+
+    /**
+     * 新建有界的平台线程池（守护线程，空闲时回收）
+     *
+     * <p>并行网关与并行循环的调用线程也参与运行，只等待已在运行的分支，所以嵌套再深也不会因线程都在等待汇聚而死锁（线程少时只是并发度低）；
+     * 但任务组件里自行提交到同一线程池并阻塞等待的，仍要注意线程数。异步运行（evalAsync）只在同步运行的片段期间占用线程</p>
+     *
+     * @param maxThreads 最大线程数
+     */
+    public static ExecutorService newBounded(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("The maxThreads must be greater than 0");
+        }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory("flow-exec-"));
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    /**
+     * 新建虚拟线程执行器；不支持时，退回有界的平台线程池
+     *
+     * @param maxThreads 平台线程池的最大线程数
+     */
+    public static ExecutorService newVirtualOrBounded(int maxThreads) {
+        ExecutorService executor = newVirtual();
+
+        if (executor == null) {
+            executor = newBounded(maxThreads);
+        }
+
+        return executor;
+    }
+
+    /**
+     * 新建虚拟线程执行器；不支持时，退回有界的平台线程池（最大线程数为 CPU 核数的 8 倍，适合 IO 型分支）
+     */
+    public static ExecutorService newVirtualOrBounded() {
+        return newVirtualOrBounded(Runtime.getRuntime().availableProcessors() * 8);
+    }
+
+    /**
+     * 命名线程工厂
+     */
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
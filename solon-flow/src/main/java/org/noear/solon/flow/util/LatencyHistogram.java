@@ -0,0 +1,194 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.util;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延时直方图（对数线性分桶，与 HdrHistogram 类似；记录无锁，快照时复制）
+ *
+ * <p>每个 2 的幂区间分为 8 个子桶，相对误差不超过 12.5%；超出上限（2^42 - 1 纳秒，约 73 分钟）的值计入最后一个桶</p>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXP = 41;
+    private static final long MAX_VALUE = (1L << (MAX_EXP + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXP - SUB_BITS + 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录
+     *
+     * @param value 值（一般为纳秒；负数按 0 记）
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * 快照
+     */
+    public Snapshot snapshot() {
+        long[] tmp = new long[BUCKET_COUNT];
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            tmp[i] = counts.get(i);
+            count += tmp[i];
+        }
+
+        return new Snapshot(tmp, count, sum.sum(), max.get());
+    }
+
+    /**
+     * 重置（与记录并发时，不保证原子性）
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+
+        sum.reset();
+        max.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exp - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    static long highestOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+
+        int shift = index / SUB_COUNT - 1;
+        int sub = index % SUB_COUNT;
+        return ((long) (SUB_COUNT + sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 直方图快照（不可变）
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * 记录数
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * 总和
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * 最大值
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * 平均值
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 百分位值（所在桶的上界，不超过最大值）
+         *
+         * @param percentile 百分位（0 ~ 100）
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+
+            long target = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+            if (target < 1) {
+                target = 1;
+            }
+
+            long acc = 0;
+            for (int i = 0; i < counts.length; i++) {
+                acc += counts[i];
+                if (acc >= target) {
+                    return Math.min(highestOf(i), max);
+                }
+            }
+
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{" +
+                    "count=" + count +
+                    ", mean=" + (long) getMean() +
+                    ", p50=" + getPercentile(50) +
+                    ", p99=" + getPercentile(99) +
+                    ", max=" + max +
+                    '}';
+        }
+    }
+}
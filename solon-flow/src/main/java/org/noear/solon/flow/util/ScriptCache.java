@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.util;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 脚本编译缓存（有界，按最近最少使用淘汰；供脚本执行器使用）
+ *
+ * <pre>{@code
+ * Expression expr = scriptCache.get(code, AviatorEvaluator::compile);
+ * }</pre>
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public class ScriptCache<T> {
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    private final int maxSize;
+    private final Map<String, T> cached;
+
+    public ScriptCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize 最大数量
+     */
+    public ScriptCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maxSize must be greater than 0");
+        }
+
+        this.maxSize = maxSize;
+        this.cached = new LinkedHashMap<String, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, T> eldest) {
+                return size() > ScriptCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 获取编译结果（没有时编译并缓存）
+     *
+     * @param code     代码
+     * @param compiler 编译器
+     */
+    public T get(String code, Function<String, T> compiler) {
+        T compiled;
+
+        synchronized (cached) {
+            compiled = cached.get(code);
+        }
+
+        if (compiled == null) {
+            //在锁外编译（重复编译是等价的）
+            compiled = compiler.apply(code);
+
+            synchronized (cached) {
+                T tmp = cached.putIfAbsent(code, compiled);
+                if (tmp != null) {
+                    compiled = tmp;
+                }
+            }
+        }
+
+        return compiled;
+    }
+
+    /**
+     * 最大数量
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 数量
+     */
+    public int size() {
+        synchronized (cached) {
+            return cached.size();
+        }
+    }
+
+    /**
+     * 清除
+     */
+    public void clear() {
+        synchronized (cached) {
+            cached.clear();
+        }
+    }
+}
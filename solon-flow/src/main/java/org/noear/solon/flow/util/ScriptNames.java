@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017-2025 noear.org and authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.noear.solon.flow.util;
+
+import org.noear.solon.lang.Preview;
+
+import java.util.function.Consumer;
+
+/**
+ * 脚本标识符扫描（宽松匹配，包括字符串与关键字内的；多出的名字由使用方忽略）
+ *
+ * @author noear
+ * @since 4.0
+ */
+@Preview("4.0")
+public final class ScriptNames {
+    private ScriptNames() {
+    }
+
+    /**
+     * 扫描代码中的标识符
+     *
+     * @param code     代码（为 null 时忽略）
+     * @param consumer 标识符消费者（可能重复）
+     */
+    public static void scan(String code, Consumer<String> consumer) {
+        if (code == null) {
+            return;
+        }
+
+        int len = code.length();
+        int i = 0;
+
+        while (i < len) {
+            if (Character.isJavaIdentifierStart(code.charAt(i))) {
+                int start = i++;
+                while (i < len && Character.isJavaIdentifierPart(code.charAt(i))) {
+                    i++;
+                }
+
+                consumer.accept(code.substring(start, i));
+            } else {
+                i++;
+            }
+        }
+    }
+}
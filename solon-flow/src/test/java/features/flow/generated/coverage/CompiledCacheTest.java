@@ -0,0 +1,113 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.driver.SimpleFlowDriver;
+import org.noear.solon.flow.evaluation.LiquorEvaluation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CompiledCache（条件与任务描述上的编译缓存）单元测试
+ */
+class CompiledCacheTest {
+
+    @Test
+    void testGet() {
+        CompiledCache cache = new CompiledCache();
+        AtomicInteger compiles = new AtomicInteger();
+        Object owner1 = new Object();
+        Object owner2 = new Object();
+
+        String c1 = cache.get(owner1, "a > 1", c -> c + "#" + compiles.incrementAndGet());
+        String c2 = cache.get(owner1, "a > 1", c -> c + "#" + compiles.incrementAndGet());
+        assertSame(c1, c2);
+        assertEquals(1, compiles.get());
+
+        //代码变化，重新编译
+        assertEquals("a > 2#2", cache.get(owner1, "a > 2", c -> c + "#" + compiles.incrementAndGet()));
+
+        //所有者变化，重新编译
+        assertEquals("a > 2#3", cache.get(owner2, "a > 2", c -> c + "#" + compiles.incrementAndGet()));
+
+        cache.clear();
+        assertEquals("a > 2#4", cache.get(owner2, "a > 2", c -> c + "#" + compiles.incrementAndGet()));
+    }
+
+    @Test
+    void testCompileOncePerDesc() {
+        AtomicInteger conditionCompiles = new AtomicInteger();
+        AtomicInteger taskCompiles = new AtomicInteger();
+
+        //模拟可编译的脚本执行器（编译结果为 Predicate 样式的对象）
+        Evaluation evaluation = new Evaluation() {
+            @Override
+            public boolean runCondition(FlowContext context, String code) {
+                throw new IllegalStateException("Should not be called");
+            }
+
+            @Override
+            public void runTask(FlowContext context, String code) {
+                throw new IllegalStateException("Should not be called");
+            }
+
+            @Override
+            public boolean runCondition(FlowContext context, ConditionDesc condition, String code) {
+                String key = condition.compiled().get(this, code, c -> {
+                    conditionCompiles.incrementAndGet();
+                    return c.split(">")[0].trim();
+                });
+
+                return context.<Integer>getAs(key) > 5;
+            }
+
+            @Override
+            public void runTask(FlowContext context, TaskDesc task, String code) {
+                String key = task.compiled().get(this, code, c -> {
+                    taskCompiles.incrementAndGet();
+                    return c.replace("++", "").trim();
+                });
+
+                context.put(key, context.<Integer>getOrDefault(key, 0) + 1);
+            }
+        };
+
+        Graph graph = Graph.create("compiled-graph", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when("v > 5"))
+                    .linkAdd("b", l -> l.when("w > 5"))
+                    .linkAdd("c");
+            spec.addActivity("a").task("na++").linkAdd("e");
+            spec.addActivity("b").task("nb++").linkAdd("e");
+            spec.addActivity("c").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().evaluation(evaluation).build());
+
+        for (int i = 0; i < 100; i++) {
+            FlowContext context = FlowContext.of().put("v", i % 10).put("w", 6);
+            flowEngine.eval(graph, context);
+        }
+
+        assertEquals(2, conditionCompiles.get());
+        assertEquals(2, taskCompiles.get());
+    }
+
+    @Test
+    void testLiquorCondition() throws Throwable {
+        LiquorEvaluation evaluation = new LiquorEvaluation();
+        ConditionDesc condition = new ConditionDesc(null, "a > 1");
+
+        assertTrue(evaluation.runCondition(FlowContext.of().put("a", 2), condition, condition.getDescription()));
+        assertFalse(evaluation.runCondition(FlowContext.of().put("a", 0), condition, condition.getDescription()));
+
+        Object compiled = condition.compiled().get(evaluation, "a > 1", c -> {
+            throw new IllegalStateException("Should be cached");
+        });
+        assertNotNull(compiled);
+    }
+}
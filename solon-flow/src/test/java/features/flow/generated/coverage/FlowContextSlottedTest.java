@@ -0,0 +1,151 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 槽位流上下文单元测试
+ */
+class FlowContextSlottedTest {
+
+    private Graph createGraph() {
+        return Graph.create("slotted-graph", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when("(v,>,5)"))
+                    .linkAdd("b");
+            spec.addActivity("a").task((c, n) -> c.put("result", "A")).linkAdd("p1");
+            spec.addActivity("b").task((c, n) -> c.put("result", "B")).linkAdd("p1");
+            spec.addParallel("p1").linkAdd("c1").linkAdd("c2");
+            spec.addActivity("c1").task((c, n) -> c.put("c1", 1)).linkAdd("p2");
+            spec.addActivity("c2").task((c, n) -> c.put("c2", 2)).linkAdd("p2");
+            spec.addParallel("p2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testLayout() {
+        Graph graph = createGraph();
+        FlowContextLayout layout = graph.getPlan().getLayout();
+
+        assertEquals(0, layout.indexOf("instanceId"));
+        assertEquals(1, layout.indexOf("context"));
+        assertTrue(layout.indexOf("v") > 1);
+        assertEquals(-1, layout.indexOf("result"));
+        assertEquals("v", layout.getName(layout.indexOf("v")));
+
+        FlowContextLayout layout2 = FlowContextLayout.of("a", "b", "a");
+        assertEquals(4, layout2.size());
+    }
+
+    @Test
+    void testEval() {
+        Graph graph = createGraph();
+        FlowEngine flowEngine = FlowEngine.newInstance();
+
+        for (int v : new int[]{3, 8}) {
+            FlowContext context1 = FlowContext.of("i1").put("v", v);
+            FlowContext context2 = new FlowContextSlotted("i1", graph).put("v", v);
+
+            flowEngine.eval(graph, context1);
+            flowEngine.eval(graph, context2);
+
+            assertEquals(context1.get("result"), context2.get("result"));
+            assertEquals(new TreeMap<>(context1.serData()), new TreeMap<>(context2.serData()));
+            assertEquals("i1", context2.getInstanceId());
+        }
+    }
+
+    @Test
+    void testLoopSlot() {
+        Graph graph = Graph.create("slotted-loop", spec -> {
+            spec.addStart("s").linkAdd("l1");
+            spec.addLoop("l1").metaPut("$for", "item").metaPut("$in", "list").linkAdd("a");
+            spec.addActivity("a").task((c, n) -> c.put("sum", c.<Integer>getAs("sum") + c.<Integer>getAs("item"))).linkAdd("l2");
+            spec.addLoop("l2").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        //循环变量的槽位在计划中预先解析
+        FlowContextLayout layout = graph.getPlan().getLayout();
+        int slot = graph.getPlan().get(graph.getNode("l1")).getForSlot();
+        assertEquals(layout.indexOf("item"), slot);
+        assertTrue(slot > 1);
+
+        for (boolean iterative : new boolean[]{false, true}) {
+            FlowEngine flowEngine = new FlowEngineDefault(null, false).iterative(iterative);
+            FlowContextSlotted context = new FlowContextSlotted(graph);
+            context.put("list", Arrays.asList(1, 2, 3)).put("sum", 0);
+
+            flowEngine.eval(graph, context);
+
+            assertEquals(6, context.<Integer>getAs("sum"));
+            assertEquals(3, context.<Integer>getSlot(slot));
+        }
+
+        //布局不同的槽位上下文，按变量名写入
+        FlowContextSlotted context = new FlowContextSlotted(FlowContextLayout.of("sum"));
+        context.put("list", Arrays.asList(1, 2)).put("sum", 0);
+        FlowEngine.newInstance().eval(graph, context);
+
+        assertEquals(3, context.<Integer>getAs("sum"));
+        assertEquals(2, context.<Integer>getAs("item"));
+    }
+
+    @Test
+    void testData() {
+        FlowContextLayout layout = FlowContextLayout.of("a", "b");
+        FlowContextSlotted context = new FlowContextSlotted(layout);
+        Map<String, Object> data = context.data();
+
+        context.put("a", 1).put("x", "overflow").put("n", null);
+        assertEquals(1, context.<Integer>getSlot(layout.indexOf("a")));
+        assertEquals("overflow", context.get("x"));
+        assertFalse(context.containsKey("n"));
+        assertFalse(context.containsKey("b"));
+        assertEquals(4, data.size()); //instanceId, context, a, x
+
+        context.setSlot(layout.indexOf("b"), 2);
+        assertEquals(2, context.<Integer>getAs("b"));
+
+        assertEquals(1, data.putIfAbsent("a", 9));
+        assertEquals(3, context.<Integer>computeIfAbsent("c", k -> 3));
+        assertEquals(2, context.<Integer>computeIfAbsent("b", k -> 9));
+
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            keys.add(entry.getKey());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("instanceId", "context", "a", "b", "x", "c")), keys);
+
+        context.remove("a");
+        context.remove("x");
+        assertNull(context.get("a"));
+        assertNull(context.get("x"));
+        assertEquals(4, data.size());
+
+        data.entrySet().removeIf(e -> e.getKey().equals("b"));
+        assertNull(context.get("b"));
+
+        assertThrows(NullPointerException.class, () -> data.put("a", null));
+
+        context.with("a", 5, () -> assertEquals(5, context.<Integer>getAs("a")));
+        assertNull(context.get("a"));
+    }
+
+    @Test
+    void testJson() {
+        FlowContextSlotted context = new FlowContextSlotted("i2", FlowContextLayout.of("a"));
+        context.put("a", 1).put("x", "y");
+
+        FlowContext context2 = FlowContext.fromJson(context.toJson());
+        assertEquals("i2", context2.getInstanceId());
+        assertEquals(1, context2.<Integer>getAs("a"));
+        assertEquals("y", context2.get("x"));
+    }
+}
@@ -0,0 +1,106 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.driver.SimpleFlowDriver;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FlowEngine.evalAsync 单元测试
+ */
+class FlowEngineEvalAsyncTest {
+
+    //两层嵌套的并行网关（外层 2 个分支，每个分支内层再 2 个分支）
+    private Graph createGraph(AtomicInteger counter) {
+        return Graph.create("async-graph", spec -> {
+            spec.addStart("s").linkAdd("p1");
+            spec.addParallel("p1").linkAdd("a").linkAdd("b");
+
+            spec.addActivity("a").linkAdd("pa1");
+            spec.addParallel("pa1").linkAdd("a1").linkAdd("a2");
+            spec.addActivity("a1").task((c, n) -> counter.incrementAndGet()).linkAdd("pa2");
+            spec.addActivity("a2").task((c, n) -> counter.incrementAndGet()).linkAdd("pa2");
+            spec.addParallel("pa2").linkAdd("p2");
+
+            spec.addActivity("b").linkAdd("pb1");
+            spec.addParallel("pb1").linkAdd("b1").linkAdd("b2");
+            spec.addActivity("b1").task((c, n) -> counter.incrementAndGet()).linkAdd("pb2");
+            spec.addActivity("b2").task((c, n) -> counter.incrementAndGet()).linkAdd("pb2");
+            spec.addParallel("pb2").linkAdd("p2");
+
+            spec.addParallel("p2").linkAdd("c");
+            spec.addActivity("c").task((c, n) -> c.put("joined", Thread.currentThread().getName())).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testNestedFanOut() throws Exception {
+        //小线程池：阻塞式等待会因线程互等而耗尽
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+            AtomicInteger counter = new AtomicInteger();
+            FlowContext context = FlowContext.of();
+
+            flowEngine.evalAsync(createGraph(counter), context)
+                    .toCompletableFuture()
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(4, counter.get());
+            assertNotNull(context.get("joined"));
+            assertEquals("e", context.lastNodeId());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWithoutExecutor() throws Exception {
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        AtomicInteger counter = new AtomicInteger();
+        FlowContext context = FlowContext.of();
+
+        CompletableFuture<Void> future = flowEngine.evalAsync(createGraph(counter), context).toCompletableFuture();
+
+        //没有执行器时，在当前线程运行完成
+        assertTrue(future.isDone());
+        assertEquals(4, counter.get());
+        assertEquals(Thread.currentThread().getName(), context.get("joined"));
+    }
+
+    @Test
+    void testError() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Graph graph = Graph.create("async-error", spec -> {
+                spec.addStart("s").linkAdd("p1");
+                spec.addParallel("p1").linkAdd("a").linkAdd("b");
+                spec.addActivity("a").task((c, n) -> {
+                    throw new IllegalStateException("a failed");
+                }).linkAdd("p2");
+                spec.addActivity("b").linkAdd("p2");
+                spec.addParallel("p2").linkAdd("e");
+                spec.addEnd("e");
+            });
+
+            FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> {
+                flowEngine.evalAsync(graph, FlowContext.of())
+                        .toCompletableFuture()
+                        .get(10, TimeUnit.SECONDS);
+            });
+
+            assertTrue(error.getCause() instanceof FlowException);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.driver.SimpleFlowDriver;
+import org.noear.solon.flow.util.FlowExecutors;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FlowExecutors 单元测试
+ */
+class FlowExecutorsTest {
+
+    @Test
+    void testBounded() throws Exception {
+        ExecutorService executor = FlowExecutors.newBounded(2);
+
+        try {
+            Future<Thread> future = executor.submit(Thread::currentThread);
+            Thread thread = future.get(5, TimeUnit.SECONDS);
+
+            assertTrue(thread.isDaemon());
+            assertTrue(thread.getName().startsWith("flow-exec-"));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> FlowExecutors.newBounded(0));
+    }
+
+    @Test
+    void testVirtualOrBounded() {
+        ExecutorService executor = FlowExecutors.newVirtualOrBounded(4);
+
+        try {
+            assertNotNull(executor);
+
+            if (FlowExecutors.isVirtualSupported() == false) {
+                assertNull(FlowExecutors.newVirtual());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testParallelBranches() {
+        int size = 20;
+        Set<String> branches = ConcurrentHashMap.newKeySet();
+
+        Graph graph = Graph.create("virtual-graph", spec -> {
+            spec.addStart("s").linkAdd("p1");
+
+            NodeSpec p1 = spec.addParallel("p1");
+            for (int i = 0; i < size; i++) {
+                String id = "n" + i;
+                p1.linkAdd(id);
+                spec.addActivity(id).task((c, n) -> {
+                    Thread.sleep(10);
+                    branches.add(n.getId());
+                }).linkAdd("p2");
+            }
+
+            spec.addParallel("p2").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().virtualExecutor(8).build());
+        FlowContext context = FlowContext.of();
+        flowEngine.eval(graph, context);
+
+        assertEquals(size, branches.size());
+        assertEquals("e", context.lastNodeId());
+    }
+
+    private Graph createNestedGraph(int outer, int inner, Set<String> leaves) {
+        return Graph.create("nested-graph", spec -> {
+            NodeSpec p1 = spec.addParallel("p1");
+            spec.addStart("s").linkAdd("p1");
+
+            for (int i = 0; i < outer; i++) {
+                String q = "q" + i;
+                p1.linkAdd(q);
+
+                NodeSpec qSpec = spec.addParallel(q);
+                for (int j = 0; j < inner; j++) {
+                    String id = "n" + i + "_" + j;
+                    qSpec.linkAdd(id);
+                    spec.addActivity(id).task((c, n) -> {
+                        Thread.sleep(5);
+                        leaves.add(n.getId());
+                    }).linkAdd(q + "_join");
+                }
+
+                spec.addParallel(q + "_join").linkAdd("p2");
+            }
+
+            spec.addParallel("p2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testNestedParallelOnBounded() throws Exception {
+        //嵌套的并行网关比线程多（调用线程也运行分支，不会因线程都在等待汇聚而死锁）
+        ExecutorService executor = FlowExecutors.newBounded(2);
+        ExecutorService caller = FlowExecutors.newBounded(1);
+
+        try {
+            for (boolean iterative : new boolean[]{false, true}) {
+                Set<String> leaves = ConcurrentHashMap.newKeySet();
+                Graph graph = createNestedGraph(4, 4, leaves);
+
+                FlowEngine flowEngine = new FlowEngineDefault(SimpleFlowDriver.builder().executor(executor).build(), false)
+                        .iterative(iterative);
+                FlowContext context = FlowContext.of();
+
+                caller.submit(() -> flowEngine.eval(graph, context)).get(10, TimeUnit.SECONDS);
+
+                assertEquals(16, leaves.size());
+                assertEquals("e", context.lastNodeId());
+            }
+        } finally {
+            executor.shutdownNow();
+            caller.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.core.util.RankEntity;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.intercept.FlowInterceptor;
+import org.noear.solon.flow.intercept.FlowInterceptorChain;
+import org.noear.solon.flow.intercept.FlowInvocation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流拦截链（不可变快照）单元测试
+ */
+class FlowInterceptorChainTest {
+
+    static class FlowOnly implements FlowInterceptor {
+        final List<String> log;
+        final String name;
+
+        FlowOnly(List<String> log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+
+        @Override
+        public void interceptFlow(FlowInvocation invocation) throws FlowException {
+            log.add(name);
+            invocation.invoke();
+        }
+    }
+
+    static class NodeStartOnly implements FlowInterceptor {
+        final List<String> log;
+
+        NodeStartOnly(List<String> log) {
+            this.log = log;
+        }
+
+        @Override
+        public void onNodeStart(FlowContext context, Node node) {
+            log.add("start:" + node.getId());
+        }
+    }
+
+    private Graph createGraph() {
+        return Graph.create("chain-graph", spec -> {
+            spec.addStart("s").linkAdd("a");
+            spec.addActivity("a").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testFilter() {
+        List<String> log = new ArrayList<>();
+        FlowInterceptor flowOnly = new FlowOnly(log, "f");
+        FlowInterceptor nodeStartOnly = new NodeStartOnly(log);
+        FlowInterceptor none = new FlowInterceptor() {
+        };
+
+        FlowInterceptorChain chain = FlowInterceptorChain.of(Arrays.asList(
+                new RankEntity<>(nodeStartOnly, 2),
+                new RankEntity<>(flowOnly, 1),
+                new RankEntity<>(none, 0)));
+
+        assertEquals(3, chain.getEntities().size());
+        assertSame(none, chain.getEntities().get(0).target);
+        assertArrayEquals(new FlowInterceptor[]{flowOnly}, chain.getFlowInterceptors());
+        assertArrayEquals(new FlowInterceptor[]{nodeStartOnly}, chain.getNodeStartInterceptors());
+        assertEquals(0, chain.getNodeEndInterceptors().length);
+
+        assertThrows(UnsupportedOperationException.class, () -> chain.getEntities().clear());
+
+        assertSame(FlowInterceptorChain.EMPTY, FlowInterceptorChain.of(new ArrayList<>()));
+        assertSame(chain, chain.merge(new ArrayList<>()));
+    }
+
+    @Test
+    void testEngineAndOptions() {
+        List<String> log = new ArrayList<>();
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        Graph graph = createGraph();
+
+        flowEngine.addInterceptor(new FlowOnly(log, "engine"), 1);
+
+        FlowOptions options = new FlowOptions().interceptorAdd(new FlowOnly(log, "options"), 0);
+
+        for (int i = 0; i < 3; i++) {
+            log.clear();
+            flowEngine.eval(graph, -1, FlowContext.of(), options);
+
+            //按顺位运行，且选项复用时不会重复添加
+            assertEquals(Arrays.asList("options", "engine"), log);
+        }
+
+        //选项不被引擎修改
+        assertEquals(1, options.getInterceptorList().size());
+
+        //引擎拦截器变化后，合并结果重建
+        flowEngine.addInterceptor(new NodeStartOnly(log), 2);
+        log.clear();
+        flowEngine.eval(graph, -1, FlowContext.of(), options);
+        assertEquals(Arrays.asList("options", "engine", "start:s", "start:a", "start:e"), log);
+    }
+
+    @Test
+    void testMergeCache() {
+        List<String> log = new ArrayList<>();
+        FlowOptions engineOptions = new FlowOptions(FlowInterceptorChain.of(Arrays.asList(new RankEntity<>(new FlowOnly(log, "e"), 0))));
+        FlowInterceptorChain engineChain = engineOptions.getInterceptorChain();
+
+        //没有拦截器时，直接使用引擎的
+        assertSame(engineOptions, new FlowOptions().mergeWith(engineChain, engineOptions));
+
+        FlowOptions options = new FlowOptions().interceptorAdd(new FlowOnly(log, "o"));
+        FlowOptions merged = options.mergeWith(engineChain, engineOptions);
+        assertSame(merged, options.mergeWith(engineChain, engineOptions));
+        assertEquals(2, merged.getInterceptorChain().getFlowInterceptors().length);
+
+        options.interceptorAdd(new FlowOnly(log, "o2"));
+        assertNotSame(merged, options.mergeWith(engineChain, engineOptions));
+        assertEquals(3, options.mergeWith(engineChain, engineOptions).getInterceptorList().size());
+
+        assertThrows(UnsupportedOperationException.class, () -> engineOptions.interceptorAdd(new FlowOnly(log, "x")));
+    }
+}
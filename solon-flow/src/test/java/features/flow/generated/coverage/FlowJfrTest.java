@@ -0,0 +1,125 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.jfr.FlowJfr;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流的 JFR 事件单元测试（jdk.jfr 通过反射使用，没有 JFR 时跳过）
+ */
+class FlowJfrTest {
+
+    private Graph createGraph() {
+        return Graph.create("jfr-graph", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when(c -> true))
+                    .linkAdd("e");
+            spec.addActivity("a").task((c, n) -> c.put("a", 1)).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testNotRecording() {
+        if (FlowJfr.isAvailable() == false) {
+            return;
+        }
+
+        assertFalse(FlowJfr.isRecording());
+        assertNull(FlowJfr.beginNode(createGraph().getNodeOrThrow("a")));
+        FlowJfr.commit(null);
+    }
+
+    @Test
+    void testEvents() throws Exception {
+        if (FlowJfr.isAvailable() == false) {
+            return;
+        }
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        File file = File.createTempFile("flow", ".jfr");
+
+        try {
+            recordingClass.getMethod("start").invoke(recording);
+            assertTrue(FlowJfr.isRecording());
+
+            FlowEngine.newInstance(true).eval(createGraph(), FlowContext.of());
+
+            recordingClass.getMethod("stop").invoke(recording);
+            recordingClass.getMethod("dump", Path.class).invoke(recording, file.toPath());
+            assertFalse(FlowJfr.isRecording());
+
+            List<String> nodeRuns = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+
+            Class<?> recordingFileClass = Class.forName("jdk.jfr.consumer.RecordingFile");
+            Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Method getEventType = recordedEventClass.getMethod("getEventType");
+            Method getString = recordedEventClass.getMethod("getString", String.class);
+
+            for (Object event : (List<?>) recordingFileClass.getMethod("readAllEvents", Path.class).invoke(null, file.toPath())) {
+                Object eventType = getEventType.invoke(event);
+                String name = (String) eventType.getClass().getMethod("getName").invoke(eventType);
+
+                if (name.startsWith("solon.flow.")) {
+                    names.add(name);
+                    assertEquals("jfr-graph", getString.invoke(event, "graphId"));
+
+                    if (name.equals("solon.flow.NodeRun")) {
+                        nodeRuns.add(getString.invoke(event, "nodeId") + ":" + getString.invoke(event, "nodeType"));
+                    }
+                }
+            }
+
+            assertTrue(names.contains("solon.flow.FlowEval"));
+            assertTrue(names.contains("solon.flow.ConditionEval"));
+            assertTrue(names.contains("solon.flow.TaskRun"));
+            assertTrue(nodeRuns.contains("s:START"));
+            assertTrue(nodeRuns.contains("x:EXCLUSIVE"));
+            assertTrue(nodeRuns.contains("a:ACTIVITY"));
+            assertTrue(nodeRuns.contains("e:END"));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+            file.delete();
+        }
+    }
+
+    @Test
+    void testDisabledEvent() throws Exception {
+        if (FlowJfr.isAvailable() == false) {
+            return;
+        }
+
+        Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+        Object recording = recordingClass.getConstructor().newInstance();
+        Node node = createGraph().getNodeOrThrow("a");
+
+        try {
+            //记录在运行，但节点事件未启用
+            recordingClass.getMethod("disable", String.class).invoke(recording, "solon.flow.NodeRun");
+            recordingClass.getMethod("start").invoke(recording);
+            assertTrue(FlowJfr.isRecording());
+
+            assertNull(FlowJfr.beginNode(node));
+
+            Object event = FlowJfr.beginJoin(node);
+            assertNotNull(event);
+            FlowJfr.commit(event);
+
+            recordingClass.getMethod("stop").invoke(recording);
+            assertNull(FlowJfr.beginJoin(node));
+        } finally {
+            recordingClass.getMethod("close").invoke(recording);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.intercept.FlowMetricsInterceptor;
+import org.noear.solon.flow.intercept.FlowMetricsSnapshot;
+import org.noear.solon.flow.util.LatencyHistogram;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流指标拦截器单元测试
+ */
+class FlowMetricsInterceptorTest {
+
+    private Graph createGraph() {
+        return Graph.create("metrics-graph", spec -> {
+            spec.addStart("s").linkAdd("a");
+            spec.addActivity("a").task((c, n) -> {
+                if (c.<Boolean>getOrDefault("fail", false)) {
+                    throw new IllegalStateException("fail");
+                }
+
+                Thread.sleep(2);
+            }).linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("b", l -> l.when(c -> c.<Boolean>getOrDefault("stop", false)))
+                    .linkAdd("e");
+            spec.addActivity("b").task((c, n) -> c.stop()).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testCounts() {
+        FlowMetricsInterceptor metrics = new FlowMetricsInterceptor();
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        flowEngine.addInterceptor(metrics);
+        Graph graph = createGraph();
+
+        for (int i = 0; i < 5; i++) {
+            flowEngine.eval(graph, FlowContext.of());
+        }
+
+        FlowMetricsSnapshot graphSnapshot = metrics.snapshot("metrics-graph");
+        assertEquals(5, graphSnapshot.getCount());
+        assertEquals(0, graphSnapshot.getErrorCount());
+        assertNull(graphSnapshot.getNodeId());
+
+        FlowMetricsSnapshot nodeSnapshot = metrics.snapshot("metrics-graph", "a");
+        assertEquals(5, nodeSnapshot.getCount());
+        assertEquals("a", nodeSnapshot.getNodeId());
+        assertTrue(nodeSnapshot.getLatency().getPercentile(50) >= 2_000_000L);
+        assertTrue(nodeSnapshot.getLatency().getMax() >= nodeSnapshot.getLatency().getPercentile(99));
+
+        assertEquals(5, metrics.snapshot("metrics-graph", "e").getCount());
+        assertNull(metrics.snapshot("metrics-graph", "b"));
+        assertNull(metrics.snapshot("none"));
+
+        //图 + 节点（s, a, x, e）
+        List<FlowMetricsSnapshot> all = metrics.snapshot();
+        assertEquals(5, all.size());
+        assertNull(all.get(0).getNodeId());
+    }
+
+    @Test
+    void testError() {
+        FlowMetricsInterceptor metrics = new FlowMetricsInterceptor();
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        flowEngine.addInterceptor(metrics);
+        Graph graph = createGraph();
+
+        FlowContext context = FlowContext.of();
+        context.put("fail", true);
+        assertThrows(FlowException.class, () -> flowEngine.eval(graph, context));
+
+        flowEngine.eval(graph, FlowContext.of());
+
+        assertEquals(2, metrics.snapshot("metrics-graph").getCount());
+        assertEquals(1, metrics.snapshot("metrics-graph").getErrorCount());
+        assertEquals(2, metrics.snapshot("metrics-graph", "a").getCount());
+        assertEquals(1, metrics.snapshot("metrics-graph", "a").getErrorCount());
+        assertEquals(0, metrics.snapshot("metrics-graph", "s").getErrorCount());
+    }
+
+    @Test
+    void testStop() {
+        FlowMetricsInterceptor metrics = new FlowMetricsInterceptor();
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        flowEngine.addInterceptor(metrics);
+        Graph graph = createGraph();
+
+        FlowContext context = FlowContext.of();
+        context.put("stop", true);
+        flowEngine.eval(graph, context);
+
+        //被停止的节点没有 onNodeEnd，不计入
+        assertEquals(1, metrics.snapshot("metrics-graph").getCount());
+        assertNull(metrics.snapshot("metrics-graph", "b"));
+        assertNull(metrics.snapshot("metrics-graph", "e"));
+
+        metrics.reset();
+        assertTrue(metrics.snapshot().isEmpty());
+    }
+
+    @Test
+    void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        histogram.record(-1);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(1_000_000L, snapshot.getMax());
+        assertEquals(500_500_000L, snapshot.getSum());
+
+        //相对误差不超过 12.5%
+        long p50 = snapshot.getPercentile(50);
+        assertTrue(p50 >= 500_000L && p50 <= 500_000L * 1.125, String.valueOf(p50));
+        long p99 = snapshot.getPercentile(99);
+        assertTrue(p99 >= 990_000L && p99 <= 1_000_000L, String.valueOf(p99));
+        assertEquals(0, snapshot.getPercentile(0));
+        assertEquals(1_000_000L, snapshot.getPercentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshot().getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getPercentile(99));
+    }
+}
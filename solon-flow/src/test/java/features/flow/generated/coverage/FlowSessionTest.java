@@ -0,0 +1,175 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.intercept.FlowInterceptor;
+import org.noear.solon.flow.intercept.FlowInvocation;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流运行会话单元测试
+ */
+class FlowSessionTest {
+
+    private Graph createGraph() {
+        return Graph.create("session-graph", spec -> {
+            spec.addStart("s").linkAdd("p1");
+            spec.addParallel("p1").linkAdd("a").linkAdd("b");
+            spec.addActivity("a").task((c, n) -> c.put("a", c.<Integer>getOrDefault("v", 0) + 1)).linkAdd("p2");
+            spec.addActivity("b").task((c, n) -> c.put("b", c.<Integer>getOrDefault("v", 0) + 2)).linkAdd("p2");
+            spec.addParallel("p2").linkAdd("c");
+            spec.addActivity("c").task((c, n) -> c.put("result", c.<Integer>getAs("a") + c.<Integer>getAs("b"))).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testReuse() {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        Graph graph = createGraph();
+
+        FlowSession first;
+        try (FlowSession session = flowEngine.openSession()) {
+            first = session;
+            session.context().put("v", 1);
+            session.eval(graph);
+
+            assertEquals(5, session.context().<Integer>getAs("result"));
+            assertTrue(session.context().trace().isEnd(graph.getId()));
+        }
+
+        assertTrue(first.isClosed());
+        assertThrows(IllegalStateException.class, first::context);
+
+        for (int i = 0; i < 10; i++) {
+            try (FlowSession session = flowEngine.openSession()) {
+                //同一线程复用，且已重置
+                assertSame(first, session);
+                assertNull(session.context().get("v"));
+                assertNull(session.context().get("result"));
+                assertEquals("", session.context().getInstanceId());
+                assertNull(session.context().lastNodeId());
+
+                session.context().put("v", i);
+                session.eval(graph);
+
+                //汇聚计数已重置，仍能正常汇聚
+                assertEquals(i * 2 + 3, session.context().<Integer>getAs("result"));
+            }
+        }
+    }
+
+    @Test
+    void testNested() {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+
+        try (FlowSession session1 = flowEngine.openSession()) {
+            try (FlowSession session2 = flowEngine.openSession()) {
+                assertNotSame(session1, session2);
+                assertNotSame(session1.context(), session2.context());
+            }
+
+            assertFalse(session1.isClosed());
+        }
+    }
+
+    @Test
+    void testThread() throws Exception {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        FlowSession[] holder = new FlowSession[2];
+
+        try (FlowSession session = flowEngine.openSession()) {
+            holder[0] = session;
+        }
+
+        Thread thread = new Thread(() -> {
+            try (FlowSession session = flowEngine.openSession()) {
+                holder[1] = session;
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertNotSame(holder[0], holder[1]);
+    }
+
+    @Test
+    void testReset() {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        Graph graph = createGraph();
+
+        try (FlowSession session = flowEngine.openSession()) {
+            session.context().put("v", 1);
+            session.eval(graph);
+
+            session.reset("i2");
+            assertEquals("i2", session.context().getInstanceId());
+            assertNull(session.context().get("result"));
+
+            session.eval(graph);
+            assertEquals(3, session.context().<Integer>getAs("result"));
+        }
+    }
+
+    @Test
+    void testInterceptor() {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        Graph graph = createGraph();
+        AtomicInteger flowCount = new AtomicInteger();
+        AtomicInteger nodeCount = new AtomicInteger();
+
+        flowEngine.addInterceptor(new FlowInterceptor() {
+            @Override
+            public void interceptFlow(FlowInvocation invocation) throws FlowException {
+                flowCount.incrementAndGet();
+                invocation.invoke();
+            }
+        });
+
+        for (int i = 0; i < 3; i++) {
+            try (FlowSession session = flowEngine.openSession()) {
+                session.eval(graph);
+            }
+        }
+
+        //默认选项复用，引擎拦截器不会重复添加
+        assertEquals(3, flowCount.get());
+
+        //拦截器变化后，默认选项重建
+        flowEngine.addInterceptor(new FlowInterceptor() {
+            @Override
+            public void onNodeStart(FlowContext context, Node node) {
+                nodeCount.incrementAndGet();
+            }
+        });
+
+        flowEngine.eval(graph);
+        assertEquals(4, flowCount.get());
+        assertEquals(7, nodeCount.get());
+    }
+
+    @Test
+    void testEngineCollectable() throws Exception {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+        Graph graph = createGraph();
+
+        try (FlowSession session = flowEngine.openSession()) {
+            session.eval(graph);
+        }
+
+        //线程复用的会话，不会一直引用引擎
+        WeakReference<FlowEngine> engineRef = new WeakReference<>(flowEngine);
+        flowEngine = null;
+
+        for (int i = 0; i < 50 && engineRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertNull(engineRef.get());
+    }
+}
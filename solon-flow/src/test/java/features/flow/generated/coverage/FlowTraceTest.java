@@ -6,6 +6,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.Collection;
+import java.util.List;
 
 import org.noear.solon.flow.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -210,4 +211,160 @@ class FlowTraceTest {
             trace.recordNodeId(null, "node");
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void testHistoryDisabledByDefault() {
+        assertFalse(trace.isHistoryEnabled());
+        trace.recordNodeId(graph, "a1");
+        assertTrue(trace.history().isEmpty());
+    }
+
+    @Test
+    void testHistory() {
+        trace.enableHistory(8);
+        assertTrue(trace.isHistoryEnabled());
+
+        trace.recordNodeId(graph, "s");
+        trace.recordNodeId(graph, "a1");
+        trace.recordNodeId(graph, "e");
+
+        List<NodeRecord> history = trace.history();
+        assertEquals(3, history.size());
+        assertEquals("s", history.get(0).getId());
+        assertEquals("a1", history.get(1).getId());
+        assertEquals("e", history.get(2).getId());
+        assertEquals("test-graph", history.get(2).getGraphId());
+        assertTrue(history.get(0).getTimestamp() > 0);
+
+        //最后记录由访问历史派生
+        assertEquals("e", trace.lastNodeId("test-graph"));
+        assertEquals("e", trace.lastNode(graph).getId());
+        assertTrue(trace.isEnd("test-graph"));
+        assertEquals(1, trace.lastRecords().size());
+    }
+
+    @Test
+    void testHistoryWrap() {
+        trace.enableHistory(2);
+
+        trace.recordNodeId(graph, "s");
+        trace.recordNodeId(graph, "a1");
+        trace.recordNodeId(graph, "e");
+
+        List<NodeRecord> history = trace.history();
+        assertEquals(2, history.size());
+        assertEquals("a1", history.get(0).getId());
+        assertEquals("e", history.get(1).getId());
+    }
+
+    @Test
+    void testHistoryLastSurvivesWrap() {
+        Graph other = Graph.create("other-graph", spec -> {
+            spec.addStart("s").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        trace.enableHistory(2);
+
+        trace.recordNodeId(graph, "a1");
+        trace.recordNodeId(other, "s");
+        trace.recordNodeId(other, "e");
+
+        //已被环形缓冲覆盖，最后记录仍在
+        assertEquals("a1", trace.lastNodeId("test-graph"));
+        assertEquals("e", trace.lastNodeId("other-graph"));
+    }
+
+    @Test
+    void testHistoryRemoveAndClear() {
+        trace.recordNodeId(graph, "a1");
+        trace.enableHistory(4);
+        assertEquals("a1", trace.lastNodeId("test-graph"));
+
+        trace.recordNodeId(graph, null);
+        assertNull(trace.lastNodeId("test-graph"));
+        assertTrue(trace.lastRecords().isEmpty());
+        assertTrue(trace.history().isEmpty());
+
+        trace.recordNodeId(graph, "e");
+        trace.clear();
+        assertNull(trace.lastNodeId("test-graph"));
+        assertTrue(trace.history().isEmpty());
+        assertTrue(trace.isHistoryEnabled());
+    }
+
+    @Test
+    void testHistoryDisable() {
+        trace.enableHistory(4);
+        trace.recordNodeId(graph, "a1");
+
+        //停用时，最后记录转回常规记录
+        trace.enableHistory(0);
+        assertFalse(trace.isHistoryEnabled());
+        assertEquals("a1", trace.lastNodeId("test-graph"));
+    }
+
+    @Test
+    void testHistoryConcurrent() throws Exception {
+        trace.enableHistory(64);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    trace.recordNodeId(graph, "a1");
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        trace.recordNodeId(graph, "e");
+
+        //环形缓冲写满，最后记录为最后写入的
+        List<NodeRecord> history = trace.history();
+        assertEquals(64, history.size());
+        assertEquals("e", history.get(63).getId());
+        assertEquals("e", trace.lastNodeId("test-graph"));
+    }
+
+    @Test
+    void testHistoryClearWhileRecording() throws Exception {
+        trace.enableHistory(64);
+
+        //不建议在记录时清空，但不能出错
+        List<Throwable> errors = new java.util.concurrent.CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 5000; i++) {
+                        trace.recordNodeId(graph, "a1");
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            trace.clear();
+            trace.history();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(errors.isEmpty(), errors.toString());
+
+        trace.clear();
+        trace.recordNodeId(graph, "e");
+        assertEquals(1, trace.history().size());
+        assertEquals("e", trace.lastNodeId("test-graph"));
+    }
+}
@@ -0,0 +1,111 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GraphPlan 单元测试
+ */
+class GraphPlanTest {
+
+    private Graph createGraph() {
+        return Graph.create("plan-graph", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when("v > 5").priority(1))
+                    .linkAdd("b");
+            spec.addActivity("a").linkAdd("l1");
+            spec.addActivity("b").linkAdd("l1");
+            spec.addLoop("l1").metaPut("$for", "item").metaPut("$in", Arrays.asList(1, 2)).linkAdd("c");
+            spec.addActivity("c").linkAdd("l2");
+            spec.addLoop("l2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testNodeIndex() {
+        Graph graph = createGraph();
+
+        int i = 0;
+        for (Node node : graph.getNodes().values()) {
+            assertEquals(i++, node.getIndex());
+        }
+    }
+
+    @Test
+    void testPlanCached() {
+        Graph graph = createGraph();
+
+        assertSame(graph.getPlan(), graph.getPlan());
+        assertEquals(graph.getNodes().size(), graph.getPlan().size());
+        assertSame(graph.getStart(), graph.getPlan().getStart().getNode());
+    }
+
+    @Test
+    void testKinds() {
+        Graph graph = createGraph();
+        GraphPlan plan = graph.getPlan();
+
+        assertEquals(NodePlan.KIND_START, plan.get(graph.getNode("s")).getKind());
+        assertEquals(NodePlan.KIND_EXCLUSIVE, plan.get(graph.getNode("x")).getKind());
+        assertEquals(NodePlan.KIND_ACTIVITY, plan.get(graph.getNode("a")).getKind());
+        assertEquals(NodePlan.KIND_LOOP_OUT, plan.get(graph.getNode("l1")).getKind());
+        assertEquals(NodePlan.KIND_LOOP_IN, plan.get(graph.getNode("l2")).getKind());
+        assertEquals(NodePlan.KIND_END, plan.get(graph.getNode("e")).getKind());
+
+        assertEquals("item", plan.get(graph.getNode("l1")).getForKey());
+    }
+
+    @Test
+    void testLinks() {
+        Graph graph = createGraph();
+        NodePlan x = graph.getPlan().get(graph.getNode("x"));
+
+        assertEquals(2, x.size());
+        //按优先级排序
+        assertEquals("a", x.getTarget(0).getNode().getId());
+        assertNotNull(x.getWhen(0));
+        //空条件预先消除
+        assertNull(x.getWhen(1));
+        assertEquals(1, x.getDefaultIndex());
+    }
+
+    @Test
+    void testPrevCount() {
+        Graph graph = createGraph();
+        GraphPlan plan = graph.getPlan();
+
+        assertEquals(0, plan.get(graph.getNode("s")).getPrevCount());
+        assertEquals(2, plan.get(graph.getNode("l1")).getPrevCount());
+        assertEquals(graph.getNode("l1").getPrevLinks().size(), plan.get(graph.getNode("l1")).getPrevCount());
+    }
+
+    @Test
+    void testEvalWithPlan() {
+        Graph graph = Graph.create("plan-eval", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when(c -> c.<Integer>getAs("v") > 5))
+                    .linkAdd("b");
+            spec.addActivity("a").task((c, n) -> c.put("result", "a")).linkAdd("e");
+            spec.addActivity("b").task((c, n) -> c.put("result", "b")).linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        flowEngine.load(graph);
+
+        FlowContext context = FlowContext.of().put("v", 6);
+        flowEngine.eval(graph.getId(), context);
+        assertEquals("a", context.getAs("result"));
+
+        context = FlowContext.of().put("v", 1);
+        flowEngine.eval(graph.getId(), context);
+        assertEquals("b", context.getAs("result"));
+    }
+}
@@ -0,0 +1,104 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 图注册表（写时复制）单元测试
+ */
+class GraphRegistryTest {
+
+    private Graph createGraph(String id, String result) {
+        return Graph.create(id, spec -> {
+            spec.addStart("s").linkAdd("a");
+            spec.addActivity("a").task((c, n) -> c.put("result", result)).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testLoadBatch() {
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        flowEngine.load(Arrays.asList(createGraph("g1", "v1"), createGraph("g2", "v1")));
+
+        assertEquals(2, flowEngine.getGraphs().size());
+        assertNotNull(flowEngine.getGraph("g1"));
+        assertNotNull(flowEngine.getGraph("g2"));
+
+        flowEngine.unload("g1");
+        assertNull(flowEngine.getGraph("g1"));
+        assertEquals(1, flowEngine.getGraphs().size());
+    }
+
+    @Test
+    void testReload() {
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        flowEngine.load(Arrays.asList(createGraph("g1", "v1"), createGraph("g2", "v1")));
+
+        Collection<Graph> before = flowEngine.getGraphs();
+        Graph g1Old = flowEngine.getGraph("g1");
+
+        flowEngine.reload(Arrays.asList(createGraph("g1", "v2"), createGraph("g3", "v2")));
+
+        //新版本一次性发布
+        assertNull(flowEngine.getGraph("g2"));
+        assertNotNull(flowEngine.getGraph("g3"));
+        assertNotSame(g1Old, flowEngine.getGraph("g1"));
+
+        //旧版本仍然有效
+        assertEquals(2, before.size());
+        FlowContext context = FlowContext.of();
+        flowEngine.eval(g1Old, context);
+        assertEquals("v1", context.get("result"));
+
+        context = FlowContext.of();
+        flowEngine.eval("g1", context);
+        assertEquals("v2", context.get("result"));
+    }
+
+    @Test
+    void testConcurrentReload() throws Exception {
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        flowEngine.load(createGraph("g1", "v0"));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> errorRef = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (running.get()) {
+                    FlowContext context = FlowContext.of();
+                    flowEngine.eval("g1", context);
+                    assertNotNull(context.get("result"));
+                }
+            } catch (Throwable e) {
+                errorRef.set(e);
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 200; i++) {
+            flowEngine.reload(Arrays.asList(createGraph("g1", "v" + i)));
+        }
+
+        running.set(false);
+        reader.join();
+
+        assertNull(errorRef.get());
+    }
+
+    @Test
+    void testSimplified() {
+        FlowEngine flowEngine = FlowEngine.newInstance(true);
+
+        assertThrows(UnsupportedOperationException.class, () -> flowEngine.load(createGraph("g1", "v1")));
+        assertTrue(flowEngine.getGraphs().isEmpty());
+    }
+}
@@ -0,0 +1,97 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 迭代遍历模式 单元测试
+ */
+class IterativeTraversalTest {
+
+    private Graph createGraph(List<String> log) {
+        return Graph.create("iter-graph", spec -> {
+            spec.addStart("s").linkAdd("p1");
+            spec.addParallel("p1").linkAdd("a").linkAdd("b");
+            spec.addActivity("a").task((c, n) -> log.add("a")).linkAdd("p2");
+            spec.addActivity("b").task((c, n) -> log.add("b")).linkAdd("p2");
+            spec.addParallel("p2").linkAdd("i1");
+            spec.addInclusive("i1")
+                    .linkAdd("c", l -> l.when(c -> true))
+                    .linkAdd("d", l -> l.when(c -> false))
+                    .linkAdd("e");
+            spec.addActivity("c").task((c, n) -> log.add("c")).linkAdd("i2");
+            spec.addActivity("d").task((c, n) -> log.add("d")).linkAdd("i2");
+            spec.addActivity("e").task((c, n) -> log.add("e")).linkAdd("i2");
+            spec.addInclusive("i2").linkAdd("l1");
+            spec.addLoop("l1").metaPut("$for", "item").metaPut("$in", Arrays.asList(1, 2, 3)).linkAdd("f");
+            spec.addActivity("f").task((c, n) -> log.add("f" + c.get("item"))).linkAdd("l2");
+            spec.addLoop("l2").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("g", l -> l.when(c -> c.<Integer>getAs("item") > 2))
+                    .linkAdd("h");
+            spec.addActivity("g").task((c, n) -> log.add("g")).linkAdd("end");
+            spec.addActivity("h").task((c, n) -> log.add("h")).linkAdd("end");
+            spec.addEnd("end");
+        });
+    }
+
+    @Test
+    void testSameOrder() {
+        List<String> log1 = new ArrayList<>();
+        FlowEngine flowEngine = new FlowEngineDefault(null, false);
+        flowEngine.eval(createGraph(log1), FlowContext.of());
+
+        List<String> log2 = new ArrayList<>();
+        FlowEngine iterEngine = new FlowEngineDefault(null, false).iterative(true);
+        iterEngine.eval(createGraph(log2), FlowContext.of());
+
+        assertEquals(Arrays.asList("a", "b", "c", "e", "f1", "f2", "f3", "g"), log1);
+        assertEquals(log1, log2);
+    }
+
+    @Test
+    void testLongChain() {
+        int size = 20_000;
+
+        Graph graph = Graph.create("iter-chain", spec -> {
+            spec.addStart("s").linkAdd("n0");
+            for (int i = 0; i < size; i++) {
+                spec.addActivity("n" + i)
+                        .task((c, n) -> c.put("count", c.<Integer>getOrDefault("count", 0) + 1))
+                        .linkAdd(i + 1 < size ? "n" + (i + 1) : "end");
+            }
+            spec.addEnd("end");
+        });
+
+        FlowEngine flowEngine = new FlowEngineDefault(null, false).iterative(true);
+        FlowContext context = FlowContext.of();
+        flowEngine.eval(graph, context);
+
+        assertEquals(size, context.<Integer>getAs("count"));
+        assertEquals("end", context.lastNodeId());
+    }
+
+    @Test
+    void testStopAndResume() {
+        Graph graph = Graph.create("iter-stop", spec -> {
+            spec.addStart("s").linkAdd("a");
+            spec.addActivity("a").task((c, n) -> c.stop()).linkAdd("b");
+            spec.addActivity("b").task((c, n) -> c.put("b", true)).linkAdd("end");
+            spec.addEnd("end");
+        });
+
+        FlowEngine flowEngine = new FlowEngineDefault(null, false).iterative(true);
+        FlowContext context = FlowContext.of();
+
+        flowEngine.eval(graph, context);
+        assertTrue(context.isStopped());
+        assertEquals("a", context.lastNodeId());
+        assertNull(context.get("b"));
+    }
+}
@@ -0,0 +1,202 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.driver.SimpleFlowDriver;
+import org.noear.solon.flow.util.FlowExecutors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 循环并行遍历（$parallel, $chunk）单元测试
+ */
+class LoopParallelTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private Graph createGraph(int parallel, int chunk) {
+        return Graph.create("loop-parallel", spec -> {
+            spec.addStart("s").linkAdd("l1");
+            spec.addLoop("l1")
+                    .metaPut("$for", "item")
+                    .metaPut("$in", "list")
+                    .metaPut("$parallel", parallel)
+                    .metaPut("$chunk", chunk)
+                    .linkAdd("a");
+            spec.addActivity("a").task((c, n) -> {
+                c.<AtomicInteger>getAs("sum").addAndGet(c.<Integer>getAs("item"));
+                c.<Set<String>>getAs("threads").add(Thread.currentThread().getName());
+                c.put("local", c.get("item")); //只写入本项的叠加层
+            }).linkAdd("l2");
+            spec.addLoop("l2").linkAdd("b");
+            spec.addActivity("b").task((c, n) -> c.put("joined", c.<AtomicInteger>getAs("sum").get())).linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    private FlowContext createContext(int size) {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            list.add(i);
+        }
+
+        return FlowContext.of()
+                .put("list", list)
+                .put("sum", new AtomicInteger())
+                .put("threads", ConcurrentHashMap.newKeySet());
+    }
+
+    private void assertJoined(FlowContext context, int size) {
+        int expected = size * (size + 1) / 2;
+
+        assertEquals(expected, context.<AtomicInteger>getAs("sum").get());
+        assertEquals(expected, context.<Integer>getAs("joined"));
+        assertNull(context.get("local"));
+        assertNull(context.get("item"));
+        assertEquals("e", context.lastNodeId());
+    }
+
+    @Test
+    void testParallel() {
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+        FlowContext context = createContext(1000);
+
+        flowEngine.eval(createGraph(4, 50), context);
+
+        assertJoined(context, 1000);
+    }
+
+    @Test
+    void testParallelIterative() {
+        FlowEngine flowEngine = new FlowEngineDefault(SimpleFlowDriver.builder().executor(executor).build(), false)
+                .iterative(true);
+        FlowContext context = createContext(1000);
+
+        flowEngine.eval(createGraph(4, 1), context);
+
+        assertJoined(context, 1000);
+    }
+
+    @Test
+    void testParallelAsync() throws Exception {
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+        FlowContext context = createContext(100);
+
+        flowEngine.evalAsync(createGraph(3, 7), context)
+                .toCompletableFuture()
+                .get(10, TimeUnit.SECONDS);
+
+        assertJoined(context, 100);
+    }
+
+    @Test
+    void testWithoutExecutor() {
+        //没有执行器时，按顺序遍历
+        FlowEngine flowEngine = FlowEngine.newInstance();
+        FlowContext context = createContext(10);
+
+        flowEngine.eval(createGraph(4, 1), context);
+
+        assertEquals(55, context.<Integer>getAs("joined"));
+        assertEquals(10, context.<Integer>getAs("item"));
+        assertEquals(1, context.<Set<String>>getAs("threads").size());
+    }
+
+    @Test
+    void testStop() {
+        Graph graph = Graph.create("loop-parallel-stop", spec -> {
+            spec.addStart("s").linkAdd("l1");
+            spec.addLoop("l1")
+                    .metaPut("$for", "item")
+                    .metaPut("$in", "1...1000")
+                    .metaPut("$parallel", "2")
+                    .linkAdd("a");
+            spec.addActivity("a").task((c, n) -> {
+                if (c.<Integer>getAs("item") == 10) {
+                    c.stop();
+                }
+            }).linkAdd("l2");
+            spec.addLoop("l2").linkAdd("b");
+            spec.addActivity("b").task((c, n) -> c.put("joined", true)).linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+        FlowContext context = FlowContext.of();
+        flowEngine.eval(graph, context);
+
+        assertTrue(context.isStopped());
+        assertNull(context.get("joined"));
+    }
+
+    @Test
+    void testCallerAsWorker() throws Exception {
+        //调用线程本身就在（单线程的）执行器上：它也作为工作者，不会等待排队中的工作者
+        ExecutorService bounded = FlowExecutors.newBounded(1);
+
+        try {
+            for (boolean iterative : new boolean[]{false, true}) {
+                FlowEngine flowEngine = new FlowEngineDefault(SimpleFlowDriver.builder().executor(bounded).build(), false)
+                        .iterative(iterative);
+                FlowContext context = createContext(100);
+
+                bounded.submit(() -> flowEngine.eval(createGraph(4, 3), context)).get(10, TimeUnit.SECONDS);
+
+                assertJoined(context, 100);
+            }
+        } finally {
+            bounded.shutdownNow();
+        }
+    }
+
+    @Test
+    void testItemTrace() {
+        Set<Object> traces = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+        Graph graph = Graph.create("loop-parallel-trace", spec -> {
+            spec.addStart("s").linkAdd("l1");
+            spec.addLoop("l1")
+                    .metaPut("$for", "item")
+                    .metaPut("$in", "1...21")
+                    .metaPut("$parallel", "4")
+                    .linkAdd("a");
+            spec.addActivity("a").task((c, n) -> {
+                //每项各自的痕迹（并行的项不会相互覆盖）
+                traces.add(c.trace());
+                assertEquals("a", c.lastNodeId());
+            }).linkAdd("l2");
+            spec.addLoop("l2").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder().executor(executor).build());
+        FlowContext context = FlowContext.of();
+        flowEngine.eval(graph, context);
+
+        assertEquals(20, traces.size());
+        assertFalse(traces.contains(context.trace()));
+        assertEquals("e", context.lastNodeId());
+    }
+}
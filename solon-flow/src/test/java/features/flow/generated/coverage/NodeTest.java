@@ -102,4 +102,75 @@ class NodeTest {
         assertTrue(endNode.getNextNodes().isEmpty());
         assertNull(endNode.getNextNode());
     }
+
+    @Test
+    void testAdjacencyPrebuilt() {
+        Graph graph = Graph.create("adjacency-graph", spec -> {
+            spec.addStart("s").linkAdd("p1");
+            spec.addParallel("p1").linkAdd("a").linkAdd("b", l -> l.priority(9));
+            spec.addActivity("a").linkAdd("p2");
+            spec.addActivity("b").linkAdd("p2");
+            spec.addParallel("p2").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        Node p1 = graph.getNode("p1");
+        Node p2 = graph.getNode("p2");
+
+        //正向（按优先级排序）
+        assertEquals(Arrays.asList("b", "a"), nodeIds(p1.getNextNodes()));
+        assertSame(graph.getNode("b"), p1.getNextLinks().get(0).getNextNode());
+
+        //反向
+        assertEquals(Arrays.asList("a", "b"), nodeIds(p2.getPrevNodes()));
+        assertEquals(2, p2.getPrevLinks().size());
+        assertSame(p2.getPrevLinks(), p2.getPrevLinks());
+        assertSame(p2, p2.getPrevLinks().get(0).getNextNode());
+
+        //开始与结束
+        assertTrue(graph.getStart().getPrevLinks().isEmpty());
+        assertTrue(graph.getNode("e").getNextNodes().isEmpty());
+
+        //不可变
+        assertThrows(UnsupportedOperationException.class, () -> p2.getPrevNodes().add(p1));
+    }
+
+    @Test
+    void testAdjacencyConcurrentFirstUse() throws Exception {
+        Graph graph = Graph.create("adjacency-concurrent", spec -> {
+            spec.addStart("s").linkAdd("j");
+            for (int i = 0; i < 50; i++) {
+                spec.addActivity("a" + i).linkAdd("j");
+            }
+            spec.addParallel("j").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        Node join = graph.getNode("j");
+        List<Thread> threads = new ArrayList<>();
+        List<Integer> sizes = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> sizes.add(join.getPrevNodes().size()));
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8, sizes.size());
+        for (Integer size : sizes) {
+            assertEquals(51, size);
+        }
+    }
+
+    private List<String> nodeIds(List<Node> nodes) {
+        List<String> ids = new ArrayList<>();
+        for (Node node : nodes) {
+            ids.add(node.getId());
+        }
+        return ids;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.util.ScriptCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ScriptCache（有界脚本编译缓存）单元测试
+ */
+class ScriptCacheTest {
+
+    @Test
+    void testCompileOnce() {
+        ScriptCache<String> cache = new ScriptCache<>();
+        AtomicInteger compiles = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("A > 1", cache.get("a > 1", c -> {
+                compiles.incrementAndGet();
+                return c.toUpperCase();
+            }));
+        }
+
+        assertEquals(1, compiles.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void testEviction() {
+        ScriptCache<String> cache = new ScriptCache<>(2);
+        AtomicInteger compiles = new AtomicInteger();
+
+        cache.get("a", c -> c + compiles.incrementAndGet());
+        cache.get("b", c -> c + compiles.incrementAndGet());
+        cache.get("a", c -> c + compiles.incrementAndGet()); //a 最近使用过
+        cache.get("c", c -> c + compiles.incrementAndGet()); //淘汰 b
+
+        assertEquals(2, cache.size());
+        assertEquals(3, compiles.get());
+
+        assertEquals("a1", cache.get("a", c -> c + compiles.incrementAndGet()));
+        assertEquals("b4", cache.get("b", c -> c + compiles.incrementAndGet()));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testMaxSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ScriptCache<>(0));
+        assertEquals(ScriptCache.DEFAULT_MAX_SIZE, new ScriptCache<>().maxSize());
+    }
+}
@@ -0,0 +1,34 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.util.ScriptNames;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ScriptNames（脚本标识符扫描）单元测试
+ */
+class ScriptNamesTest {
+
+    @Test
+    void testScan() {
+        List<String> names = new ArrayList<>();
+        ScriptNames.scan("context.put(\"result\", a1 + _b) && $c > 10", names::add);
+
+        assertEquals(Arrays.asList("context", "put", "result", "a1", "_b", "$c"), names);
+    }
+
+    @Test
+    void testScanEmpty() {
+        List<String> names = new ArrayList<>();
+        ScriptNames.scan(null, names::add);
+        ScriptNames.scan("", names::add);
+        ScriptNames.scan("1 + 2 > 3", names::add);
+
+        assertTrue(names.isEmpty());
+    }
+}
@@ -0,0 +1,138 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+import org.noear.solon.flow.driver.SimpleFlowDriver;
+import org.noear.solon.flow.evaluation.StructuredCondition;
+import org.noear.solon.flow.evaluation.StructuredEvaluation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 结构化条件（编译为断言链）单元测试
+ */
+class StructuredEvaluationTest {
+
+    private boolean test(String code, FlowContext context) {
+        Predicate<FlowContext> predicate = StructuredCondition.compile(code);
+        assertNotNull(predicate, code);
+        return predicate.test(context);
+    }
+
+    @Test
+    void testTuple() {
+        FlowContext context = FlowContext.of().put("a", 13).put("b", 1).put("c", "x").put("d", true).put("f", 1.5D);
+
+        assertTrue(test("(a,>,12)", context));
+        assertFalse(test("(a,<,12)", context));
+        assertTrue(test("(a,>,12) and (b,=,1)", context));
+        assertTrue(test("(a , >= , 13) && (b,==,1)", context));
+        assertFalse(test("(a,>,12) and (b,!=,1)", context));
+        assertTrue(test("(a,>,20) or (b,=,1)", context));
+        assertTrue(test("(a,>,20) and (b,=,2) OR (c,=,'x')", context));
+        assertFalse(test("(a,>,20) or (b,=,2) and (c,=,'x')", context));
+        assertTrue(test("(c,<>,'y') || (c,=,x)", context));
+        assertTrue(test("(c,=,'a, (b)')", FlowContext.of().put("c", "a, (b)")));
+        assertTrue(test("(d,=,true)", context));
+        assertTrue(test("(f,>,1.2)", context));
+        assertTrue(test("(f,<=,2)", context));
+
+        //没有值
+        assertTrue(test("(x,=,null)", context));
+        assertFalse(test("(x,=,1)", context));
+        assertTrue(test("(x,!=,1)", context));
+        assertFalse(test("(x,>,1)", context));
+        assertFalse(test("(c,=,null)", context));
+        assertFalse(test("(c,=,'null')", FlowContext.of()));
+    }
+
+    @Test
+    void testNumericText() {
+        FlowContext context = FlowContext.of().put("a", "9").put("b", "1.5").put("c", "x9");
+
+        //文本值按数字比较（按文本比较时 "9" > "12"）
+        assertTrue(test("(a,<,12)", context));
+        assertFalse(test("(a,>,12)", context));
+        assertTrue(test("(a,=,9)", context));
+        assertTrue(test("(a,=,9.0)", context));
+        assertTrue(test("(b,<,2)", context));
+        assertTrue(test("[{l:'a',p:'<',r:'12'}]", context));
+
+        //不是数字时，按文本比较
+        assertTrue(test("(c,>,12)", context));
+        assertTrue(test("(a,=,'9')", context));
+    }
+
+    @Test
+    void testArray() {
+        FlowContext context = FlowContext.of().put("a", 13).put("b", 1);
+
+        assertTrue(test("[{l:'a',p:'>',r:'12'}]", context));
+        assertTrue(test("[{l:'a',p:'>',r:'12'},{l:'b',p:'=',r:'1'}]", context));
+        assertFalse(test("[{l:'a',p:'>',r:'12'},{l:'b',p:'=',r:'2'}]", context));
+        assertTrue(test("[{l:'a',p:'>',r:'20'},{c:'or',l:'b',p:'=',r:'1'}]", context));
+        assertTrue(test("[{\"l\":\"a\",\"p\":\"<\",\"r\":14}]", context));
+    }
+
+    @Test
+    void testNotStructured() {
+        assertNull(StructuredCondition.compile("a > 12"));
+        assertNull(StructuredCondition.compile("(a > 12) && b"));
+        assertNull(StructuredCondition.compile("(a,~,12)"));
+        assertNull(StructuredCondition.compile("(a,>,12) xor (b,=,1)"));
+        assertNull(StructuredCondition.compile("[{l:'a',p:'>'}]"));
+        assertNull(StructuredCondition.compile("[]"));
+    }
+
+    @Test
+    void testEvaluation() {
+        AtomicInteger fallbacks = new AtomicInteger();
+
+        Evaluation fallback = new Evaluation() {
+            @Override
+            public boolean runCondition(FlowContext context, String code) {
+                fallbacks.incrementAndGet();
+                return "yes".equals(code);
+            }
+
+            @Override
+            public void runTask(FlowContext context, String code) {
+                context.put("task", code);
+            }
+        };
+
+        Graph graph = Graph.create("structured-graph", spec -> {
+            spec.addStart("s").linkAdd("x");
+            spec.addExclusive("x")
+                    .linkAdd("a", l -> l.when("(v,>,5) and (w,=,'y')"))
+                    .linkAdd("b", l -> l.when("[{l:'v',p:'<=',r:'5'}]"))
+                    .linkAdd("c", l -> l.when("yes"));
+            spec.addActivity("a").task("A").linkAdd("e");
+            spec.addActivity("b").task("B").linkAdd("e");
+            spec.addActivity("c").task("C").linkAdd("e");
+            spec.addEnd("e");
+        });
+
+        FlowEngine flowEngine = FlowEngine.newInstance(SimpleFlowDriver.builder()
+                .evaluation(new StructuredEvaluation(fallback))
+                .build());
+
+        FlowContext context = FlowContext.of().put("v", 6).put("w", "y");
+        flowEngine.eval(graph, context);
+        assertEquals("A", context.get("task"));
+
+        context = FlowContext.of().put("v", 3);
+        flowEngine.eval(graph, context);
+        assertEquals("B", context.get("task"));
+
+        context = FlowContext.of().put("v", 6).put("w", "n");
+        flowEngine.eval(graph, context);
+        assertEquals("C", context.get("task"));
+
+        //只有非结构化条件交由后备执行器
+        assertEquals(1, fallbacks.get());
+    }
+}
@@ -0,0 +1,140 @@
+package features.flow.generated.coverage;
+
+import org.junit.jupiter.api.Test;
+import org.noear.solon.flow.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Stack;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Temporary 单元测试
+ */
+class TemporaryTest {
+
+    private Graph createGraph(String id) {
+        return Graph.create(id, spec -> {
+            spec.addStart("s").linkAdd("p1");
+            spec.addParallel("p1").linkAdd("a").linkAdd("b");
+            spec.addActivity("a").linkAdd("p2");
+            spec.addActivity("b").linkAdd("p2");
+            spec.addParallel("p2").linkAdd("e");
+            spec.addEnd("e");
+        });
+    }
+
+    @Test
+    void testNodeCount() {
+        Graph graph = createGraph("tmp-graph");
+        Node p2 = graph.getNode("p2");
+        Temporary temporary = new Temporary();
+
+        assertEquals(0, temporary.count(p2));
+        assertEquals(1, temporary.countIncr(p2));
+        assertEquals(2, temporary.countIncr(p2));
+
+        //按节点id的计数，与按节点序号的为同一个
+        assertEquals(2, temporary.count(graph, "p2"));
+        assertEquals(3, temporary.countIncr(graph, "p2"));
+        assertEquals(3, temporary.count(p2));
+
+        temporary.countSet(p2, 0);
+        assertEquals(0, temporary.count(graph, "p2"));
+
+        //非节点的键
+        assertEquals(1, temporary.countIncr(graph, "x"));
+        assertEquals(0, temporary.count(graph.getNode("p1")));
+    }
+
+    @Test
+    void testGraphIsolation() {
+        Graph graph1 = createGraph("tmp-graph1");
+        Graph graph2 = createGraph("tmp-graph2");
+        Temporary temporary = new Temporary();
+
+        temporary.countIncr(graph1.getNode("p2"));
+        temporary.countIncr(graph1.getNode("p2"));
+        temporary.countIncr(graph2.getNode("p2"));
+
+        assertEquals(2, temporary.count(graph1.getNode("p2")));
+        assertEquals(1, temporary.count(graph2.getNode("p2")));
+
+        temporary.inclusiveStack(graph1).push(2);
+        assertEquals(1, temporary.inclusiveStack(graph1).size());
+        assertTrue(temporary.inclusiveStack(graph2).isEmpty());
+        assertSame(temporary.loopStack(graph1), temporary.loopStack(graph1));
+    }
+
+    @Test
+    void testStack() {
+        TemporaryStack<Integer> stack = new TemporaryStack<>();
+
+        for (int i = 0; i < 10; i++) {
+            stack.push(i);
+        }
+
+        assertEquals(10, stack.size());
+        assertEquals(9, stack.peek());
+
+        List<Integer> popped = new ArrayList<>();
+        while (stack.isEmpty() == false) {
+            popped.add(stack.pop());
+        }
+
+        assertEquals(10, popped.size());
+        assertEquals(9, popped.get(0));
+        assertEquals(0, popped.get(9));
+
+        assertThrows(EmptyStackException.class, stack::pop);
+        assertThrows(EmptyStackException.class, stack::peek);
+    }
+
+    @Test
+    void testReservedStackKeys() {
+        Graph graph = createGraph("tmp-graph-reserved");
+        Temporary temporary = new Temporary();
+
+        //保留键与网关栈为同一个
+        temporary.inclusiveStack(graph).push(2);
+        Stack<Integer> inclusive = temporary.stack(graph, "inclusive_run");
+        assertEquals(1, inclusive.size());
+        assertEquals(2, inclusive.peek());
+
+        Stack<Iterator> loop = temporary.stack(graph, "loop_run");
+        loop.push(Collections.emptyIterator());
+        assertEquals(1, temporary.loopStack(graph).size());
+        assertFalse(loop.empty());
+        loop.pop();
+        assertTrue(temporary.loopStack(graph).isEmpty());
+
+        //其它键不受影响
+        assertTrue(temporary.stack(graph, "x").isEmpty());
+    }
+
+    @Test
+    void testLazySlots() {
+        Graph graph = createGraph("tmp-graph-lazy");
+        Temporary temporary = new Temporary();
+
+        //没有用到网关时，不创建图槽位
+        assertTrue(temporary.toString().contains("slots=[]"));
+
+        //只读计数，不创建计数与栈
+        assertEquals(0, temporary.count(graph.getNode("p2")));
+        assertTrue(temporary.toString().contains("counts=null, inclusiveStack=null, loopStack=null"));
+
+        //先按保留键获取（视图与之后创建的栈为同一个）
+        Stack<Integer> inclusive = temporary.stack(graph, "inclusive_run");
+        inclusive.push(3);
+        assertEquals(3, temporary.inclusiveStack(graph).peek());
+        assertSame(inclusive, temporary.stack(graph, "inclusive_run"));
+
+        assertEquals(1, temporary.countIncr(graph.getNode("p2")));
+        assertTrue(temporary.toString().contains("loopStack=null"));
+    }
+}